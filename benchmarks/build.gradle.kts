@@ -0,0 +1,26 @@
+plugins {
+    java
+}
+
+tasks {
+    withType<JavaCompile> {
+        sourceCompatibility = JavaVersion.VERSION_11.toString()
+        targetCompatibility = JavaVersion.VERSION_11.toString()
+    }
+
+    register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs JMH benchmarks, use -Pjmh.includes=<regexp> to select benchmarks"
+        classpath = sourceSets["main"].runtimeClasspath
+        mainClass.set("org.openjdk.jmh.Main")
+        args = listOfNotNull(project.findProperty("jmh.includes") as String?)
+    }
+}
+
+dependencies {
+    implementation(project(":core"))
+
+    implementation("org.openjdk.jmh:jmh-core:1.37")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+    runtimeOnly("ch.qos.logback:logback-classic:1.5.6")
+}
@@ -0,0 +1,50 @@
+package pl.allegro.tech.embeddedelasticsearch.benchmark;
+
+import pl.allegro.tech.embeddedelasticsearch.EmbeddedElastic;
+import pl.allegro.tech.embeddedelasticsearch.IndexRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Common configuration of Elasticsearch instances started by benchmarks.
+ * Version can be changed with -Dbenchmark.elasticVersion system property.
+ */
+final class BenchmarkElastic {
+
+    static final String INDEX_NAME = "benchmark";
+
+    private static final String ELASTIC_VERSION = System.getProperty("benchmark.elasticVersion", "7.17.0");
+    private static final String ES_JAVA_OPTS = "-Xms512m -Xmx512m";
+
+    private BenchmarkElastic() {
+    }
+
+    static EmbeddedElastic.Builder builder() {
+        return EmbeddedElastic.builder()
+                .withElasticVersion(ELASTIC_VERSION)
+                .withEsJavaOpts(ES_JAVA_OPTS)
+                .withSetting("xpack.ml.enabled", "false")
+                .withIndex(INDEX_NAME)
+                .withStartTimeout(2, MINUTES);
+    }
+
+    static List<IndexRequest> documents(int count, int descriptionLength) {
+        List<IndexRequest> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new IndexRequest.IndexRequestBuilder(INDEX_NAME, document(i, descriptionLength)).build());
+        }
+        return documents;
+    }
+
+    private static String document(int number, int descriptionLength) {
+        StringBuilder description = new StringBuilder(descriptionLength);
+        while (description.length() < descriptionLength) {
+            description.append("document number ").append(number).append(' ');
+        }
+        description.setLength(descriptionLength);
+        return "{\"number\": " + number + ", \"description\": \"" + description + "\"}";
+    }
+}
@@ -0,0 +1,65 @@
+package pl.allegro.tech.embeddedelasticsearch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.allegro.tech.embeddedelasticsearch.EmbeddedElastic;
+import pl.allegro.tech.embeddedelasticsearch.HttpCompression;
+import pl.allegro.tech.embeddedelasticsearch.IndexRequest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput of bulk requests (bulks per second) sent uncompressed and compressed, for growing bulk sizes.
+ * Compression pays off once the time saved transferring smaller body exceeds the time spent compressing it.
+ * Node is started locally and reached over loopback, so results show the cost of compression rather than its gain
+ * on slower links.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class CompressionBenchmark {
+
+    @Param({"NONE", "GZIP", "DEFLATE"})
+    public HttpCompression compression;
+
+    @Param({"10", "100", "1000", "5000"})
+    public int documentsPerBulk;
+
+    private EmbeddedElastic embeddedElastic;
+    private List<IndexRequest> documents;
+
+    @Setup(Level.Trial)
+    public void startElastic() throws IOException, InterruptedException {
+        embeddedElastic = BenchmarkElastic.builder()
+                .withHttpCompression(compression, 0)
+                .build()
+                .start();
+        documents = BenchmarkElastic.documents(documentsPerBulk, 500);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopElastic() {
+        embeddedElastic.stop();
+    }
+
+    @Benchmark
+    public void bulkIndex() {
+        embeddedElastic.index(documents);
+    }
+}
@@ -0,0 +1,75 @@
+package pl.allegro.tech.embeddedelasticsearch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.allegro.tech.embeddedelasticsearch.ContentFormat;
+import pl.allegro.tech.embeddedelasticsearch.EmbeddedElastic;
+import pl.allegro.tech.embeddedelasticsearch.IndexRequest;
+import pl.allegro.tech.embeddedelasticsearch.SearchResult;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares throughput (documents per second) of bulk indexing and of searching with decoding of returned sources,
+ * with requests and responses encoded as JSON and as SMILE.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class ContentFormatBenchmark {
+
+    private static final int DOCUMENTS_PER_REQUEST = 1_000;
+    private static final String SEARCH_ALL = "{ \"size\": " + DOCUMENTS_PER_REQUEST + ", \"query\": { \"match_all\": {} } }";
+
+    @Param({"JSON", "SMILE"})
+    public ContentFormat contentFormat;
+
+    private EmbeddedElastic embeddedElastic;
+    private List<IndexRequest> documents;
+
+    @Setup(Level.Trial)
+    public void startElastic() throws IOException, InterruptedException {
+        embeddedElastic = BenchmarkElastic.builder()
+                .withContentFormat(contentFormat)
+                .build()
+                .start();
+        documents = BenchmarkElastic.documents(DOCUMENTS_PER_REQUEST, 500);
+        embeddedElastic.index(documents);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopElastic() {
+        embeddedElastic.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS_PER_REQUEST)
+    public void bulkIndex() {
+        embeddedElastic.index(documents);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS_PER_REQUEST)
+    public List<Map> search() {
+        SearchResult result = embeddedElastic.search(BenchmarkElastic.INDEX_NAME, SEARCH_ALL);
+        return result.getSourcesAs(Map.class);
+    }
+}
@@ -0,0 +1,63 @@
+package pl.allegro.tech.embeddedelasticsearch.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import pl.allegro.tech.embeddedelasticsearch.EmbeddedElastic;
+import pl.allegro.tech.embeddedelasticsearch.IndexRequest;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares indexing throughput (documents per second) of Elasticsearch keeping data on disk and on tmpfs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class DataDirectoryBenchmark {
+
+    private static final int DOCUMENTS_PER_BULK = 1_000;
+
+    @Param({"disk", "tmpfs"})
+    public String dataDirectory;
+
+    private EmbeddedElastic embeddedElastic;
+    private List<IndexRequest> documents;
+
+    @Setup(Level.Trial)
+    public void startElastic() throws IOException, InterruptedException {
+        EmbeddedElastic.Builder builder = BenchmarkElastic.builder();
+        if ("tmpfs".equals(dataDirectory)) {
+            builder.withInMemoryDataDirectory();
+        }
+        embeddedElastic = builder.build().start();
+        documents = BenchmarkElastic.documents(DOCUMENTS_PER_BULK, 200);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopElastic() {
+        embeddedElastic.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DOCUMENTS_PER_BULK)
+    public void bulkIndex() {
+        embeddedElastic.index(documents);
+    }
+}
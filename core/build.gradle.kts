@@ -13,11 +13,50 @@ java {
     withSourcesJar()
 }
 
+// Classes in src/main/java9 and src/main/java21 replace their Java 8 counterparts on Java 9+ and 21+ (multi-release jar)
+val java9: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java9")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+val java21: SourceSet by sourceSets.creating {
+    java.srcDir("src/main/java21")
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
 tasks {
     withType<JavaCompile> {
         sourceCompatibility = JavaVersion.VERSION_1_8.toString()
         targetCompatibility = JavaVersion.VERSION_1_8.toString()
     }
+
+    named<JavaCompile>("compileJava9Java") {
+        options.release.set(9)
+    }
+
+    named<JavaCompile>("compileJava21Java") {
+        javaCompiler.set(project.javaToolchains.compilerFor {
+            languageVersion.set(JavaLanguageVersion.of(21))
+        })
+        options.release.set(21)
+    }
+
+    jar {
+        into("META-INF/versions/9") {
+            from(java9.output)
+        }
+        into("META-INF/versions/21") {
+            from(java21.output)
+        }
+        manifest {
+            attributes("Multi-Release" to "true")
+        }
+    }
+
+    // tests run against multi-release jar, so classes for newer Java replace Java 8 ones as they do in applications
+    test {
+        classpath = files(jar) + classpath - sourceSets.main.get().output
+    }
 }
 
 dependencies {
@@ -37,6 +76,7 @@ dependencies {
     implementation("org.apache.httpcomponents.client5:httpclient5:5.3.1")
     implementation("com.fasterxml.jackson.core:jackson-databind")
     implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-yaml")
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile")
 
     testImplementation("org.apache.groovy:groovy:4.0.21")
     testImplementation("org.spockframework:spock-core:2.3-groovy-4.0")
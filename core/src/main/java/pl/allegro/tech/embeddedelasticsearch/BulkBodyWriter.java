@@ -0,0 +1,240 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+/**
+ * Writes bulk operations into bulk request body in JSON or SMILE with Jackson generators, without building
+ * intermediate strings. JSON sources are copied as they are (new lines replaced by spaces), other sources,
+ * as well as update docs and upserts, are serialized or transcoded straight into the body. In JSON all items share one generator, so writing
+ * a document allocates next to nothing; in SMILE every action and source is a separate document (with its own
+ * header and back references) terminated by stream separator.
+ */
+final class BulkBodyWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ContentFormat format;
+    private final ObjectWriter objectWriter;
+    private final boolean routingWithoutUnderscore;
+
+    /**
+     * @param objectMapper serializes object sources, configured by user
+     * @param routingWithoutUnderscore whether routing is passed as "routing" (Elasticsearch 7+) instead of "_routing"
+     */
+    BulkBodyWriter(ContentFormat format, ObjectMapper objectMapper, boolean routingWithoutUnderscore) {
+        this.format = format;
+        // indented source would span many lines of JSON bulk body, body is flushed once it is complete
+        this.objectWriter = objectMapper.writer()
+                .without(SerializationFeature.INDENT_OUTPUT)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.routingWithoutUnderscore = routingWithoutUnderscore;
+    }
+
+    byte[] write(BulkOperation operation) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        write(operation, out);
+        return out.toByteArray();
+    }
+
+    void write(BulkOperation operation, OutputStream out) {
+        try (JsonGenerator sharedGenerator = newSharedGenerator(out)) {
+            if (operation instanceof IndexRequest) {
+                IndexRequest request = (IndexRequest) operation;
+                writeAction(sharedGenerator, out, request, request.getIndexName(), request.getId(), request.getRouting());
+                writeSource(sharedGenerator, out, request.getSource());
+            } else if (operation instanceof UpdateRequest) {
+                writeAction(sharedGenerator, out, operation, operation.getIndexName(), operation.getId(), operation.getRouting());
+                writeUpdate(sharedGenerator, out, (UpdateRequest) operation);
+            } else {
+                writeAction(sharedGenerator, out, operation, operation.getIndexName(), operation.getId(), operation.getRouting());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write " + operation.getAction() + " of document " + operation.getId() + " to bulk request", e);
+        }
+    }
+
+    /**
+     * Writes objects as sources of index actions
+     *
+     * @param idExtractor id of the document, null lets Elasticsearch generate it
+     * @param routingExtractor routing of the document, null for default routing
+     */
+    <T> void writeAll(String indexName, Iterable<T> documents, Function<? super T, String> idExtractor,
+                      Function<? super T, String> routingExtractor, OutputStream out) {
+        try (JsonGenerator sharedGenerator = newSharedGenerator(out)) {
+            for (T document : documents) {
+                writeAction(sharedGenerator, out, null, indexName, idExtractor.apply(document), routingExtractor.apply(document));
+                writeSource(sharedGenerator, out, document);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot write documents to bulk request", e);
+        }
+    }
+
+    /**
+     * @return generator writing all JSON items, null in SMILE
+     */
+    private JsonGenerator newSharedGenerator(OutputStream out) throws IOException {
+        if (format.isBinary()) {
+            return null;
+        }
+        JsonGenerator generator = newGenerator(out);
+        // items are separated by new lines written explicitly
+        generator.setRootValueSeparator(null);
+        return generator;
+    }
+
+    /**
+     * @return shared JSON generator, or generator of separate SMILE document
+     */
+    private JsonGenerator beginLine(JsonGenerator sharedGenerator, OutputStream out) throws IOException {
+        return sharedGenerator != null ? sharedGenerator : newGenerator(out);
+    }
+
+    private static void endLine(JsonGenerator sharedGenerator, JsonGenerator generator, OutputStream out) throws IOException {
+        if (sharedGenerator != null) {
+            sharedGenerator.writeRaw('\n');
+        } else {
+            generator.close();
+            out.write(ContentFormat.SMILE_STREAM_SEPARATOR);
+        }
+    }
+
+    /**
+     * @param operation parameters of the action, null for plain index action
+     */
+    private void writeAction(JsonGenerator sharedGenerator, OutputStream out, BulkOperation operation,
+                             String indexName, String id, String routing) throws IOException {
+        JsonGenerator generator = beginLine(sharedGenerator, out);
+        generator.writeStartObject();
+        generator.writeObjectFieldStart(operation == null ? "index" : operation.getAction());
+        writeStringFieldIfPresent(generator, "_index", indexName);
+        writeStringFieldIfPresent(generator, "_id", id);
+        writeStringFieldIfPresent(generator, routingWithoutUnderscore ? "routing" : "_routing", routing);
+        if (operation != null) {
+            writeParameters(generator, operation);
+        }
+        generator.writeEndObject();
+        generator.writeEndObject();
+        endLine(sharedGenerator, generator, out);
+    }
+
+    private static void writeParameters(JsonGenerator generator, BulkOperation operation) throws IOException {
+        if (operation.getVersion() != null) {
+            generator.writeNumberField("version", operation.getVersion());
+            generator.writeStringField("version_type", operation.getVersionType().parameter());
+        }
+        if (operation.getIfSeqNo() != null) {
+            generator.writeNumberField("if_seq_no", operation.getIfSeqNo());
+            generator.writeNumberField("if_primary_term", operation.getIfPrimaryTerm());
+        }
+        if (operation instanceof IndexRequest) {
+            writeStringFieldIfPresent(generator, "pipeline", ((IndexRequest) operation).getPipeline());
+        } else if (operation instanceof UpdateRequest && ((UpdateRequest) operation).getRetryOnConflict() != null) {
+            generator.writeNumberField("retry_on_conflict", ((UpdateRequest) operation).getRetryOnConflict());
+        }
+    }
+
+    private void writeSource(JsonGenerator sharedGenerator, OutputStream out, Object source) throws IOException {
+        if (sharedGenerator != null && source instanceof String) {
+            writeJsonLine(sharedGenerator, (String) source);
+        } else if (sharedGenerator != null && source instanceof byte[]) {
+            sharedGenerator.flush();
+            writeJsonLine(out, (byte[]) source);
+        } else {
+            JsonGenerator generator = beginLine(sharedGenerator, out);
+            writeValue(generator, source);
+            endLine(sharedGenerator, generator, out);
+        }
+    }
+
+    private void writeUpdate(JsonGenerator sharedGenerator, OutputStream out, UpdateRequest request) throws IOException {
+        JsonGenerator generator = beginLine(sharedGenerator, out);
+        generator.writeStartObject();
+        if (request.getDoc() != null) {
+            generator.writeFieldName("doc");
+            writeValue(generator, request.getDoc());
+        }
+        if (request.isDocAsUpsert()) {
+            generator.writeBooleanField("doc_as_upsert", true);
+        }
+        if (request.getScript() != null) {
+            generator.writeObjectFieldStart("script");
+            generator.writeStringField("source", request.getScript());
+            if (!request.getScriptParams().isEmpty()) {
+                generator.writeFieldName("params");
+                objectWriter.writeValue(generator, request.getScriptParams());
+            }
+            generator.writeEndObject();
+        }
+        if (request.getUpsert() != null) {
+            generator.writeFieldName("upsert");
+            writeValue(generator, request.getUpsert());
+        }
+        generator.writeEndObject();
+        endLine(sharedGenerator, generator, out);
+    }
+
+    /**
+     * Transcodes JSON strings and bytes, so they may be nested in other values, serializes other objects
+     */
+    private void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof String || value instanceof byte[]) {
+            try (JsonParser parser = value instanceof String
+                    ? JSON_FACTORY.createParser((String) value)
+                    : JSON_FACTORY.createParser((byte[]) value)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+        } else {
+            objectWriter.writeValue(generator, value);
+        }
+    }
+
+    private JsonGenerator newGenerator(OutputStream out) throws IOException {
+        return format.factory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private static void writeJsonLine(JsonGenerator generator, String json) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\n' || c == '\r') {
+                generator.writeRaw(json, lineStart, i - lineStart);
+                generator.writeRaw(' ');
+                lineStart = i + 1;
+            }
+        }
+        generator.writeRaw(json, lineStart, json.length() - lineStart);
+        generator.writeRaw('\n');
+    }
+
+    private static void writeJsonLine(OutputStream out, byte[] json) throws IOException {
+        int lineStart = 0;
+        for (int i = 0; i < json.length; i++) {
+            if (json[i] == '\n' || json[i] == '\r') {
+                out.write(json, lineStart, i - lineStart);
+                out.write(' ');
+                lineStart = i + 1;
+            }
+        }
+        out.write(json, lineStart, json.length - lineStart);
+        out.write('\n');
+    }
+
+    private static void writeStringFieldIfPresent(JsonGenerator generator, String name, String value) throws IOException {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+}
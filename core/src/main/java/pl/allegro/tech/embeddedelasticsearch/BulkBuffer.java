@@ -0,0 +1,20 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Gives access to internal buffer, so bulk body does not have to be copied before sending.
+ */
+class BulkBuffer extends ByteArrayOutputStream {
+
+    BulkBuffer() {
+    }
+
+    BulkBuffer(int size) {
+        super(size);
+    }
+
+    byte[] buffer() {
+        return buf;
+    }
+}
@@ -0,0 +1,59 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Single action of bulk request: {@link IndexRequest} (index or create), {@link UpdateRequest} or {@link DeleteRequest}.
+ * Optimistic concurrency control parameters are sent only when set.
+ */
+public abstract class BulkOperation {
+
+    private final String indexName;
+    private final String id;
+    private final String routing;
+    private final Long version;
+    private final VersionType versionType;
+    private final Long ifSeqNo;
+    private final Long ifPrimaryTerm;
+
+    BulkOperation(String indexName, String id, String routing, Long version, VersionType versionType, Long ifSeqNo, Long ifPrimaryTerm) {
+        this.indexName = indexName;
+        this.id = id;
+        this.routing = routing;
+        this.version = version;
+        this.versionType = versionType;
+        this.ifSeqNo = ifSeqNo;
+        this.ifPrimaryTerm = ifPrimaryTerm;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    /**
+     * @return name of the action in bulk request: index, create, update or delete
+     */
+    public abstract String getAction();
+
+    Long getVersion() {
+        return version;
+    }
+
+    VersionType getVersionType() {
+        return versionType;
+    }
+
+    Long getIfSeqNo() {
+        return ifSeqNo;
+    }
+
+    Long getIfPrimaryTerm() {
+        return ifPrimaryTerm;
+    }
+}
@@ -0,0 +1,44 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.apache.hc.core5.http.ContentType;
+
+/**
+ * Encoding of documents sent in bulk requests and of search responses. SMILE is binary JSON: smaller and faster
+ * to parse than text, but not human readable. Sources of returned documents are always exposed as JSON.
+ * Elasticsearch accepts bulk requests only in JSON and SMILE, so CBOR is not offered.
+ */
+public enum ContentFormat {
+    JSON("application/json", new JsonFactory()),
+    SMILE("application/smile", new SmileFactory());
+
+    /**
+     * Terminates every action and source in SMILE bulk body, the same way new line does in JSON one
+     */
+    static final int SMILE_STREAM_SEPARATOR = 0xFF;
+
+    private final String mediaType;
+    private final JsonFactory factory;
+
+    ContentFormat(String mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    String mediaType() {
+        return mediaType;
+    }
+
+    ContentType contentType() {
+        return ContentType.create(mediaType);
+    }
+
+    JsonFactory factory() {
+        return factory;
+    }
+
+    boolean isBinary() {
+        return this != JSON;
+    }
+}
@@ -0,0 +1,45 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 based hashes used to detect changes of declared schema and fixtures.
+ */
+final class ContentHash {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest digest;
+
+    private ContentHash() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    static ContentHash create() {
+        return new ContentHash();
+    }
+
+    static String of(byte[] content) {
+        return create().update(content, 0, content.length).toHex();
+    }
+
+    ContentHash update(byte[] content, int offset, int length) {
+        digest.update(content, offset, length);
+        return this;
+    }
+
+    String toHex() {
+        byte[] hash = digest.digest();
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,60 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Deletion of a document. Deleting missing document is not an error.
+ */
+public class DeleteRequest extends BulkOperation {
+
+    private DeleteRequest(DeleteRequestBuilder builder) {
+        super(builder.indexName, builder.id, builder.routing, builder.version, builder.versionType, builder.ifSeqNo, builder.ifPrimaryTerm);
+    }
+
+    @Override
+    public String getAction() {
+        return "delete";
+    }
+
+    public static class DeleteRequestBuilder {
+
+        private final String indexName;
+        private final String id;
+        private String routing;
+        private Long version;
+        private VersionType versionType;
+        private Long ifSeqNo;
+        private Long ifPrimaryTerm;
+
+        public DeleteRequestBuilder(final String indexName, final String id) {
+            this.indexName = indexName;
+            this.id = id;
+        }
+
+        public DeleteRequestBuilder withRouting(String routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        public DeleteRequestBuilder withVersion(long version, VersionType versionType) {
+            require(versionType != null, "Version type must be given with version " + version);
+            this.version = version;
+            this.versionType = versionType;
+            return this;
+        }
+
+        /**
+         * Document is deleted only if it was last modified by operation of given sequence number and primary term
+         */
+        public DeleteRequestBuilder withIfSeqNo(long seqNo, long primaryTerm) {
+            this.ifSeqNo = seqNo;
+            this.ifPrimaryTerm = primaryTerm;
+            return this;
+        }
+
+        public DeleteRequest build() {
+            require(id != null, "Delete request needs id of the document");
+            return new DeleteRequest(this);
+        }
+    }
+}
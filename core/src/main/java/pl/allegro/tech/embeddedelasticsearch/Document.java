@@ -0,0 +1,104 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Document returned by search or get. Source is kept as slice of the raw response and decoded only when requested.
+ */
+public final class Document {
+
+    private final String indexName;
+    private final String id;
+    private final byte[] buffer;
+    private final int sourceOffset;
+    private final int sourceLength;
+    private final int sortOffset;
+    private final int sortLength;
+    private final ObjectMapper objectMapper;
+
+    Document(String indexName, String id, byte[] buffer, int sourceOffset, int sourceLength, int sortOffset, int sortLength, ObjectMapper objectMapper) {
+        this.indexName = indexName;
+        this.id = id;
+        this.buffer = buffer;
+        this.sourceOffset = sourceOffset;
+        this.sourceLength = sourceLength;
+        this.sortOffset = sortOffset;
+        this.sortLength = sortLength;
+        this.objectMapper = objectMapper;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return whether _source was returned, it is not if source is disabled in mappings
+     */
+    public boolean hasSource() {
+        return sourceLength > 0;
+    }
+
+    /**
+     * @return _source as JSON, null if source was not returned
+     */
+    public String getSourceAsString() {
+        return hasSource() ? new String(buffer, sourceOffset, sourceLength, UTF_8) : null;
+    }
+
+    /**
+     * @return copy of raw _source bytes, null if source was not returned
+     */
+    public byte[] getSourceAsBytes() {
+        return hasSource() ? Arrays.copyOfRange(buffer, sourceOffset, sourceOffset + sourceLength) : null;
+    }
+
+    /**
+     * Decodes _source straight from response bytes into given type using Jackson
+     *
+     * @return decoded source, null if source was not returned
+     */
+    public <T> T getSourceAs(Class<T> type) {
+        if (!hasSource()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(buffer, sourceOffset, sourceLength, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot decode source of document " + id + " as " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Writes raw _source bytes without copying them
+     */
+    void writeSourceTo(OutputStream out) throws IOException {
+        out.write(buffer, sourceOffset, sourceLength);
+    }
+
+    int getSourceLength() {
+        return sourceLength;
+    }
+
+    /**
+     * @return sort values of search hit as JSON array, usable as search_after; null if hit was not sorted
+     */
+    String getSortValues() {
+        return sortLength > 0 ? new String(buffer, sortOffset, sortLength, UTF_8) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "Document{indexName='" + indexName + "', id='" + id + "', source=" + getSourceAsString() + "}";
+    }
+}
@@ -0,0 +1,93 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.nio.file.Path;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * <p>Describes export of documents of an index into files in _bulk format, which can be loaded back
+ * as {@link Fixture} with {@link FixtureFormat#BULK}. Index is read from a point in time split into slices,
+ * each slice is written to its own file by separate thread. Requires Elasticsearch 7.12 or newer.</p>
+ * <p>Instances are immutable, use withXXX methods to create modified copies.</p>
+ */
+public final class DocumentExport {
+
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final int MAX_DEFAULT_SLICES = 8;
+
+    private final String indexName;
+    private final Path directory;
+    private final int slices;
+    private final int pageSize;
+    private final boolean gzip;
+
+    private DocumentExport(String indexName, Path directory, int slices, int pageSize, boolean gzip) {
+        this.indexName = indexName;
+        this.directory = directory;
+        this.slices = slices;
+        this.pageSize = pageSize;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Export of index (or alias, or comma separated indices) into given directory, which is created if needed.
+     * Existing export files of the same index are overwritten.
+     */
+    public static DocumentExport of(String indexName, Path directory) {
+        require(indexName != null, "Index name must be specified");
+        require(directory != null, "Export directory must be specified");
+        return new DocumentExport(indexName, directory,
+                Math.min(WorkerPools.defaultParallelism(), MAX_DEFAULT_SLICES), DEFAULT_PAGE_SIZE, false);
+    }
+
+    /**
+     * Number of slices exported in parallel, each to its own file. Defaults to number of processors, at most 8
+     */
+    public DocumentExport withSlices(int slices) {
+        require(slices > 0, "Number of slices must be positive");
+        return new DocumentExport(indexName, directory, slices, pageSize, gzip);
+    }
+
+    /**
+     * Number of documents fetched by single search request, bounds memory used by each slice. Defaults to 1000
+     */
+    public DocumentExport withPageSize(int pageSize) {
+        require(pageSize > 0, "Page size must be positive");
+        return new DocumentExport(indexName, directory, slices, pageSize, gzip);
+    }
+
+    /**
+     * Compress export files with gzip
+     */
+    public DocumentExport withGzip() {
+        return new DocumentExport(indexName, directory, slices, pageSize, true);
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    int getSlices() {
+        return slices;
+    }
+
+    int getPageSize() {
+        return pageSize;
+    }
+
+    boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * File of slice, named after _bulk format it is written in, so it is not mistaken for NDJSON fixture
+     */
+    Path sliceFile(int slice) {
+        String fileName = indexName.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + slice + (gzip ? ".bulk.gz" : ".bulk");
+        return directory.resolve(fileName);
+    }
+}
@@ -0,0 +1,63 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of document export: written files, number of exported documents, their size and export throughput.
+ */
+public final class DocumentExportReport {
+
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private final String indexName;
+    private final List<Path> files;
+    private final long documents;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    DocumentExportReport(String indexName, List<Path> files, long documents, long bytes, long elapsedNanos) {
+        this.indexName = indexName;
+        this.files = files;
+        this.documents = documents;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Export files, one per slice
+     */
+    public List<Path> getFiles() {
+        return files;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Uncompressed size of exported documents sources
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getDocumentsPerSecond() {
+        return elapsedNanos == 0 ? 0 : documents * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Exported %d documents (%.2f MB) from %s to %d files in %d ms: %.0f docs/s",
+                documents, bytes / BYTES_IN_MEGABYTE, indexName, files.size(), getElapsedMillis(), getDocumentsPerSecond());
+    }
+}
@@ -0,0 +1,169 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exports documents from point in time, every slice is paged with search_after and written to its own file
+ * by separate thread. Only a single page per slice is held in memory. Every page is requested with the most recent
+ * point in time id returned to its slice, as Elasticsearch may change the id between requests.
+ */
+class DocumentExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentExporter.class);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String KEEP_ALIVE = "1m";
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] ACTION_START = "{\"index\":{\"_index\":\"".getBytes(UTF_8);
+    private static final byte[] ACTION_ID = "\",\"_id\":\"".getBytes(UTF_8);
+    private static final byte[] ACTION_END = "\"}}\n".getBytes(UTF_8);
+
+    private final ElasticRestClient elasticRestClient;
+
+    DocumentExporter(ElasticRestClient elasticRestClient) {
+        this.elasticRestClient = elasticRestClient;
+    }
+
+    DocumentExportReport export(DocumentExport export) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Files.createDirectories(export.getDirectory());
+        AtomicReference<String> latestPointInTimeId = new AtomicReference<>(elasticRestClient.openPointInTime(export.getIndexName(), KEEP_ALIVE));
+        ExecutorService exporters = WorkerPools.newIoPool("EmbeddedElsExport", export.getSlices());
+        try {
+            List<Future<SliceReport>> slices = new ArrayList<>();
+            for (int slice = 0; slice < export.getSlices(); slice++) {
+                int sliceId = slice;
+                slices.add(exporters.submit(() -> exportSlice(export, latestPointInTimeId, sliceId)));
+            }
+            List<Path> files = new ArrayList<>();
+            long documents = 0;
+            long bytes = 0;
+            for (Future<SliceReport> slice : slices) {
+                SliceReport sliceReport = await(slice);
+                files.add(sliceReport.file);
+                documents += sliceReport.documents;
+                bytes += sliceReport.bytes;
+            }
+            DocumentExportReport report = new DocumentExportReport(export.getIndexName(), files, documents, bytes, System.nanoTime() - start);
+            logger.info(report.toString());
+            return report;
+        } finally {
+            exporters.shutdownNow();
+            elasticRestClient.closePointInTime(latestPointInTimeId.get());
+        }
+    }
+
+    /**
+     * @param latestPointInTimeId id of point in time to start with, updated with ids returned for pages of the slice
+     */
+    private SliceReport exportSlice(DocumentExport export, AtomicReference<String> latestPointInTimeId, int slice) {
+        Path file = export.sliceFile(slice);
+        long documents = 0;
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+             OutputStream out = openOutput(channel, export.isGzip())) {
+            String pointInTimeId = latestPointInTimeId.get();
+            String searchAfter = null;
+            List<Document> page;
+            do {
+                SearchResult result = elasticRestClient.searchPointInTime(pageRequest(export, pointInTimeId, slice, searchAfter));
+                if (result.getPointInTimeId() != null) {
+                    pointInTimeId = result.getPointInTimeId();
+                    latestPointInTimeId.set(pointInTimeId);
+                }
+                page = result.getDocuments();
+                for (Document document : page) {
+                    writeAction(out, document);
+                    document.writeSourceTo(out);
+                    out.write('\n');
+                    bytes += document.getSourceLength();
+                }
+                documents += page.size();
+                searchAfter = page.isEmpty() ? null : page.get(page.size() - 1).getSortValues();
+            } while (page.size() == export.getPageSize() && searchAfter != null);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write export file " + file, e);
+        }
+        return new SliceReport(file, documents, bytes);
+    }
+
+    private static OutputStream openOutput(FileChannel channel, boolean gzip) throws IOException {
+        OutputStream channelStream = Channels.newOutputStream(channel);
+        return gzip ? new GZIPOutputStream(channelStream, OUTPUT_BUFFER_SIZE) : new BufferedOutputStream(channelStream, OUTPUT_BUFFER_SIZE);
+    }
+
+    private static String pageRequest(DocumentExport export, String pointInTimeId, int slice, String searchAfter) throws IOException {
+        ObjectNode request = OBJECT_MAPPER.createObjectNode();
+        request.put("size", export.getPageSize());
+        request.putObject("pit")
+                .put("id", pointInTimeId)
+                .put("keep_alive", KEEP_ALIVE);
+        request.putArray("sort").add("_shard_doc");
+        if (export.getSlices() > 1) {
+            request.putObject("slice")
+                    .put("id", slice)
+                    .put("max", export.getSlices());
+        }
+        if (searchAfter != null) {
+            request.set("search_after", OBJECT_MAPPER.readTree(searchAfter));
+        }
+        return request.toString();
+    }
+
+    private static void writeAction(OutputStream out, Document document) throws IOException {
+        JsonStringEncoder encoder = JsonStringEncoder.getInstance();
+        out.write(ACTION_START);
+        out.write(encoder.quoteAsUTF8(document.getIndexName()));
+        out.write(ACTION_ID);
+        out.write(encoder.quoteAsUTF8(document.getId()));
+        out.write(ACTION_END);
+    }
+
+    private static SliceReport await(Future<SliceReport> slice) throws InterruptedException {
+        try {
+            return slice.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static final class SliceReport {
+        private final Path file;
+        private final long documents;
+        private final long bytes;
+
+        private SliceReport(Path file, long documents, long bytes) {
+            this.file = file;
+            this.documents = documents;
+            this.bytes = bytes;
+        }
+    }
+}
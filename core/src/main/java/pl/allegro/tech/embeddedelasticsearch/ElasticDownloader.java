@@ -27,9 +27,22 @@ class ElasticDownloader {
         this.installationDescription = installationDescription;
     }
 
-    Path download() throws IOException {
+    Path download() throws IOException, InterruptedException {
+        return download(installationDescription.getDownloadUrl());
+    }
+
+    /**
+     * Downloads plugin package, so it can be fetched while Elasticsearch is being extracted and installed from local file
+     */
+    Path downloadPlugin(URL source) throws IOException, InterruptedException {
+        return download(source);
+    }
+
+    private Path download(URL source) throws IOException, InterruptedException {
         prepareDirectories();
-        return downloadElastic();
+        File lockFile = new File(getDownloadDirectory(), constructLocalFileName(source) + ".lock");
+        // instances started concurrently download the package once, the others wait for the lock
+        return FileLocks.withLock(lockFile, () -> downloadFile(source));
     }
 
     private void prepareDirectories() throws IOException {
@@ -40,8 +53,7 @@ class ElasticDownloader {
         return getFile(installationDescription.getDownloadDirectory());
     }
 
-    private Path downloadElastic() throws IOException {
-        URL source = installationDescription.getDownloadUrl();
+    private Path downloadFile(URL source) throws IOException {
         File target = new File(getDownloadDirectory(), constructLocalFileName(source));
         File statusFile = new File(target.getParentFile(), target.getName() + ELS_PACKAGE_STATUS_FILE_SUFFIX);
         removeBrokenDownload(target, statusFile);
@@ -1,28 +1,44 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.commons.io.IOUtils;
 import org.apache.hc.client5.http.classic.methods.*;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.message.BasicHeader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.StringJoiner;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
+import static pl.allegro.tech.embeddedelasticsearch.HttpStatusCodes.NOT_FOUND;
 import static pl.allegro.tech.embeddedelasticsearch.HttpStatusCodes.OK;
+import static pl.allegro.tech.embeddedelasticsearch.HttpStatusCodes.TOO_MANY_REQUESTS;
 
 class ElasticRestClient {
 
@@ -34,12 +50,28 @@ class ElasticRestClient {
     private final HttpClient httpClient;
     private final IndicesDescription indicesDescription;
     private final TemplatesDescription templatesDescription;
+    private final ContentFormat contentFormat;
+    private final ObjectMapper documentMapper;
+    private final SearchResponseParser searchResponseParser;
+    private volatile BulkBodyWriter bulkBodyWriter;
 
     ElasticRestClient(int elasticsearchHttpPort, HttpClient httpClient, IndicesDescription indicesDescription, TemplatesDescription templatesDescription) {
+        this(elasticsearchHttpPort, httpClient, indicesDescription, templatesDescription, ContentFormat.JSON, OBJECT_MAPPER);
+    }
+
+    /**
+     * @param contentFormat format of bulk request bodies and search responses
+     * @param documentMapper serializes indexed objects and decodes sources of returned documents
+     */
+    ElasticRestClient(int elasticsearchHttpPort, HttpClient httpClient, IndicesDescription indicesDescription, TemplatesDescription templatesDescription,
+                      ContentFormat contentFormat, ObjectMapper documentMapper) {
         this.elasticsearchHttpPort = elasticsearchHttpPort;
         this.httpClient = httpClient;
         this.indicesDescription = indicesDescription;
         this.templatesDescription = templatesDescription;
+        this.contentFormat = contentFormat;
+        this.documentMapper = documentMapper;
+        this.searchResponseParser = new SearchResponseParser(documentMapper, contentFormat);
     }
 
     void createIndices() {
@@ -49,22 +81,107 @@ class ElasticRestClient {
 
     void createIndex(String indexName) {
         if (!indexExists(indexName)) {
-            HttpPut request = new HttpPut(url("/" + indexName));
-            indicesDescription
-                    .getIndexSettings(indexName)
-                    .ifPresent(indexSettings -> setIndexSettingsAsEntity(request, indexSettings));
-            httpClient.execute(request, response -> {
-                if (response.getCode() != 200) {
-                    String responseBody = readBodySafely(response);
-                    throw new RuntimeException("Call to elasticsearch resulted in error:\n" + responseBody);
-                }
-            });
+            putIndex(indexName);
             waitForClusterYellow();
         }
     }
 
+    private void putIndex(String indexName) {
+        HttpPut request = new HttpPut(url("/" + indexName));
+        indicesDescription
+                .getIndexSettings(indexName)
+                .ifPresent(indexSettings -> setIndexSettingsAsEntity(request, indexSettings));
+        httpClient.execute(request, response -> {
+            if (response.getCode() != 200) {
+                String responseBody = readBodySafely(response);
+                throw new RuntimeException("Call to elasticsearch resulted in error:\n" + responseBody);
+            }
+        });
+    }
+
     private void setIndexSettingsAsEntity(HttpPut request, IndexSettings indexSettings) {
-        request.setEntity(new StringEntity(indexSettings.toJson().toString(), ContentType.APPLICATION_JSON));
+        request.setEntity(new ByteArrayEntity(indexSettings.toRequestBody(), ContentType.APPLICATION_JSON));
+    }
+
+    void recreateIndexIfChanged(String indexName) {
+        Map<String, String> liveIndices = liveIndicesContentHashes(Collections.singletonList(indexName));
+        if (isIndexUpToDate(indexName, liveIndices)) {
+            logger.info("Index: {} matches its definition, skipping recreation", indexName);
+        } else {
+            deleteIndex(indexName);
+            createIndex(indexName);
+        }
+    }
+
+    /**
+     * Brings declared templates and indices in line with their definitions, touching only those which changed.
+     * State of the cluster is read with one request per kind of declared templates and one for indices,
+     * so when nothing changed sync costs just that. Legacy templates cannot store content hash, so they are always put again.
+     */
+    void syncSchema() {
+        List<String> changedTemplates = templatesDescription.getTemplatesNames().stream()
+                .filter(isTemplateUpToDate(liveTemplatesContentHashes()).negate())
+                .collect(toList());
+        applyTemplates(changedTemplates, this::putTemplate);
+
+        Map<String, String> liveIndices = liveIndicesContentHashes(indicesDescription.getIndicesNames());
+        List<String> missingIndices = new ArrayList<>();
+        List<String> changedIndices = new ArrayList<>();
+        for (String indexName : indicesDescription.getIndicesNames()) {
+            if (!liveIndices.containsKey(indexName)) {
+                missingIndices.add(indexName);
+            } else if (canCompareIndex(indexName) && !isIndexUpToDate(indexName, liveIndices)) {
+                changedIndices.add(indexName);
+            }
+        }
+        if (!changedIndices.isEmpty()) {
+            HttpDelete request = new HttpDelete(url("/" + String.join(",", changedIndices)));
+            httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Delete request resulted in error"));
+        }
+        missingIndices.forEach(this::putIndex);
+        changedIndices.forEach(this::putIndex);
+        if (!changedTemplates.isEmpty() || !missingIndices.isEmpty() || !changedIndices.isEmpty()) {
+            waitForClusterYellow();
+        }
+        logger.info("Schema synchronized. Templates put: {}, indices created: {}, indices recreated: {}",
+                changedTemplates, missingIndices, changedIndices);
+    }
+
+    private boolean canCompareIndex(String indexName) {
+        return indicesDescription.getIndexSettings(indexName)
+                .map(IndexSettings::isContentHashInMappings)
+                .orElse(false);
+    }
+
+    private boolean isIndexUpToDate(String indexName, Map<String, String> liveIndices) {
+        Optional<IndexSettings> indexSettings = indicesDescription.getIndexSettings(indexName);
+        if (!indexSettings.isPresent() || !indexSettings.get().isContentHashInMappings()) {
+            return false;
+        }
+        return indexSettings.get().getContentHash().equals(liveIndices.get(indexName));
+    }
+
+    /**
+     * @return content hashes of existing indices, keyed by index name; null value if index has no content hash
+     */
+    private Map<String, String> liveIndicesContentHashes(Collection<String> indicesNames) {
+        Map<String, String> contentHashes = new HashMap<>();
+        if (indicesNames.isEmpty()) {
+            return contentHashes;
+        }
+        String contentHashPath = "*.mappings._meta." + IndexSettings.CONTENT_HASH_META_FIELD;
+        HttpGet request = new HttpGet(url("/" + String.join(",", indicesNames)
+                + "?ignore_unavailable=true&allow_no_indices=true&filter_path=*.settings.index.uuid," + contentHashPath));
+        return httpClient.execute(request, response -> {
+            assertOk(response, "Cannot read indices definitions");
+            Iterator<Map.Entry<String, JsonNode>> indices = OBJECT_MAPPER.readTree(response.getEntity().getContent()).fields();
+            while (indices.hasNext()) {
+                Map.Entry<String, JsonNode> index = indices.next();
+                JsonNode contentHash = index.getValue().path("mappings").path("_meta").path(IndexSettings.CONTENT_HASH_META_FIELD);
+                contentHashes.put(index.getKey(), contentHash.isTextual() ? contentHash.asText() : null);
+            }
+            return contentHashes;
+        });
     }
 
     private boolean indexExists(String indexName) {
@@ -73,44 +190,129 @@ class ElasticRestClient {
     }
 
     void createTemplates() {
-        templatesDescription.getTemplatesNames().forEach(this::createTemplate);
+        applyTemplates(templatesDescription.getTemplatesNames(), templateName -> {
+            if (!templateExists(templateName)) {
+                putTemplate(templateName);
+            }
+        });
+        waitForClusterYellow();
     }
 
     void createTemplate(String templateName) {
         if (!templateExists(templateName)) {
-            HttpPut request = new HttpPut(url("/_template/" + templateName));
-            request.setEntity(new StringEntity(templatesDescription.getTemplateSettings(templateName), ContentType.APPLICATION_JSON));
-            httpClient.execute(request, response -> {
-                if (response.getCode() != 200) {
-                    String responseBody = readBodySafely(response);
-                    throw new RuntimeException("Call to elasticsearch resulted in error:\n" + responseBody);
-                }
-            });
+            putTemplate(templateName);
             waitForClusterYellow();
         }
     }
 
+    /**
+     * Applies given templates concurrently, except that composable templates are applied only after
+     * component templates they are composed of.
+     */
+    private void applyTemplates(Collection<String> templatesNames, Consumer<String> action) {
+        TaskGraph<String> graph = new TaskGraph<>();
+        templatesNames.forEach(templateName ->
+                graph.add(templateName, templatesDescription.getTemplateDependencies(templateName), () -> action.accept(templateName)));
+        if (graph.isEmpty()) {
+            return;
+        }
+        ExecutorService executor = WorkerPools.newIoPool("EmbeddedElsTemplates",
+                Math.min(templatesNames.size(), WorkerPools.defaultParallelism()));
+        try {
+            graph.run(executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying templates", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void putTemplate(String templateName) {
+        HttpPut request = new HttpPut(url(templatesDescription.getTemplateType(templateName).path(templateName)));
+        request.setEntity(new ByteArrayEntity(templatesDescription.getTemplateBody(templateName), ContentType.APPLICATION_JSON));
+        httpClient.execute(request, response -> {
+            if (response.getCode() != 200) {
+                String responseBody = readBodySafely(response);
+                throw new RuntimeException("Call to elasticsearch resulted in error:\n" + responseBody);
+            }
+        });
+    }
+
+    private Predicate<String> isTemplateUpToDate(Map<String, String> liveContentHashes) {
+        return templateName -> templatesDescription.getTemplateContentHash(templateName)
+                .map(contentHash -> contentHash.equals(liveContentHashes.get(templatesDescription.getTemplateType(templateName) + "/" + templateName)))
+                .orElse(false);
+    }
+
+    /**
+     * @return content hashes of existing component and composable templates, keyed by template type and name; null value
+     * if template has no content hash. Legacy templates are not read, as they cannot store content hash.
+     */
+    private Map<String, String> liveTemplatesContentHashes() {
+        Map<String, String> contentHashes = new HashMap<>();
+        templatesDescription.getTemplatesNames().stream()
+                .map(templatesDescription::getTemplateType)
+                .filter(type -> type != TemplateType.LEGACY)
+                .distinct()
+                .forEach(type -> readTemplatesContentHashes(type, contentHashes));
+        return contentHashes;
+    }
+
+    private void readTemplatesContentHashes(TemplateType type, Map<String, String> contentHashes) {
+        String templateField = type.endpoint().substring(1);
+        HttpGet request = new HttpGet(url("/" + type.endpoint() + "?filter_path=" + type.listField() + ".name,"
+                + type.listField() + "." + templateField + "._meta." + IndexSettings.CONTENT_HASH_META_FIELD));
+        httpClient.execute(request, response -> {
+            if (response.getCode() != OK && response.getCode() != NOT_FOUND) {
+                assertOk(response, "Cannot read templates definitions");
+            }
+            for (JsonNode template : OBJECT_MAPPER.readTree(response.getEntity().getContent()).path(type.listField())) {
+                JsonNode contentHash = template.path(templateField).path("_meta").path(IndexSettings.CONTENT_HASH_META_FIELD);
+                contentHashes.put(type + "/" + template.path("name").asText(), contentHash.isTextual() ? contentHash.asText() : null);
+            }
+            return null;
+        });
+    }
+
     private boolean templateExists(String templateName) {
-        HttpHead request = new HttpHead(url("/" + templateName));
+        HttpHead request = new HttpHead(url(templatesDescription.getTemplateType(templateName).path(templateName)));
         return httpClient.execute(request, response ->
                 response.getCode() == OK);
     }
 
+    /**
+     * Deletes templates in reverse dependency order, so component templates are deleted after composable templates using them.
+     */
     void deleteTemplates() {
-        templatesDescription.getTemplatesNames().forEach(this::deleteTemplate);
+        List<String> templatesNames = templatesDescription.getTemplatesNames().stream()
+                .filter(this::templateExists)
+                .collect(toList());
+        TaskGraph<String> graph = new TaskGraph<>();
+        templatesNames.forEach(templateName -> graph.add(templateName, templatesDescription.getTemplateDependencies(templateName), () -> { }));
+        List<String> deletionOrder = graph.topologicalOrder();
+        Collections.reverse(deletionOrder);
+        deletionOrder.forEach(this::deleteExistingTemplate);
+        if (!deletionOrder.isEmpty()) {
+            waitForClusterYellow();
+        }
     }
 
     void deleteTemplate(String templateName) {
-        if (indexExists(templateName)) {
-            HttpDelete request = new HttpDelete(url("/_template/" + templateName));
-            httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Delete request resulted in error"));
+        if (templateExists(templateName)) {
+            deleteExistingTemplate(templateName);
             waitForClusterYellow();
         } else {
             logger.warn("Template: {} does not exists so cannot be removed", templateName);
         }
     }
 
-    private void waitForClusterYellow() {
+    private void deleteExistingTemplate(String templateName) {
+        HttpDelete request = new HttpDelete(url(templatesDescription.getTemplateType(templateName).path(templateName)));
+        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Delete request resulted in error"));
+    }
+
+    void waitForClusterYellow() {
         HttpGet request = new HttpGet(url("/_cluster/health?wait_for_status=yellow&timeout=60s"));
         httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Cluster does not reached yellow status in specified timeout"));
     }
@@ -130,38 +332,154 @@ class ElasticRestClient {
     }
 
     void bulkIndex(Collection<IndexRequest> indexRequests) {
-        String bulkRequestBody = indexRequests.stream()
-                .flatMap(request ->
-                    Stream.of(
-                            indexMetadataJson(request.getIndexName(), request.getId(), request.getRouting()),
-                            request.getJson()
-                    )
-                )
-                .map((jsonNodes) -> jsonNodes.replace('\n', ' ').replace('\r', ' '))
-                .collect(joining("\n")) + "\n";
+        BulkBodyWriter writer = bulkBodyWriter();
+        BulkBuffer body = new BulkBuffer(indexRequests.size() * 256);
+        indexRequests.forEach(request -> writer.write(request, body));
+        bulkAndRefresh(body);
+    }
 
-        performBulkRequest(url("/_bulk"), bulkRequestBody);
+    <T> void bulkIndex(String indexName, Collection<T> documents, Function<? super T, String> idExtractor, Function<? super T, String> routingExtractor) {
+        BulkBuffer body = new BulkBuffer(documents.size() * 256);
+        bulkBodyWriter().writeAll(indexName, documents, idExtractor, routingExtractor, body);
+        bulkAndRefresh(body);
     }
 
-    private String indexMetadataJson(String indexName, String id, String routing) {
-        StringJoiner joiner = new StringJoiner(",");
+    /**
+     * Sends operations in one bulk request and fails on first failed item; deleting missing document is not a failure
+     */
+    void bulk(Collection<? extends BulkOperation> operations) {
+        BulkBodyWriter writer = bulkBodyWriter();
+        BulkBuffer body = new BulkBuffer(operations.size() * 256);
+        operations.forEach(operation -> writer.write(operation, body));
+        HttpPost request = newBulkRequest(body.buffer(), body.size());
+        httpClient.execute(request, (ClassicHttpResponse response) -> {
+            assertOk(response, "Bulk request finished with error");
+            byte[] responseBody = readBulkResponse(response);
+            if (hasBulkItemErrors(responseBody)) {
+                throw new IllegalStateException("Bulk request contains failed items: " + firstBulkItemError(responseBody));
+            }
+        });
+        refresh();
+    }
+
+    private void bulkAndRefresh(BulkBuffer body) {
+        HttpPost request = newBulkRequest(body.buffer(), body.size());
+        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Request finished with error"));
+        refresh();
+    }
 
-        if (indexName != null) {
-            joiner.add("\"_index\": \"" + indexName + "\"");
+    /**
+     * Action and source of given request in bulk body format, each terminated with new line (or SMILE stream separator)
+     */
+    byte[] bulkItem(BulkOperation operation) {
+        return bulkBodyWriter().write(operation);
+    }
+
+    /**
+     * Created on first use, so version of Elasticsearch is asked for once instead of with every bulk request
+     */
+    private BulkBodyWriter bulkBodyWriter() {
+        if (bulkBodyWriter == null) {
+            bulkBodyWriter = new BulkBodyWriter(contentFormat, documentMapper, newESVersion());
         }
+        return bulkBodyWriter;
+    }
 
-        if (id != null) {
-            joiner.add("\"_id\": \"" + id + "\"");
+    /**
+     * Bulk request with body in configured format; response is always requested in JSON
+     */
+    private HttpPost newBulkRequest(byte[] body, int length) {
+        HttpPost request = new HttpPost(url("/_bulk"));
+        request.setHeader(new BasicHeader(HttpHeaders.ACCEPT, ContentFormat.JSON.mediaType()));
+        request.setEntity(new ByteArrayEntity(body, 0, length, contentFormat.contentType()));
+        return request;
+    }
+
+    void bulk(String defaultIndexName, byte[] body, int length) {
+        HttpPost request = new HttpPost(url(defaultIndexName == null ? "/_bulk" : "/" + defaultIndexName + "/_bulk"));
+        request.setEntity(new ByteArrayEntity(body, 0, length, ContentType.APPLICATION_JSON));
+        httpClient.execute(request, (ClassicHttpResponse response) -> {
+            assertOk(response, "Bulk request finished with error");
+            byte[] responseBody = readBulkResponse(response);
+            if (hasBulkItemErrors(responseBody)) {
+                throw new IllegalStateException("Bulk request contains failed items: " + firstBulkItemError(responseBody));
+            }
+        });
+    }
+
+    /**
+     * Sends bulk request of given number of items and returns positions of items rejected because Elasticsearch
+     * was overloaded (429 or full thread pool queue), which may be retried later. All items are rejected when
+     * the whole request got 429 Too Many Requests; other failures are thrown.
+     */
+    BitSet bulkReturningRejected(byte[] body, int length, int items) {
+        HttpPost request = newBulkRequest(body, length);
+        return httpClient.execute(request, (ClassicHttpResponse response) -> {
+            BitSet rejected = new BitSet(items);
+            if (response.getCode() == TOO_MANY_REQUESTS) {
+                rejected.set(0, items);
+                return rejected;
+            }
+            assertOk(response, "Bulk request finished with error");
+            byte[] responseBody = readBulkResponse(response);
+            if (hasBulkItemErrors(responseBody)) {
+                int item = 0;
+                for (JsonNode itemNode : OBJECT_MAPPER.readTree(responseBody).path("items")) {
+                    JsonNode result = itemNode.elements().next();
+                    if (isRejection(result)) {
+                        rejected.set(item);
+                    } else if (result.has("error")) {
+                        throw new IllegalStateException("Bulk request contains failed items: " + result.get("error"));
+                    }
+                    item++;
+                }
+            }
+            return rejected;
+        });
+    }
+
+    private static boolean isRejection(JsonNode bulkItemResult) {
+        return bulkItemResult.path("status").asInt() == TOO_MANY_REQUESTS
+                || "es_rejected_execution_exception".equals(bulkItemResult.path("error").path("type").asText());
+    }
+
+    private byte[] readBulkResponse(ClassicHttpResponse response) {
+        try {
+            return IOUtils.toByteArray(response.getEntity().getContent());
+        } catch (IOException e) {
+            throw new HttpClient.HttpRequestException(e);
+        }
+    }
+
+    private boolean hasBulkItemErrors(byte[] responseBody) {
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(responseBody)) {
+            parser.nextToken();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("errors")) {
+                    return parser.getBooleanValue();
+                }
+                parser.skipChildren();
+            }
+            return false;
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse bulk response", e);
         }
+    }
 
-        if (routing != null) {
-            if (newESVersion()) {
-                joiner.add("\"routing\": \"" + routing + "\"");
-            } else {
-                joiner.add("\"_routing\": \"" + routing + "\"");
+    private String firstBulkItemError(byte[] responseBody) {
+        try {
+            for (JsonNode item : OBJECT_MAPPER.readTree(responseBody).path("items")) {
+                JsonNode result = item.elements().next();
+                if (result.has("error")) {
+                    return result.get("error").toString();
+                }
             }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse bulk response", e);
         }
-        return "{ \"index\": {" + joiner + "} }";
+        return "unknown error";
     }
 
     void refresh() {
@@ -187,12 +505,24 @@ class ElasticRestClient {
         });
     }
 
-    private void performBulkRequest(String requestUrl, String bulkRequestBody) {
-        HttpPost request = new HttpPost(requestUrl);
-        request.setHeader(new BasicHeader(HttpHeaders.CONTENT_TYPE, "application/json"));
-        request.setEntity(new StringEntity(bulkRequestBody, UTF_8));
-        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Request finished with error"));
-        refresh();
+    void close() {
+        httpClient.close();
+    }
+
+    /**
+     * Client of the same node keeping up to given number of connections open, so that many threads may send
+     * requests at once; close it when it is no longer needed
+     */
+    ElasticRestClient withConnectionPool(int connections) {
+        return new ElasticRestClient(elasticsearchHttpPort, httpClient.withConnectionPool(connections), indicesDescription, templatesDescription,
+                contentFormat, documentMapper);
+    }
+
+    /**
+     * Target sending recorded requests as they are, over given number of connections
+     */
+    WorkloadReplay.Target replayTarget(int connections) {
+        return WorkloadReplay.Target.of(httpClient.rawWithMaxConnections(connections), url(""));
     }
 
     private String url(String path) {
@@ -207,6 +537,12 @@ class ElasticRestClient {
 
     private String readBodySafely(ClassicHttpResponse response) {
         try {
+            String contentType = response.getEntity().getContentType();
+            if (contentType != null && contentType.startsWith(ContentFormat.SMILE.mediaType())) {
+                byte[] body = IOUtils.toByteArray(response.getEntity().getContent());
+                JsonNode json = OBJECT_MAPPER.readTree(ContentFormat.SMILE.factory().createParser(body));
+                return String.valueOf(json);
+            }
             return IOUtils.toString(response.getEntity().getContent(), UTF_8);
         } catch (IOException e) {
             logger.error("Error during reading response body", e);
@@ -266,4 +602,148 @@ class ElasticRestClient {
             throw new RuntimeException(e);
         }
     }
+
+    SearchResult search(String indexName, String searchRequestBody) {
+        return searchPath("/" + indexName + "/_search", searchRequestBody);
+    }
+
+    /**
+     * Search within point in time, which already determines searched indices
+     */
+    SearchResult searchPointInTime(String searchRequestBody) {
+        return searchPath("/_search", searchRequestBody);
+    }
+
+    String openPointInTime(String indexName, String keepAlive) {
+        HttpPost request = new HttpPost(url("/" + indexName + "/_pit?keep_alive=" + keepAlive));
+        byte[] response = executeForBytes(request, "Cannot open point in time for " + indexName);
+        try {
+            return OBJECT_MAPPER.readTree(response).path("id").asText();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse point in time response", e);
+        }
+    }
+
+    void closePointInTime(String pointInTimeId) {
+        HttpDelete request = new HttpDelete(url("/_pit"));
+        request.setEntity(new StringEntity(OBJECT_MAPPER.createObjectNode().put("id", pointInTimeId).toString(), ContentType.APPLICATION_JSON));
+        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Cannot close point in time"));
+    }
+
+    private SearchResult searchPath(String path, String searchRequestBody) {
+        HttpPost request = new HttpPost(url(path));
+        request.setEntity(new StringEntity(searchRequestBody, ContentType.APPLICATION_JSON));
+        acceptContentFormat(request);
+        byte[] response = executeForBytes(request, "Error during search (" + path + ")");
+        try {
+            return searchResponseParser.parseSearch(response);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse search response", e);
+        }
+    }
+
+    long count(String indexName, String queryRequestBody) {
+        HttpPost request = new HttpPost(url("/" + indexName + "/_count"));
+        if (queryRequestBody != null) {
+            request.setEntity(new StringEntity(queryRequestBody, ContentType.APPLICATION_JSON));
+        }
+        acceptContentFormat(request);
+        byte[] response = executeForBytes(request, "Error during count in " + indexName);
+        try {
+            return searchResponseParser.parseCount(response);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse count response", e);
+        }
+    }
+
+    /**
+     * Uses multi get, which unlike get does not require document type on Elasticsearch versions older than 7
+     */
+    List<Document> getDocuments(String indexName, Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        HttpPost request = new HttpPost(url("/" + indexName + "/_mget"));
+        try {
+            request.setEntity(new ByteArrayEntity(OBJECT_MAPPER.writeValueAsBytes(Collections.singletonMap("ids", ids)), ContentType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot serialize multi get request", e);
+        }
+        acceptContentFormat(request);
+        byte[] response = executeForBytes(request, "Error during multi get from " + indexName);
+        try {
+            return searchResponseParser.parseMultiGet(response);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot parse multi get response", e);
+        }
+    }
+
+    void registerSnapshotRepository(String repositoryName, String location) {
+        ObjectNode body = OBJECT_MAPPER.createObjectNode().put("type", "fs");
+        body.putObject("settings").put("location", location);
+        HttpPut request = new HttpPut(url("/_snapshot/" + repositoryName));
+        request.setEntity(new StringEntity(body.toString(), ContentType.APPLICATION_JSON));
+        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Cannot register snapshot repository " + location));
+    }
+
+    boolean snapshotExists(String repositoryName, String snapshotName) {
+        HttpGet request = new HttpGet(url("/_snapshot/" + repositoryName + "/" + snapshotName));
+        return httpClient.execute(request, response -> {
+            if (response.getCode() == NOT_FOUND) {
+                return false;
+            }
+            assertOk(response, "Cannot check snapshot " + snapshotName);
+            return true;
+        });
+    }
+
+    void createSnapshot(String repositoryName, String snapshotName, Collection<String> indicesNames) {
+        HttpPut request = new HttpPut(url("/_snapshot/" + repositoryName + "/" + snapshotName + "?wait_for_completion=true"));
+        request.setEntity(new StringEntity(snapshotRequestBody(indicesNames), ContentType.APPLICATION_JSON));
+        httpClient.execute(request, (ClassicHttpResponse response) -> assertOk(response, "Cannot create snapshot " + snapshotName));
+    }
+
+    /**
+     * Closes given indices, as only closed or missing indices can be restored, and restores them from snapshot.
+     * Other indices are not affected.
+     */
+    void restoreSnapshot(String repositoryName, String snapshotName, Collection<String> indicesNames) {
+        HttpPost close = new HttpPost(url("/" + String.join(",", indicesNames) + "/_close?ignore_unavailable=true&allow_no_indices=true"));
+        httpClient.execute(close, (ClassicHttpResponse response) -> assertOk(response, "Cannot close indices " + indicesNames));
+        HttpPost restore = new HttpPost(url("/_snapshot/" + repositoryName + "/" + snapshotName + "/_restore?wait_for_completion=true"));
+        restore.setEntity(new StringEntity(snapshotRequestBody(indicesNames), ContentType.APPLICATION_JSON));
+        httpClient.execute(restore, (ClassicHttpResponse response) -> assertOk(response, "Cannot restore snapshot " + snapshotName));
+        waitForClusterYellow();
+    }
+
+    private static String snapshotRequestBody(Collection<String> indicesNames) {
+        return OBJECT_MAPPER.createObjectNode()
+                .put("indices", String.join(",", indicesNames))
+                .put("include_global_state", false)
+                .toString();
+    }
+
+    /**
+     * Statistics of the local node, limited to values needed by {@link ResourceSampler}
+     */
+    byte[] localNodeStats() {
+        HttpGet request = new HttpGet(url("/_nodes/_local/stats/jvm,thread_pool,indices,process?filter_path="
+                + "nodes.*.jvm.mem.heap_used_in_bytes,nodes.*.jvm.mem.heap_max_in_bytes,nodes.*.jvm.gc.collectors,"
+                + "nodes.*.thread_pool.*.queue,nodes.*.thread_pool.*.rejected,"
+                + "nodes.*.indices.indexing.index_total,nodes.*.indices.indexing.index_time_in_millis,"
+                + "nodes.*.indices.search.query_total,nodes.*.indices.search.query_time_in_millis,"
+                + "nodes.*.indices.segments.count,nodes.*.process.cpu.total_in_millis"));
+        return executeForBytes(request, "Cannot read node stats");
+    }
+
+    private void acceptContentFormat(HttpUriRequestBase request) {
+        request.setHeader(new BasicHeader(HttpHeaders.ACCEPT, contentFormat.mediaType()));
+    }
+
+    private byte[] executeForBytes(HttpUriRequestBase request, String errorMessage) {
+        return httpClient.execute(request, response -> {
+            assertOk(response, errorMessage);
+            return IOUtils.toByteArray(response.getEntity().getContent());
+        });
+    }
 }
@@ -12,9 +12,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.ProcessBuilder.Redirect;
+import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -22,20 +31,36 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.apache.commons.io.FileUtils.forceMkdir;
 import static org.apache.commons.io.FileUtils.getFile;
 import static org.apache.commons.lang3.SystemUtils.IS_OS_WINDOWS;
+import static pl.allegro.tech.embeddedelasticsearch.TaskGraph.unchecked;
 
 class ElasticSearchInstaller {
 
     private static final Logger logger = LoggerFactory.getLogger(ElasticSearchInstaller.class);
     private static final String ELS_PACKAGE_PREFIX = "elasticsearch-";
+    private static final String DISTRIBUTIONS_DIRECTORY = "distributions";
+    private static final String INSTANCES_DIRECTORY = "instances";
+    private static final String DISTRIBUTION_COMPLETE_MARKER = ".complete";
 
     private final InstanceSettings instanceSettings;
     private final InstallationDescription installationDescription;
     private final ElasticDownloader elasticDownloader;
+    private final File inMemoryDataDirectory;
+    private final File instanceDirectory;
+    private final Map<Plugin, Path> fetchedPlugins = new ConcurrentHashMap<>();
+    private volatile Path downloadedTo;
+    private volatile String elasticsearchYml;
 
     ElasticSearchInstaller(InstanceSettings instanceSettings, InstallationDescription installationDescription) {
         this.instanceSettings = instanceSettings;
         this.installationDescription = installationDescription;
         this.elasticDownloader = new ElasticDownloader(installationDescription);
+        String instanceName = ELS_PACKAGE_PREFIX + installationDescription.getVersion() + "-" + UUID.randomUUID();
+        this.inMemoryDataDirectory = installationDescription.getInMemoryDataDirectory()
+                .map(directory -> new File(directory, instanceName))
+                .orElse(null);
+        this.instanceDirectory = installationDescription.isSharedDistribution()
+                ? getFile(installationDescription.getInstallationDirectory(), INSTANCES_DIRECTORY, instanceName)
+                : null;
     }
 
     File getExecutableFile() {
@@ -46,22 +71,145 @@ class ElasticSearchInstaller {
         return fileRelativeToInstallationDir("bin", systemDependentExtension("elasticsearch-setup-passwords"));
     }
 
+    /**
+     * Elasticsearch home directory containing binaries and plugins. With shared distribution it is shared
+     * by all instances of the same version and plugins, and must not be modified by them.
+     */
     File getInstallationDirectory() {
+        if (installationDescription.isSharedDistribution()) {
+            return getFile(installationDescription.getInstallationDirectory(), DISTRIBUTIONS_DIRECTORY, distributionName());
+        }
         return getFile(installationDescription.getInstallationDirectory(), ELS_PACKAGE_PREFIX + installationDescription.getVersion());
     }
 
-    void install() throws IOException, InterruptedException {
-        Path downloadedTo = elasticDownloader.download();
-        prepareDirectories();
-        installElastic(downloadedTo);
-        configureElastic();
-        installPlugins();
+    /**
+     * Directory owned by this instance only, removed on stop
+     */
+    File getInstanceDirectory() {
+        return instanceDirectory != null ? instanceDirectory : getInstallationDirectory();
+    }
+
+    /**
+     * Configuration directory of this instance passed as ES_PATH_CONF, empty if configuration lives in installation directory
+     */
+    Optional<File> getConfigDirectory() {
+        return Optional.ofNullable(instanceDirectory).map(directory -> new File(directory, "config"));
+    }
+
+    /**
+     * Directory Elasticsearch keeps indices in, as configured by path.data
+     */
+    File getDataDirectory() {
+        return effectiveInstanceSettings().get("path.data")
+                .map(path -> new File(path.toString()))
+                .orElseGet(() -> new File(getInstallationDirectory(), "data"));
+    }
+
+    Optional<File> getInMemoryDataDirectory() {
+        return Optional.ofNullable(inMemoryDataDirectory);
+    }
+
+    /**
+     * Adds installation phases to startup graph, so independent ones overlap: plugin packages are fetched and configuration
+     * is rendered while the distribution is being downloaded and extracted
+     */
+    void addInstallationPhases(TaskGraph<String> phases) {
+        phases.add("download", Collections.emptyList(), unchecked(() -> downloadedTo = elasticDownloader.download()));
+        phases.add("fetch-plugins", Collections.emptyList(), unchecked(this::fetchPlugins));
+        phases.add("render-config", Collections.emptyList(), () -> elasticsearchYml = effectiveInstanceSettings().toYaml());
+        phases.add("prepare-data-directory", Collections.emptyList(), unchecked(this::prepareInMemoryDataDirectory));
+        if (installationDescription.isSharedDistribution()) {
+            phases.add("install-distribution", Arrays.asList("download", "fetch-plugins"), unchecked(() -> installSharedDistribution(downloadedTo)));
+            phases.add("prepare-instance", Collections.singletonList("install-distribution"), unchecked(this::prepareInstanceDirectory));
+            phases.add("write-config", Arrays.asList("prepare-instance", "render-config"), unchecked(this::configureElastic));
+            return;
+        }
+        phases.add("extract", Collections.singletonList("download"), unchecked(() -> {
+            prepareDirectories();
+            installElastic(downloadedTo);
+        }));
+        phases.add("write-config", Arrays.asList("extract", "render-config"), unchecked(this::configureElastic));
+        // plugin manager reads elasticsearch.yml, so it must be complete
+        phases.add("install-plugins", Arrays.asList("write-config", "fetch-plugins"), unchecked(this::installPlugins));
     }
 
     private void prepareDirectories() throws IOException {
         forceMkdir(getInstallationDirectory());
     }
 
+    /**
+     * Extracts distribution and installs plugins once, under a lock shared by all threads and JVMs. Distribution is extracted
+     * into staging directory and renamed when complete, so instances never see partially installed distribution.
+     */
+    void installSharedDistribution(Path downloadedTo) throws IOException, InterruptedException {
+        File distribution = getInstallationDirectory();
+        File distributions = distribution.getParentFile();
+        forceMkdir(distributions);
+        FileLocks.withLock(new File(distributions, distribution.getName() + ".lock"), () -> {
+            if (isDistributionComplete()) {
+                logger.info("Using shared Elasticsearch distribution " + distribution);
+                return null;
+            }
+            FileUtils.deleteQuietly(distribution);
+            File staging = new File(distributions, ".staging-" + UUID.randomUUID());
+            try {
+                logger.info("Installing shared Elasticsearch distribution into " + distribution + "...");
+                unzip(downloadedTo, staging);
+                File[] extracted = staging.listFiles(File::isDirectory);
+                if (extracted == null || extracted.length != 1) {
+                    throw new EmbeddedElasticsearchStartupException("Unexpected content of Elasticsearch package " + downloadedTo);
+                }
+                Files.move(extracted[0].toPath(), distribution.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                FileUtils.deleteQuietly(staging);
+            }
+            installPlugins();
+            FileUtils.touch(new File(distribution, DISTRIBUTION_COMPLETE_MARKER));
+            return null;
+        });
+    }
+
+    private boolean isDistributionComplete() {
+        return new File(getInstallationDirectory(), DISTRIBUTION_COMPLETE_MARKER).exists();
+    }
+
+    private void prepareInstanceDirectory() throws IOException {
+        logger.info("Using instance directory " + instanceDirectory);
+        FileUtils.copyDirectory(new File(getInstallationDirectory(), "config"), getConfigDirectory().get());
+    }
+
+    private String distributionName() {
+        String distributionName = ELS_PACKAGE_PREFIX + installationDescription.getVersion();
+        if (installationDescription.getPlugins().isEmpty()) {
+            return distributionName;
+        }
+        // plugins are installed into distribution, so every set of plugins needs its own copy
+        byte[] plugins = installationDescription.getPlugins().stream()
+                .map(Plugin::getExpression)
+                .sorted()
+                .collect(Collectors.joining("\n"))
+                .getBytes(UTF_8);
+        return distributionName + "-" + ContentHash.of(plugins).substring(0, 8);
+    }
+
+    void prepareInMemoryDataDirectory() throws IOException {
+        if (inMemoryDataDirectory == null) {
+            return;
+        }
+        File tmpfsDirectory = inMemoryDataDirectory.getParentFile();
+        if (!tmpfsDirectory.isDirectory()) {
+            throw new EmbeddedElasticsearchStartupException("In memory data directory " + tmpfsDirectory + " does not exist");
+        }
+        long requiredSpace = installationDescription.getInMemoryDataDirectoryMinimumFreeSpaceInBytes();
+        long usableSpace = tmpfsDirectory.getUsableSpace();
+        if (usableSpace < requiredSpace) {
+            throw new EmbeddedElasticsearchStartupException("Not enough free space in in memory data directory " + tmpfsDirectory
+                    + ": " + usableSpace + " bytes available, " + requiredSpace + " bytes required");
+        }
+        logger.info("Using in memory data directory " + inMemoryDataDirectory);
+        forceMkdir(inMemoryDataDirectory);
+    }
+
     private void installElastic(Path downloadedTo) throws IOException {
         File destination = getInstallationDirectory().getParentFile();
         FileUtils.forceDelete(getInstallationDirectory());
@@ -81,8 +229,41 @@ class ElasticSearchInstaller {
     }
 
     private void configureElastic() throws IOException {
-        File elasticsearchYml = getFile(getInstallationDirectory(), "config", "elasticsearch.yml");
-        FileUtils.writeStringToFile(elasticsearchYml, instanceSettings.toYaml(), UTF_8);
+        File configDirectory = getConfigDirectory().orElse(new File(getInstallationDirectory(), "config"));
+        FileUtils.writeStringToFile(new File(configDirectory, "elasticsearch.yml"), elasticsearchYml, UTF_8);
+    }
+
+    InstanceSettings effectiveInstanceSettings() {
+        if (inMemoryDataDirectory == null) {
+            return instanceDirectory == null ? instanceSettings : instanceSettings.withDefaultSettings(instanceDirectorySettings());
+        }
+        Map<String, Object> inMemorySettings = new HashMap<>();
+        inMemorySettings.put("path.data", new File(inMemoryDataDirectory, "data").getAbsolutePath());
+        inMemorySettings.put("path.logs", new File(inMemoryDataDirectory, "logs").getAbsolutePath());
+        // tmpfs is usually small, so disk watermarks would quickly block shard allocation
+        inMemorySettings.put("cluster.routing.allocation.disk.threshold_enabled", false);
+        return instanceSettings.withDefaultSettings(inMemorySettings);
+    }
+
+    private Map<String, Object> instanceDirectorySettings() {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("path.data", new File(instanceDirectory, "data").getAbsolutePath());
+        settings.put("path.logs", new File(instanceDirectory, "logs").getAbsolutePath());
+        return settings;
+    }
+
+    /**
+     * Downloads plugins given by http(s) URL, so the plugin manager installs them from local files later
+     */
+    private void fetchPlugins() throws IOException, InterruptedException {
+        if (installationDescription.isSharedDistribution() && isDistributionComplete()) {
+            return;
+        }
+        for (Plugin plugin : installationDescription.getPlugins()) {
+            if (plugin.expressionIsUrl()) {
+                fetchedPlugins.put(plugin, elasticDownloader.downloadPlugin(new URL(plugin.getExpression())));
+            }
+        }
     }
 
     private void installPlugins() throws IOException, InterruptedException {
@@ -129,13 +310,16 @@ class ElasticSearchInstaller {
     }
 
     private String[] prepareInstallCommand(File pluginManager, Plugin plugin) {
+        String expression = Optional.ofNullable(fetchedPlugins.get(plugin))
+                .map(file -> file.toUri().toString())
+                .orElse(plugin.getExpression());
         if (installationDescription.versionIs1x() && plugin.expressionIsUrl()) {
-            return new String[]{pluginManager.getAbsolutePath(), "--install", plugin.getPluginName(), "--url", plugin.getExpression()};
+            return new String[]{pluginManager.getAbsolutePath(), "--install", plugin.getPluginName(), "--url", expression};
         }
         if (installationDescription.versionIs1x() || installationDescription.versionIs2x()) {
-            return new String[]{pluginManager.getAbsolutePath(), "install", plugin.getExpression()};
+            return new String[]{pluginManager.getAbsolutePath(), "install", expression};
         }
-        return new String[]{pluginManager.getAbsolutePath(), "install", "--batch", plugin.getExpression()};
+        return new String[]{pluginManager.getAbsolutePath(), "install", "--batch", expression};
     }
 
     private File pluginManagerExecutable() {
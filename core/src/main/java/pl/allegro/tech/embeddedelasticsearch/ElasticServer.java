@@ -1,5 +1,6 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.SystemUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,8 +9,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,44 +28,99 @@ import static org.apache.commons.lang3.Validate.isTrue;
 
 class ElasticServer {
     private static final Logger logger = LoggerFactory.getLogger(ElasticServer.class);
+    private static final String MOVED_ASIDE_INFIX = ".deleting-";
 
     private final String esJavaOpts;
     private final File installationDirectory;
+    private final File inMemoryDataDirectory;
+    private final File configDirectory;
+    private final File dataDirectory;
     private final File executableFile;
     private final File executableSetupPasswordFile;
     private final long startTimeoutInMs;
+    private final long stopTimeoutInMs;
     private final boolean cleanInstallationDirectoryOnStop;
 
     private boolean started;
     private final Object startedLock = new Object();
 
-    private Process elastic;
+    private volatile Process elastic;
     private Thread ownerThread;
     private volatile int pid = -1;
     private volatile int httpPort = -1;
     private volatile int transportTcpPort = -1;
+    private boolean portsAssigned = false;
     private final JavaHomeOption javaHome;
 
-    ElasticServer(String esJavaOpts, File installationDirectory, File executableFile, File executableSetupPasswordFile, long startTimeoutInMs, boolean cleanInstallationDirectoryOnStop, JavaHomeOption javaHome) {
+    ElasticServer(String esJavaOpts, File installationDirectory, File inMemoryDataDirectory, File configDirectory, File dataDirectory, File executableFile, File executableSetupPasswordFile, long startTimeoutInMs, long stopTimeoutInMs, boolean cleanInstallationDirectoryOnStop, JavaHomeOption javaHome) {
         this.esJavaOpts = esJavaOpts;
         this.installationDirectory = installationDirectory;
+        this.inMemoryDataDirectory = inMemoryDataDirectory;
+        this.configDirectory = configDirectory;
+        this.dataDirectory = dataDirectory;
         this.executableFile = executableFile;
         this.executableSetupPasswordFile = executableSetupPasswordFile;
         this.startTimeoutInMs = startTimeoutInMs;
+        this.stopTimeoutInMs = stopTimeoutInMs;
         this.cleanInstallationDirectoryOnStop = cleanInstallationDirectoryOnStop;
         this.javaHome = javaHome;
     }
 
+    /**
+     * Ports assigned to the node in its settings, so they do not have to be detected from its log
+     */
+    void usePorts(int httpPort, int transportTcpPort) {
+        this.httpPort = httpPort;
+        this.transportTcpPort = transportTcpPort;
+        this.portsAssigned = true;
+    }
+
     void start() throws InterruptedException {
+        removeDirectoriesMovedAside();
         startElasticProcess();
         installExitHook();
         waitForElasticToStart();
     }
 
+    /**
+     * Stops Elasticsearch process and starts it again using the same installation, configuration and plugins
+     *
+     * @param keepData whether indices should survive restart, otherwise data directory is removed before start
+     */
+    void restart(boolean keepData) throws InterruptedException {
+        try {
+            stopElasticServer();
+            if (!keepData) {
+                logger.info("Removing data directory " + dataDirectory + "...");
+                deleteDirectory(dataDirectory);
+                // passwords are stored in security index, so they have to be generated again
+                securityMap = null;
+            }
+        } catch (IOException e) {
+            throw new EmbeddedElasticsearchStartupException(e);
+        }
+        synchronized (startedLock) {
+            started = false;
+        }
+        if (!portsAssigned) {
+            httpPort = -1;
+            transportTcpPort = -1;
+        }
+        startElasticProcess();
+        waitForElasticToStart();
+    }
+
     void stop() {
+        stop(true);
+    }
+
+    /**
+     * @param asyncCleanup remove installation directory in background, not possible during JVM shutdown
+     */
+    private void stop(boolean asyncCleanup) {
         try {
             stopElasticServer();
-            finalizeClose();
+            finalizeClose(asyncCleanup);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -75,6 +139,7 @@ class ElasticServer {
                             "-b"
                     );
                     javaHome.ifNeedBeSet(javaHomeValue -> builder.environment().put("ES_JAVA_HOME", javaHomeValue));
+                    useConfigDirectory(builder);
                     builder.redirectErrorStream(true);
                     Process securityPasswords = builder.start();
                     BufferedReader outputStream = new BufferedReader(new InputStreamReader(securityPasswords.getInputStream(), UTF_8));
@@ -104,25 +169,91 @@ class ElasticServer {
         }
     }
 
+    /**
+     * Running Elasticsearch process with processes it spawned, empty if it is not running
+     */
+    Optional<ProcessTree> processTree() {
+        Process process = elastic;
+        return process != null && process.isAlive() ? Optional.of(ProcessTree.of(process)) : Optional.empty();
+    }
+
     boolean isStarted() {
         return started;
     }
 
-    private void deleteInstallationDirectory() {
+    private void deleteDirectories(List<File> directories, boolean async) {
+        List<File> movedAside = new ArrayList<>();
         try {
-            deleteDirectory(installationDirectory);
+            for (File directory : directories) {
+                File moved = async ? moveAside(directory) : null;
+                if (moved != null) {
+                    movedAside.add(moved);
+                } else {
+                    deleteDirectory(directory);
+                }
+            }
         } catch (IOException e) {
             throw new EmbeddedElasticsearchStartupException("Could not delete data directory of embedded elasticsearch server. Possibly an instance is running.", e);
         }
+        deleteInBackground(movedAside);
+    }
+
+    /**
+     * Removes directories moved aside by previous instances which did not manage to delete them, e.g. because JVM exited
+     * in the meantime. Instances which are still deleting them are not disturbed, as deletion is idempotent.
+     */
+    private void removeDirectoriesMovedAside() {
+        List<File> movedAside = new ArrayList<>();
+        for (File directory : Arrays.asList(installationDirectory, inMemoryDataDirectory)) {
+            File[] siblings = directory != null ? directory.getParentFile().listFiles(ElasticServer::isMovedAside) : null;
+            if (siblings != null) {
+                movedAside.addAll(Arrays.asList(siblings));
+            }
+        }
+        if (!movedAside.isEmpty()) {
+            logger.info("Removing directories left by previous instances: " + movedAside);
+        }
+        deleteInBackground(movedAside);
+    }
+
+    private static void deleteInBackground(List<File> directories) {
+        if (!directories.isEmpty()) {
+            WorkerPools.newNonDaemonThread("EmbeddedElsDirectoryCleaner", () -> directories.forEach(FileUtils::deleteQuietly)).start();
+        }
+    }
+
+    /**
+     * Renames directory, so the same installation directory can be used again right away while old one is being deleted
+     *
+     * @return renamed directory, or null if it could not be renamed (e.g. because of locked files on Windows)
+     */
+    private static File moveAside(File directory) {
+        if (!directory.exists()) {
+            return null;
+        }
+        File target = new File(directory.getParentFile(), "." + directory.getName() + MOVED_ASIDE_INFIX + UUID.randomUUID());
+        try {
+            Files.move(directory.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return target;
+        } catch (IOException e) {
+            logger.warn("Cannot move " + directory + " aside, it will be deleted synchronously", e);
+            return null;
+        }
+    }
+
+    private static boolean isMovedAside(File parent, String name) {
+        // every directory of an instance is named after Elasticsearch package, so unrelated directories are left alone
+        return name.startsWith(".elasticsearch-") && name.contains(MOVED_ASIDE_INFIX);
     }
 
     private void startElasticProcess() {
-        ownerThread = new Thread(() -> {
+        ownerThread = WorkerPools.newDaemonThread("EmbeddedElsHandler", () -> {
             try {
                 synchronized (this) {
                     ProcessBuilder builder = new ProcessBuilder();
                     builder.environment().put("ES_JAVA_OPTS", esJavaOpts);
                     javaHome.ifNeedBeSet(javaHomeValue -> builder.environment().put("ES_JAVA_HOME", javaHomeValue));
+                    useConfigDirectory(builder);
                     builder.redirectErrorStream(true);
                     builder.command(elasticExecutable());
                     elastic = builder.start();
@@ -136,10 +267,16 @@ class ElasticServer {
             } catch (Exception e) {
                 throw new EmbeddedElasticsearchStartupException(e);
             }
-        }, "EmbeddedElsHandler");
+        });
         ownerThread.start();
     }
 
+    private void useConfigDirectory(ProcessBuilder builder) {
+        if (configDirectory != null) {
+            builder.environment().put("ES_PATH_CONF", configDirectory.getAbsolutePath());
+        }
+    }
+
     private String readLine(BufferedReader outputStream) {
         try {
             return outputStream.readLine();
@@ -150,7 +287,7 @@ class ElasticServer {
     }
 
     private void installExitHook() {
-        Runtime.getRuntime().addShutdownHook(new Thread(this::stop, "ElsInstanceCleaner"));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stop(false), "ElsInstanceCleaner"));
     }
 
     private String elasticExecutable() {
@@ -184,9 +321,9 @@ class ElasticServer {
             signalElasticStarted();
         } else if (line.contains(", pid[")) {
             tryExtractPid(line);
-        } else if (line.contains("publish_address") && (line.contains("[http") || line.contains("HttpServer"))) {
+        } else if (httpPort == -1 && line.contains("publish_address") && (line.contains("[http") || line.contains("HttpServer"))) {
             tryExtractHttpPort(line);
-        } else if (line.contains("publish_address") && (line.contains("[transport") || line.contains("TransportService"))) {
+        } else if (transportTcpPort == -1 && line.contains("publish_address") && (line.contains("[transport") || line.contains("TransportService"))) {
             tryExtractTransportTcpPort(line);
         }
     }
@@ -221,26 +358,33 @@ class ElasticServer {
 
     private void stopElasticServer() throws IOException, InterruptedException {
         logger.info("Stopping elasticsearch server...");
-        if (pid > -1) {
-            stopElasticGracefully();
-        }
-        pid = -1;
         if (elastic != null) {
-            int rc = elastic.waitFor();
-            logger.info("Elasticsearch exited with RC " + rc);
+            ProcessTree processTree = ProcessTree.of(elastic);
+            if (pid > -1) {
+                stopElasticGracefully(processTree);
+            }
+            if (!processTree.waitFor(stopTimeoutInMs, TimeUnit.MILLISECONDS)) {
+                logger.warn("Elasticsearch did not stop within " + stopTimeoutInMs + " ms, killing it");
+                processTree.destroyForcibly();
+                processTree.waitFor(stopTimeoutInMs, TimeUnit.MILLISECONDS);
+            }
+            if (!elastic.isAlive()) {
+                logger.info("Elasticsearch exited with RC " + elastic.exitValue());
+            }
         }
+        pid = -1;
         elastic = null;
         if (ownerThread != null) {
-            ownerThread.join();
+            ownerThread.join(stopTimeoutInMs);
         }
         ownerThread = null;
     }
 
-    private void stopElasticGracefully() throws IOException {
+    private void stopElasticGracefully(ProcessTree processTree) throws IOException {
         if (SystemUtils.IS_OS_WINDOWS) {
             stopElasticOnWindows();
         } else {
-            elastic.destroy();
+            processTree.destroy();
         }
     }
 
@@ -248,11 +392,18 @@ class ElasticServer {
         Runtime.getRuntime().exec("taskkill /f /pid " + pid);
     }
 
-    private void finalizeClose() {
+    private void finalizeClose(boolean asyncCleanup) {
+        List<File> directories = new ArrayList<>();
         if (this.cleanInstallationDirectoryOnStop) {
             logger.info("Removing installation directory...");
-            deleteInstallationDirectory();
+            directories.add(installationDirectory);
+        }
+        if (inMemoryDataDirectory != null) {
+            // it takes memory until removed, so it does not outlive the node even when installation is kept
+            logger.info("Removing in memory data directory...");
+            directories.add(inMemoryDataDirectory);
         }
+        deleteDirectories(directories, asyncCleanup);
         logger.info("Finishing...");
         started = false;
     }
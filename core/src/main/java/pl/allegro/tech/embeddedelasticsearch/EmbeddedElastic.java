@@ -1,5 +1,7 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -8,10 +10,17 @@ import pl.allegro.tech.embeddedelasticsearch.InstallationDescription.Plugin;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.Proxy;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
@@ -19,6 +28,7 @@ import static pl.allegro.tech.embeddedelasticsearch.Require.require;
 
 public final class EmbeddedElastic {
     private static final Logger logger = LoggerFactory.getLogger(EmbeddedElastic.class);
+    private static final int SNAPSHOT_HASH_LENGTH = 16;
 
     private final String esJavaOpts;
     private final InstanceSettings instanceSettings;
@@ -26,9 +36,26 @@ public final class EmbeddedElastic {
     private final TemplatesDescription templatesDescription;
     private final InstallationDescription installationDescription;
     private final long startTimeoutInMs;
+    private final long stopTimeoutInMs;
     private final boolean withSecurity;
-    private ElasticServer elasticServer;
-    private ElasticRestClient elasticRestClient;
+    private final File snapshotRepositoryDirectory;
+    private final PortRegistry portRegistry;
+    private PortRegistry.Reservation portReservation;
+    private volatile ElasticServer elasticServer;
+    private volatile ElasticRestClient elasticRestClient;
+    private final long resourceSamplingIntervalInMs;
+    private final RestCallStatistics restCallStatistics;
+    private final List<RestCallListener> restCallListeners;
+    private final HttpCompression httpCompression;
+    private final int minimumCompressedBytes;
+    private final ContentFormat contentFormat;
+    private final ObjectMapper objectMapper;
+    private ResourceSampler resourceSampler;
+    private final List<RecordingProxy> recordingProxies = new CopyOnWriteArrayList<>();
+    private Snapshots snapshots;
+    private final boolean lazyStart;
+    private volatile CompletableFuture<Void> startup;
+    private volatile StartupReport startupReport;
     private volatile boolean started = false;
     private final JavaHomeOption javaHome;
 
@@ -38,50 +65,207 @@ public final class EmbeddedElastic {
 
     private EmbeddedElastic(String esJavaOpts, InstanceSettings instanceSettings,
                             IndicesDescription indicesDescription, TemplatesDescription templatesDescription,
-                            InstallationDescription installationDescription, long startTimeoutInMs, JavaHomeOption javaHome,
-                            boolean withSecurity) {
+                            InstallationDescription installationDescription, long startTimeoutInMs, long stopTimeoutInMs, JavaHomeOption javaHome,
+                            boolean withSecurity, File snapshotRepositoryDirectory, PortRegistry portRegistry, boolean lazyStart,
+                            long resourceSamplingIntervalInMs, RestCallStatistics restCallStatistics,
+                            List<RestCallListener> restCallListeners, HttpCompression httpCompression, int minimumCompressedBytes,
+                            ContentFormat contentFormat, ObjectMapper objectMapper) {
         this.esJavaOpts = esJavaOpts;
         this.instanceSettings = instanceSettings;
         this.indicesDescription = indicesDescription;
         this.templatesDescription = templatesDescription;
         this.installationDescription = installationDescription;
         this.startTimeoutInMs = startTimeoutInMs;
+        this.stopTimeoutInMs = stopTimeoutInMs;
         this.javaHome = javaHome;
         this.withSecurity = withSecurity;
+        this.snapshotRepositoryDirectory = snapshotRepositoryDirectory;
+        this.portRegistry = portRegistry;
+        this.lazyStart = lazyStart;
+        this.resourceSamplingIntervalInMs = resourceSamplingIntervalInMs;
+        this.restCallStatistics = restCallStatistics;
+        List<RestCallListener> listeners = new ArrayList<>();
+        listeners.add(restCallStatistics);
+        listeners.addAll(restCallListeners);
+        this.restCallListeners = Collections.unmodifiableList(listeners);
+        this.httpCompression = httpCompression;
+        this.minimumCompressedBytes = minimumCompressedBytes;
+        this.contentFormat = contentFormat;
+        this.objectMapper = objectMapper;
     }
 
     /**
-     * Downloads Elasticsearch with specified plugins, setups them and starts.
+     * Downloads Elasticsearch with specified plugins, setups them and starts. With {@link Builder#withLazyStart()} it only
+     * begins to do so in background and returns immediately.
      *
      * @throws IOException if the installation directory cannot be created or the file already exists but is not a directory.
      * @throws InterruptedException if the current thread is interrupted by another thread while it is waiting, then the wait is ended and an InterruptedException is thrown.
      */
     public synchronized EmbeddedElastic start() throws IOException, InterruptedException {
         if (!started) {
-            logger.info("Starting embedded Elastic.");
             started = true;
-            installElastic();
-            startElastic();
-            createRestClient();
-            createTemplates();
-            createIndices();
+            if (lazyStart) {
+                logger.info("Starting embedded Elastic in background.");
+                startup = CompletableFuture.runAsync(this::startNodeInBackground, WorkerPools.newThreadPerTask("EmbeddedElsStartup"));
+            } else {
+                logger.info("Starting embedded Elastic.");
+                startNode();
+            }
         }
         return this;
     }
 
+    /**
+     * Runs startup phases as a graph, so independent phases overlap, and logs which of them determined startup time
+     */
+    private void startNode() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ElasticSearchInstaller elasticSearchInstaller = new ElasticSearchInstaller(instanceSettingsWithReservedPorts(), installationDescription);
+        logger.info("Installing elasticsearch to " + elasticSearchInstaller.getInstallationDirectory());
+        TaskGraph<String> phases = new TaskGraph<>();
+        elasticSearchInstaller.addInstallationPhases(phases);
+        phases.add("start-node", new ArrayList<>(phases.keys()), TaskGraph.unchecked(() -> {
+            createElasticServer(elasticSearchInstaller);
+            startElastic();
+        }));
+        phases.add("create-client", Collections.singletonList("start-node"), this::createRestClient);
+        phases.add("sync-schema", Collections.singletonList("create-client"), () -> elasticRestClient.syncSchema());
+        ExecutorService executor = WorkerPools.newIoPool("EmbeddedElsStartupPhase", phases.keys().size());
+        boolean completed = false;
+        try {
+            phases.run(executor);
+            completed = true;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                // failed startup often ends the test before stop() is called, and memory taken by the directory would not be released
+                elasticSearchInstaller.getInMemoryDataDirectory().ifPresent(FileUtils::deleteQuietly);
+            }
+        }
+        startupReport = new StartupReport(phases.durationsInNanos(), phases.criticalPath(), System.nanoTime() - start);
+        logger.info(startupReport.toString());
+        resourceSampler = new ResourceSampler(() -> elasticRestClient, () -> elasticServer.processTree());
+        if (resourceSamplingIntervalInMs > 0) {
+            resourceSampler.startSampling(resourceSamplingIntervalInMs);
+        }
+    }
+
+    private void startNodeInBackground() {
+        try {
+            startNode();
+        } catch (IOException e) {
+            throw new EmbeddedElasticsearchStartupException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedElasticsearchStartupException(e);
+        }
+    }
+
+    /**
+     * Blocks until Elasticsearch started in background is ready, rethrowing failure of the startup
+     */
+    private void awaitStartup() {
+        CompletableFuture<Void> pendingStartup = startup;
+        if (pendingStartup == null) {
+            return;
+        }
+        try {
+            pendingStartup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmbeddedElasticsearchStartupException("Interrupted while waiting for Elasticsearch to start", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof EmbeddedElasticsearchStartupException) {
+                throw (EmbeddedElasticsearchStartupException) e.getCause();
+            }
+            throw new EmbeddedElasticsearchStartupException(e.getCause());
+        }
+    }
+
+    private ElasticServer server() {
+        awaitStartup();
+        return elasticServer;
+    }
+
+    private ElasticRestClient restClient() {
+        awaitStartup();
+        return elasticRestClient;
+    }
+
+    /**
+     * Durations of startup phases and the critical path of the startup, available once Elasticsearch is started
+     */
+    public StartupReport getStartupReport() {
+        awaitStartup();
+        return startupReport;
+    }
+
+    /**
+     * Starts recording resource usage of the node, e.g. at the beginning of a test; {@link ResourceRecording#stop()}
+     * summarizes and logs it. Combine with {@link Builder#withResourceSampling(long, TimeUnit)} to capture peaks in between.
+     */
+    public ResourceRecording startResourceRecording(String name) {
+        awaitStartup();
+        return new ResourceRecording(name, resourceSampler, resourceSampler.sample());
+    }
+
+    /**
+     * Starts HTTP proxy forwarding requests to the node and recording them with their timing to given file, e.g. to
+     * capture what application under test sends to Elasticsearch and replay it later with {@link #replay(Path, ReplayOptions)}.
+     * Application has to connect to {@link RecordingProxy#getPort()}. Proxy is closed on {@link #stop()} unless it was closed earlier.
+     *
+     * @throws IOException if request log cannot be created or proxy port cannot be opened
+     */
+    public RecordingProxy startRecordingProxy(Path requestLog) throws IOException {
+        awaitStartup();
+        RecordingProxy proxy = new RecordingProxy(this::getHttpPort, requestLog);
+        recordingProxies.add(proxy);
+        return proxy;
+    }
+
+    /**
+     * Time series of resource usage samples taken so far (the most recent 10000)
+     */
+    public List<ResourceSample> getResourceSamples() {
+        awaitStartup();
+        return resourceSampler.getSamples();
+    }
+
+    /**
+     * Latency percentiles and transferred bytes of REST calls made so far, per operation type
+     */
+    public RestCallReport getRestCallReport() {
+        return restCallStatistics.report();
+    }
+
     public String getPassword(String user) {
-        return this.elasticServer.getPassword(user);
+        return server().getPassword(user);
     }
 
-    private void installElastic() throws IOException, InterruptedException {
-        ElasticSearchInstaller elasticSearchInstaller = new ElasticSearchInstaller(instanceSettings, installationDescription);
-        logger.info("Installing elasticsearch to " + elasticSearchInstaller.getInstallationDirectory());
-        elasticSearchInstaller.install();
+    private void createElasticServer(ElasticSearchInstaller elasticSearchInstaller) {
         File executableFile = elasticSearchInstaller.getExecutableFile();
         File executableSetupPasswordFile = elasticSearchInstaller.getPasswordSetupExecutableFile();
-        File installationDirectory = elasticSearchInstaller.getInstallationDirectory();
-        elasticServer = new ElasticServer(esJavaOpts, installationDirectory, executableFile, executableSetupPasswordFile, startTimeoutInMs,
+        File instanceDirectory = elasticSearchInstaller.getInstanceDirectory();
+        elasticServer = new ElasticServer(esJavaOpts, instanceDirectory, elasticSearchInstaller.getInMemoryDataDirectory().orElse(null),
+                elasticSearchInstaller.getConfigDirectory().orElse(null), elasticSearchInstaller.getDataDirectory(), executableFile, executableSetupPasswordFile, startTimeoutInMs, stopTimeoutInMs,
                 installationDescription.isCleanInstallationDirectoryOnStop(), javaHome);
+        if (portReservation != null) {
+            elasticServer.usePorts(portReservation.port(0), portReservation.port(1));
+        }
+    }
+
+    private InstanceSettings instanceSettingsWithReservedPorts() throws IOException {
+        if (portRegistry == null) {
+            return instanceSettings;
+        }
+        portReservation = portRegistry.reserve(2);
+        Map<String, Object> portSettings = new HashMap<>();
+        portSettings.put(PopularProperties.HTTP_PORT, portReservation.port(0));
+        portSettings.put(installationDescription.isMajorVersionAtLeast(7) ? PopularProperties.TRANSPORT_PORT : PopularProperties.TRANSPORT_TCP_PORT,
+                portReservation.port(1));
+        return instanceSettings.withSettings(portSettings);
     }
 
     private void startElastic() throws InterruptedException {
@@ -91,24 +275,104 @@ public final class EmbeddedElastic {
     }
 
     private void createRestClient() {
+        closeRestClient();
         HttpClient httpClient;
         if (withSecurity) {
-            httpClient = new HttpClient("elastic", elasticServer.getPassword("elastic"));
+            httpClient = new HttpClient("elastic", elasticServer.getPassword("elastic"), restCallListeners, httpCompression, minimumCompressedBytes);
         } else {
-            httpClient = new HttpClient();
+            httpClient = new HttpClient(restCallListeners, httpCompression, minimumCompressedBytes);
+        }
+
+        elasticRestClient = new ElasticRestClient(elasticServer.getHttpPort(), httpClient, indicesDescription, templatesDescription, contentFormat, objectMapper);
+        if (snapshotRepositoryDirectory != null) {
+            // snapshots written by newer Elasticsearch cannot be read by older one, so every version has its own repository
+            snapshots = new Snapshots(elasticRestClient, new File(snapshotRepositoryDirectory, installationDescription.getVersion()));
+        }
+    }
+
+    /**
+     * Releases pooled connections of the client, which would otherwise be kept open until JVM exits
+     */
+    private void closeRestClient() {
+        if (elasticRestClient != null) {
+            elasticRestClient.close();
         }
+    }
+
+    /**
+     * Restarts Elasticsearch keeping its data, so recovery of a node can be tested. Installation, configuration and plugins
+     * are reused, nothing is downloaded or extracted again.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting for Elasticsearch to start
+     */
+    public synchronized EmbeddedElastic restart() throws InterruptedException {
+        return restart(true);
+    }
 
-        elasticRestClient = new ElasticRestClient(elasticServer.getHttpPort(), httpClient, indicesDescription, templatesDescription);
+    /**
+     * Restarts Elasticsearch reusing its installation, configuration and plugins. Indices and templates are created again
+     * if they were lost, and the call returns once the cluster is at least yellow.
+     *
+     * @param keepData whether path.data should survive restart; if false node starts empty
+     * @throws InterruptedException if the current thread is interrupted while waiting for Elasticsearch to start
+     */
+    public synchronized EmbeddedElastic restart(boolean keepData) throws InterruptedException {
+        if (!started) {
+            throw new IllegalStateException("Embedded Elastic has to be started before it can be restarted");
+        }
+        logger.info("Restarting embedded Elastic" + (keepData ? " keeping its data." : "."));
+        server().restart(keepData);
+        createRestClient();
+        elasticRestClient.waitForClusterYellow();
+        syncSchema();
+        return this;
     }
 
     /**
      * Stops Elasticsearch instance and removes data
      */
     public synchronized void stop() {
+        if (started) {
+            awaitStartupIgnoringFailure();
+        }
+        startup = null;
+        closeRecordingProxies();
+        if (resourceSampler != null) {
+            resourceSampler.close();
+            resourceSampler = null;
+        }
+        RestCallReport restCallReport = restCallStatistics.report();
+        if (!restCallReport.isEmpty()) {
+            logger.info(restCallReport.toString());
+        }
+        closeRestClient();
         if (elasticServer != null && started) {
-            started = false;
             elasticServer.stop();
         }
+        started = false;
+        if (portReservation != null) {
+            portReservation.close();
+            portReservation = null;
+        }
+    }
+
+    private void closeRecordingProxies() {
+        for (RecordingProxy proxy : recordingProxies) {
+            try {
+                proxy.close();
+            } catch (IOException e) {
+                logger.warn("Cannot complete request log of recording proxy", e);
+            }
+        }
+        recordingProxies.clear();
+    }
+
+    private void awaitStartupIgnoringFailure() {
+        try {
+            awaitStartup();
+        } catch (EmbeddedElasticsearchStartupException e) {
+            logger.warn("Elasticsearch failed to start in background", e);
+        }
     }
 
     /**
@@ -161,7 +425,164 @@ public final class EmbeddedElastic {
      * @param indexRequests document to be indexed along with metadata
      */
     public void index(List<IndexRequest> indexRequests) {
-        elasticRestClient.bulkIndex(indexRequests);
+        restClient().bulkIndex(indexRequests);
+    }
+
+    /**
+     * Index objects serialized straight into bulk request with ObjectMapper given to {@link Builder#withObjectMapper(ObjectMapper)}
+     *
+     * @param indexName   target index
+     * @param documents   objects to be indexed as documents
+     * @param idExtractor id of the document, null lets Elasticsearch generate it
+     */
+    public <T> void index(String indexName, Collection<T> documents, Function<? super T, String> idExtractor) {
+        index(indexName, documents, idExtractor, document -> null);
+    }
+
+    /**
+     * Index objects serialized straight into bulk request with ObjectMapper given to {@link Builder#withObjectMapper(ObjectMapper)}
+     *
+     * @param indexName        target index
+     * @param documents        objects to be indexed as documents
+     * @param idExtractor      id of the document, null lets Elasticsearch generate it
+     * @param routingExtractor routing of the document, null for default routing
+     */
+    public <T> void index(String indexName, Collection<T> documents, Function<? super T, String> idExtractor,
+                          Function<? super T, String> routingExtractor) {
+        restClient().bulkIndex(indexName, documents, idExtractor, routingExtractor);
+    }
+
+    /**
+     * Send index, create, update and delete operations in one bulk request and refresh indices
+     *
+     * @param operations {@link IndexRequest}, {@link UpdateRequest} or {@link DeleteRequest}, applied in order
+     * @throws IllegalStateException if any operation failed, e.g. with version conflict; deleting missing document is not a failure
+     */
+    public void bulk(List<? extends BulkOperation> operations) {
+        restClient().bulk(operations);
+    }
+
+    /**
+     * Sink indexing documents from many threads in background bulk requests, with default {@link IngestionOptions}
+     */
+    public IngestionSink ingestionSink() {
+        return ingestionSink(IngestionOptions.defaults());
+    }
+
+    /**
+     * Sink indexing documents from many threads in background bulk requests. Documents are batched by count, size
+     * and time, producers block while all allowed bulk requests are in flight, and documents rejected by overloaded
+     * node are retried with backoff, so producers neither run out of memory nor overload the node.
+     * Close the sink to send remaining documents.
+     */
+    public IngestionSink ingestionSink(IngestionOptions options) {
+        awaitStartup();
+        return new IngestionSink(options, IngestionSink.BulkTarget.of(this::restClient, options.getMaxInFlightBulks()));
+    }
+
+    /**
+     * Replays requests from log written by {@link RecordingProxy} or by {@link RequestLog#write(Path, Collection)}
+     *
+     * @see #replay(List, ReplayOptions)
+     */
+    public ReplayReport replay(Path requestLog, ReplayOptions options) throws IOException, InterruptedException {
+        return replay(RequestLog.read(requestLog), options);
+    }
+
+    /**
+     * Sends recorded requests to the node on schedule given by options, e.g. to load-test query patterns before
+     * shipping them, and reports throughput and latency percentiles. Responses are read and discarded; error
+     * responses and failed requests are counted but do not stop the replay.
+     *
+     * @throws InterruptedException if the current thread is interrupted while waiting for replay to finish
+     */
+    public ReplayReport replay(List<RecordedRequest> requests, ReplayOptions options) throws InterruptedException {
+        awaitStartup();
+        return new WorkloadReplay(requests, options, restClient().replayTarget(options.getWorkers())).run();
+    }
+
+    /**
+     * Load documents from NDJSON or _bulk fixture file. Fixture is streamed, validated in parallel and indexed
+     * in bulk requests, documents are not materialized as Java strings. Indices are refreshed after load.
+     *
+     * @throws InvalidFixtureException if fixture contains invalid line
+     * @throws IOException if fixture cannot be read
+     * @throws InterruptedException if the current thread is interrupted while waiting for fixture parsing
+     * @return summary of loaded documents and load throughput
+     */
+    public FixtureLoadReport loadFixture(Fixture fixture) throws IOException, InterruptedException {
+        return new FixtureLoader(restClient()).load(fixture);
+    }
+
+    /**
+     * Restores indices targeted by fixtures from snapshot, or loads fixtures and takes snapshot if it does not exist yet.
+     * Snapshot is keyed by given name and content hash of fixtures and definitions of affected indices, so it is
+     * reused across runs until any of them changes. Only affected indices are closed and restored, other indices
+     * are left untouched. If any fixture does not specify index name, all indices declared in EmbeddedElastic are affected.
+     * Requires snapshot repository configured with {@link Builder#withSnapshotRepository(File)}.
+     *
+     * @param snapshotName lowercase name of the snapshot, e.g. "cars"
+     * @throws IOException if fixture cannot be read
+     * @throws InterruptedException if the current thread is interrupted while loading fixtures
+     * @return true if indices were restored from existing snapshot, false if fixtures were loaded
+     */
+    public boolean restoreOrLoadFixtures(String snapshotName, Fixture... fixtures) throws IOException, InterruptedException {
+        Set<String> indicesNames = new LinkedHashSet<>();
+        ContentHash hash = ContentHash.create();
+        for (Fixture fixture : fixtures) {
+            if (fixture.getIndexName().isPresent()) {
+                indicesNames.add(fixture.getIndexName().get());
+            } else {
+                indicesNames.addAll(indicesDescription.getIndicesNames());
+            }
+            byte[] fixtureHash = fixture.contentHash().getBytes(UTF_8);
+            hash.update(fixtureHash, 0, fixtureHash.length);
+        }
+        return restoreOrCreateSnapshot(snapshotName, hash, indicesNames, embeddedElastic -> {
+            for (Fixture fixture : fixtures) {
+                embeddedElastic.loadFixture(fixture);
+            }
+        });
+    }
+
+    /**
+     * Restores given indices from snapshot, or seeds them and takes snapshot if it does not exist yet.
+     * Snapshot is keyed by given name and definitions of given indices, change snapshot name (e.g. add version suffix)
+     * whenever seeded data changes. Only given indices are closed and restored, other indices are left untouched.
+     * Requires snapshot repository configured with {@link Builder#withSnapshotRepository(File)}.
+     *
+     * @param snapshotName lowercase name of the snapshot, e.g. "cars-v2"
+     * @param seeder indexes documents into given indices, which are recreated empty before seeding
+     * @throws IOException if seeder fails to read seed data
+     * @throws InterruptedException if the current thread is interrupted while seeding
+     * @return true if indices were restored from existing snapshot, false if seeder was called
+     */
+    public boolean restoreOrCreateSnapshot(String snapshotName, SnapshotSeeder seeder, String... indicesNames) throws IOException, InterruptedException {
+        return restoreOrCreateSnapshot(snapshotName, ContentHash.create(), new LinkedHashSet<>(Arrays.asList(indicesNames)), seeder);
+    }
+
+    private boolean restoreOrCreateSnapshot(String snapshotName, ContentHash hash, Set<String> indicesNames, SnapshotSeeder seeder) throws IOException, InterruptedException {
+        awaitStartup();
+        require(snapshots != null, "Snapshot repository must be configured with withSnapshotRepository to use snapshots");
+        for (String indexName : indicesNames) {
+            byte[] indexDefinition = (indexName + "=" + indicesDescription.getIndexSettings(indexName).map(IndexSettings::getContentHash).orElse("")).getBytes(UTF_8);
+            hash.update(indexDefinition, 0, indexDefinition.length);
+        }
+        String snapshotKey = snapshotName + "-" + hash.toHex().substring(0, SNAPSHOT_HASH_LENGTH);
+        return snapshots.restoreOrCreate(snapshotKey, indicesNames, () -> indicesNames.forEach(this::recreateIndex), seeder, this);
+    }
+
+    /**
+     * Export documents of an index to files in _bulk format, e.g. to inspect index state after failed test.
+     * Documents are read from a point in time, so export is consistent even if index is modified meanwhile.
+     * Slices are exported in parallel with bounded memory. Requires Elasticsearch 7.12 or newer.
+     *
+     * @throws IOException if export files cannot be written
+     * @throws InterruptedException if the current thread is interrupted while waiting for export
+     * @return written files and summary of exported documents
+     */
+    public DocumentExportReport exportDocuments(DocumentExport export) throws IOException, InterruptedException {
+        return new DocumentExporter(restClient()).export(export);
     }
 
     /**
@@ -182,11 +603,32 @@ public final class EmbeddedElastic {
         createIndex(indexName);
     }
 
+    /**
+     * Recreates specified index only if its definition (mappings, settings, aliases) changed since it was created.
+     * Otherwise the index and its documents are left untouched. Requires Elasticsearch 7 or newer,
+     * for older versions index is always recreated.
+     *
+     * @param indexName index to recreate
+     */
+    public void recreateIndexIfChanged(String indexName) {
+        restClient().recreateIndexIfChanged(indexName);
+    }
+
+    /**
+     * Brings all declared templates and indices in line with their definitions. Missing ones are created,
+     * changed ones are put again (templates) or recreated (indices, Elasticsearch 7 or newer), unchanged ones
+     * are left untouched together with their documents. Cluster state is read in two requests, so calling it
+     * before every test is cheap when nothing changed.
+     */
+    public void syncSchema() {
+        restClient().syncSchema();
+    }
+
     /**
      * Delete all indices
      */
     public void deleteIndices() {
-        elasticRestClient.deleteIndices();
+        restClient().deleteIndices();
     }
 
     /**
@@ -195,14 +637,14 @@ public final class EmbeddedElastic {
      * @param indexName index do delete
      */
     public void deleteIndex(String indexName) {
-        elasticRestClient.deleteIndex(indexName);
+        restClient().deleteIndex(indexName);
     }
 
     /**
      * Create all indices
      */
     public void createIndices() {
-        elasticRestClient.createIndices();
+        restClient().createIndices();
     }
 
     /**
@@ -211,11 +653,11 @@ public final class EmbeddedElastic {
      * @param indexName index to create
      */
     public void createIndex(String indexName) {
-        elasticRestClient.createIndex(indexName);
+        restClient().createIndex(indexName);
     }
 
     public void createTemplates() {
-        elasticRestClient.createTemplates();
+        restClient().createTemplates();
     }
 
 
@@ -241,7 +683,7 @@ public final class EmbeddedElastic {
      * Delete all templates
      */
     public void deleteTemplates() {
-        elasticRestClient.deleteTemplates();
+        restClient().deleteTemplates();
     }
 
     /**
@@ -250,7 +692,7 @@ public final class EmbeddedElastic {
      * @param templateName template do delete
      */
     public void deleteTemplate(String templateName) {
-        elasticRestClient.deleteTemplate(templateName);
+        restClient().deleteTemplate(templateName);
     }
 
     /**
@@ -259,14 +701,14 @@ public final class EmbeddedElastic {
      * @param templateName template to create
      */
     public void createTemplate(String templateName) {
-        elasticRestClient.createTemplate(templateName);
+        restClient().createTemplate(templateName);
     }
 
     /**
      * Refresh indices. Can be useful in tests that uses multiple threads
      */
     public void refreshIndices() {
-        elasticRestClient.refresh();
+        restClient().refresh();
     }
 
     /**
@@ -276,21 +718,71 @@ public final class EmbeddedElastic {
      * @return list containing documents sources represented as JSON
      */
     public List<String> fetchAllDocuments(String... indices) {
-        return elasticRestClient.fetchAllDocuments(indices);
+        return restClient().fetchAllDocuments(indices);
+    }
+
+    /**
+     * Search documents in specified index (or comma separated indices, or alias) using the same pooled
+     * connections as the rest of EmbeddedElastic. Sources of hits are decoded lazily, see {@link Document}.
+     *
+     * @param searchRequestBody body of _search request, e.g. {"query": {"term": {"model": "126p"}}}
+     * @throws HttpClient.HttpRequestException in case of a problem or the connection was aborted
+     */
+    public SearchResult search(String indexName, String searchRequestBody) {
+        return restClient().search(indexName, searchRequestBody);
+    }
+
+    /**
+     * Count all documents in specified index
+     *
+     * @throws HttpClient.HttpRequestException in case of a problem or the connection was aborted
+     */
+    public long count(String indexName) {
+        return restClient().count(indexName, null);
+    }
+
+    /**
+     * Count documents in specified index matching query
+     *
+     * @param queryRequestBody body of _count request, e.g. {"query": {"term": {"model": "126p"}}}
+     * @throws HttpClient.HttpRequestException in case of a problem or the connection was aborted
+     */
+    public long count(String indexName, String queryRequestBody) {
+        return restClient().count(indexName, queryRequestBody);
+    }
+
+    /**
+     * Get document by id
+     *
+     * @throws HttpClient.HttpRequestException in case of a problem or the connection was aborted
+     * @return document or empty if it does not exist
+     */
+    public Optional<Document> getDocument(String indexName, String id) {
+        return restClient().getDocuments(indexName, Collections.singletonList(id)).stream().findFirst();
+    }
+
+    /**
+     * Get documents by ids in a single request
+     *
+     * @throws HttpClient.HttpRequestException in case of a problem or the connection was aborted
+     * @return existing documents in order of given ids
+     */
+    public List<Document> getDocuments(String indexName, Collection<String> ids) {
+        return restClient().getDocuments(indexName, ids);
     }
 
     /**
      * Get transport tcp port number used by Elasticsearch
      */
     public int getTransportTcpPort() {
-        return elasticServer.getTransportTcpPort();
+        return server().getTransportTcpPort();
     }
 
     /**
      * Get http port number
      */
     public int getHttpPort() {
-        return elasticServer.getHttpPort();
+        return server().getHttpPort();
     }
 
     /**
@@ -298,13 +790,20 @@ public final class EmbeddedElastic {
      */
     public static final class Builder {
 
+        private static final File DEFAULT_IN_MEMORY_DATA_DIRECTORY = new File("/dev/shm");
+        private static final long DEFAULT_IN_MEMORY_DATA_DIRECTORY_MINIMUM_FREE_SPACE_IN_BYTES = 512L * 1024 * 1024;
+        private static final int DEFAULT_MINIMUM_COMPRESSED_BYTES = 1024;
+
         private InstallationSource installationSource = null;
         private final List<Plugin> plugins = new ArrayList<>();
         private final Map<String, Optional<IndexSettings>> indices = new HashMap<>();
         private final Map<String, String> templates = new HashMap<>();
+        private final Map<String, String> componentTemplates = new HashMap<>();
+        private final Map<String, String> indexTemplates = new HashMap<>();
         private InstanceSettings settings = new InstanceSettings();
         private String esJavaOpts = "";
         private long startTimeoutInMs = 15_000;
+        private long stopTimeoutInMs = 10_000;
         private boolean cleanInstallationDirectoryOnStop = true;
         private File installationDirectory = null;
         private File downloadDirectory = null;
@@ -313,6 +812,21 @@ public final class EmbeddedElastic {
         private Proxy downloadProxy = null;
         private JavaHomeOption javaHome = JavaHomeOption.useSystem();
         private boolean withSecurity = false;
+        private NodePreset nodePreset = null;
+        private File inMemoryDataDirectory = null;
+        private long inMemoryDataDirectoryMinimumFreeSpaceInBytes = DEFAULT_IN_MEMORY_DATA_DIRECTORY_MINIMUM_FREE_SPACE_IN_BYTES;
+        private File snapshotRepositoryDirectory = null;
+        private PortRegistry portRegistry = null;
+        private boolean sharedDistribution = false;
+        private boolean lazyStart = false;
+        private long resourceSamplingIntervalInMs = 0;
+        private long slowRestCallThresholdInNanos = 0;
+        private boolean failOnSlowRestCall = false;
+        private final List<RestCallListener> restCallListeners = new ArrayList<>();
+        private HttpCompression httpCompression = HttpCompression.NONE;
+        private int minimumCompressedBytes = DEFAULT_MINIMUM_COMPRESSED_BYTES;
+        private ContentFormat contentFormat = ContentFormat.JSON;
+        private ObjectMapper objectMapper = new ObjectMapper();
 
         private Builder() {
         }
@@ -340,6 +854,154 @@ public final class EmbeddedElastic {
             return this;
         }
 
+        /**
+         * Keep data and logs of Elasticsearch in RAM backed /dev/shm directory instead of installation directory.
+         * Avoids slow disk fsyncs of translog and Lucene commits, e.g. on CI agents
+         */
+        public Builder withInMemoryDataDirectory() {
+            return withInMemoryDataDirectory(DEFAULT_IN_MEMORY_DATA_DIRECTORY);
+        }
+
+        /**
+         * Keep data and logs of Elasticsearch in given RAM backed (tmpfs) directory instead of installation directory
+         */
+        public Builder withInMemoryDataDirectory(File tmpfsDirectory) {
+            this.inMemoryDataDirectory = tmpfsDirectory;
+            return this;
+        }
+
+        /**
+         * Minimum free space of in memory data directory required to start Elasticsearch. Defaults to 512 MB
+         */
+        public Builder withInMemoryDataDirectoryMinimumFreeSpace(long bytes) {
+            this.inMemoryDataDirectoryMinimumFreeSpaceInBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Directory of file system snapshot repository used by restoreOrLoadFixtures and restoreOrCreateSnapshot.
+         * It is added to path.repo of the node and should outlive installation directory (e.g. be placed in build
+         * directory of the project), so snapshots are reused across runs
+         */
+        public Builder withSnapshotRepository(File directory) {
+            this.snapshotRepositoryDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Reserve free http and transport ports for the node on start, in range 20000-40000. Reservations are
+         * coordinated between JVMs with file locks, so many nodes can start concurrently without port clashes.
+         * Use {@link #getHttpPort()} to find out reserved http port
+         */
+        public Builder withPortAllocation() {
+            return withPortAllocation(PortRegistry.DEFAULT_FIRST_PORT, PortRegistry.DEFAULT_LAST_PORT);
+        }
+
+        /**
+         * Reserve free http and transport ports for the node on start, in given range (inclusive)
+         */
+        public Builder withPortAllocation(int firstPort, int lastPort) {
+            this.portRegistry = new PortRegistry(firstPort, lastPort);
+            return this;
+        }
+
+        /**
+         * Extract Elasticsearch distribution (with plugins) once and share it read-only between instances, giving every
+         * instance its own directory with configuration, data and logs. Lets many instances of the same version run
+         * concurrently in one JVM or on one machine, e.g. for sharded test suites; combine with {@link #withPortAllocation()}.
+         * Requires Elasticsearch 6 or newer
+         */
+        public Builder withSharedDistribution() {
+            this.sharedDistribution = true;
+            return this;
+        }
+
+        /**
+         * Make {@link EmbeddedElastic#start()} only begin installation and startup in background and return immediately.
+         * First operation that needs Elasticsearch blocks until it is ready, so startup overlaps with the rest of test setup,
+         * and failure of the startup is thrown from it
+         */
+        public Builder withLazyStart() {
+            this.lazyStart = true;
+            return this;
+        }
+
+        /**
+         * Sample resource usage of the node (heap, GC, thread pools, indexing and search latency, segments, CPU)
+         * in background with given interval, see {@link EmbeddedElastic#getResourceSamples()}
+         */
+        public Builder withResourceSampling(long interval, TimeUnit unit) {
+            require(interval > 0, "Resource sampling interval must be positive");
+            this.resourceSamplingIntervalInMs = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Log REST calls to Elasticsearch taking longer than threshold
+         */
+        public Builder withSlowRestCallThreshold(long value, TimeUnit unit) {
+            require(value > 0, "Slow REST call threshold must be positive");
+            this.slowRestCallThresholdInNanos = unit.toNanos(value);
+            return this;
+        }
+
+        /**
+         * Fail operations making REST calls slower than {@link #withSlowRestCallThreshold(long, TimeUnit)} instead of logging them
+         */
+        public Builder withFailOnSlowRestCall() {
+            this.failOnSlowRestCall = true;
+            return this;
+        }
+
+        /**
+         * Listener notified about every REST call made to Elasticsearch, with its duration and transferred bytes
+         */
+        public Builder withRestCallListener(RestCallListener listener) {
+            require(listener != null, "REST call listener must be specified");
+            this.restCallListeners.add(listener);
+            return this;
+        }
+
+        /**
+         * Compress bodies of bulk and search requests of at least 1 KB with given codec and accept compressed responses.
+         * Helps with remote or containerized nodes and large fixtures, over loopback it usually only costs CPU
+         */
+        public Builder withHttpCompression(HttpCompression compression) {
+            return withHttpCompression(compression, DEFAULT_MINIMUM_COMPRESSED_BYTES);
+        }
+
+        /**
+         * Compress bodies of bulk and search requests of at least given size with given codec and accept compressed responses
+         */
+        public Builder withHttpCompression(HttpCompression compression, int minimumCompressedBytes) {
+            require(compression != null, "HTTP compression must be specified");
+            require(minimumCompressedBytes >= 0, "Minimum size of compressed request body cannot be negative");
+            this.httpCompression = compression;
+            this.minimumCompressedBytes = minimumCompressedBytes;
+            return this;
+        }
+
+        /**
+         * Format of documents in bulk requests made by index methods and ingestion sink, and of search, count
+         * and get responses. Fixtures are sent as they are
+         */
+        public Builder withContentFormat(ContentFormat contentFormat) {
+            require(contentFormat != null, "Content format must be specified");
+            this.contentFormat = contentFormat;
+            return this;
+        }
+
+        /**
+         * ObjectMapper serializing objects indexed by EmbeddedElastic and decoding sources of returned documents
+         * (e.g. with modules for java.time or naming strategy of your application). Shared by all operations, do not
+         * reconfigure it afterwards
+         */
+        public Builder withObjectMapper(ObjectMapper objectMapper) {
+            require(objectMapper != null, "ObjectMapper must be specified");
+            this.objectMapper = objectMapper;
+            return this;
+        }
+
         public Builder withCleanInstallationDirectoryOnStop(boolean cleanInstallationDirectoryOnStop) {
             this.cleanInstallationDirectoryOnStop = cleanInstallationDirectoryOnStop;
             return this;
@@ -412,6 +1074,42 @@ public final class EmbeddedElastic {
             return withTemplate(name, IOUtils.toString(templateBody, UTF_8));
         }
 
+        /**
+         * Add a component template (Elasticsearch 7.8+) that will be created after Elasticsearch cluster started.
+         * Component templates are created concurrently, before index templates composed of them.
+         */
+        public Builder withComponentTemplate(String name, String templateBody) {
+            this.componentTemplates.put(name, templateBody);
+            return this;
+        }
+
+        /**
+         * Add a component template (Elasticsearch 7.8+) that will be created after Elasticsearch cluster started
+         *
+         * @throws IOException if an I/O error occurs when getting the contents of templateBody.
+         */
+        public Builder withComponentTemplate(String name, InputStream templateBody) throws IOException {
+            return withComponentTemplate(name, IOUtils.toString(templateBody, UTF_8));
+        }
+
+        /**
+         * Add a composable index template (Elasticsearch 7.8+) that will be created after Elasticsearch cluster started,
+         * once all component templates listed in its composed_of are created.
+         */
+        public Builder withIndexTemplate(String name, String templateBody) {
+            this.indexTemplates.put(name, templateBody);
+            return this;
+        }
+
+        /**
+         * Add a composable index template (Elasticsearch 7.8+) that will be created after Elasticsearch cluster started
+         *
+         * @throws IOException if an I/O error occurs when getting the contents of templateBody.
+         */
+        public Builder withIndexTemplate(String name, InputStream templateBody) throws IOException {
+            return withIndexTemplate(name, IOUtils.toString(templateBody, UTF_8));
+        }
+
         /**
          * How long should embedded-elasticsearch wait for elasticsearch to startup. Defaults to 15 seconds
          */
@@ -420,6 +1118,15 @@ public final class EmbeddedElastic {
             return this;
         }
 
+        /**
+         * How long should embedded-elasticsearch wait for elasticsearch to shut down gracefully before it is killed
+         * (together with processes it spawned, on Java 9+). Defaults to 10 seconds
+         */
+        public Builder withStopTimeout(long value, TimeUnit unit) {
+            stopTimeoutInMs = unit.toMillis(value);
+            return this;
+        }
+
         /**
          * Set connection timeout for HTTP client used by downloader
          */
@@ -449,17 +1156,55 @@ public final class EmbeddedElastic {
             return this;
         }
 
+        /**
+         * Apply set of throughput tweaks to the node and to indices created by EmbeddedElastic.
+         * Settings specified explicitly with withSetting or IndexSettings take precedence over the preset.
+         */
+        public Builder withNodePreset(NodePreset nodePreset) {
+            this.nodePreset = nodePreset;
+            return this;
+        }
+
         public EmbeddedElastic build() {
             require(installationSource != null, "You must specify elasticsearch version, or download url");
+            require(portRegistry == null || !settings.contains(PopularProperties.HTTP_PORT),
+                    "Port allocation cannot be used together with explicitly set " + PopularProperties.HTTP_PORT);
+            require(!failOnSlowRestCall || slowRestCallThresholdInNanos > 0, "Slow REST call threshold must be specified to fail on slow calls");
+            InstallationDescription installationDescription = new InstallationDescription(installationSource, downloadDirectory, installationDirectory, cleanInstallationDirectoryOnStop, plugins, downloaderConnectionTimeoutInMs, downloaderReadTimeoutInMs, downloadProxy,
+                    inMemoryDataDirectory, inMemoryDataDirectoryMinimumFreeSpaceInBytes, sharedDistribution);
+            require(!sharedDistribution || installationDescription.isMajorVersionAtLeast(6),
+                    "Shared distribution requires Elasticsearch 6 or newer, which supports ES_PATH_CONF");
+            InstanceSettings instanceSettings = settings;
+            Map<String, Object> defaultIndexSettings = Collections.emptyMap();
+            if (nodePreset != null) {
+                int majorVersion = installationDescription.getMajorVersion();
+                instanceSettings = settings.withDefaultSettings(nodePreset.nodeSettings(majorVersion, installationDescription.getMinorVersion()));
+                defaultIndexSettings = nodePreset.indexSettings(majorVersion);
+            }
+            if (snapshotRepositoryDirectory != null) {
+                instanceSettings = instanceSettings.withDefaultSettings(
+                        Collections.singletonMap("path.repo", snapshotRepositoryDirectory.getAbsolutePath()));
+            }
             return new EmbeddedElastic(
                     esJavaOpts,
-                    settings,
-                    new IndicesDescription(indices),
-                    new TemplatesDescription(templates),
-                    new InstallationDescription(installationSource, downloadDirectory, installationDirectory, cleanInstallationDirectoryOnStop, plugins, downloaderConnectionTimeoutInMs, downloaderReadTimeoutInMs, downloadProxy),
+                    instanceSettings,
+                    new IndicesDescription(indices, defaultIndexSettings, installationDescription.isMajorVersionAtLeast(7)),
+                    new TemplatesDescription(templates, componentTemplates, indexTemplates),
+                    installationDescription,
                     startTimeoutInMs,
+                    stopTimeoutInMs,
                     javaHome,
-                    withSecurity);
+                    withSecurity,
+                    snapshotRepositoryDirectory,
+                    portRegistry,
+                    lazyStart,
+                    resourceSamplingIntervalInMs,
+                    new RestCallStatistics(slowRestCallThresholdInNanos, failOnSlowRestCall),
+                    restCallListeners,
+                    httpCompression,
+                    minimumCompressedBytes,
+                    contentFormat,
+                    objectMapper);
         }
 
     }
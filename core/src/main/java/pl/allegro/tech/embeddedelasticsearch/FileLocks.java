@@ -0,0 +1,37 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exclusive sections guarded by lock file, shared by threads of this JVM and by other JVMs.
+ * File locks are held on behalf of the whole JVM, so threads are additionally serialized in memory.
+ */
+final class FileLocks {
+
+    private static final ConcurrentMap<String, Object> MONITORS = new ConcurrentHashMap<>();
+
+    private FileLocks() {
+    }
+
+    interface LockedAction<T> {
+        T run() throws IOException, InterruptedException;
+    }
+
+    static <T> T withLock(File lockFile, LockedAction<T> action) throws IOException, InterruptedException {
+        Object monitor = MONITORS.computeIfAbsent(lockFile.getCanonicalPath(), path -> new Object());
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), CREATE, WRITE);
+                 FileLock ignored = channel.lock()) {
+                return action.run();
+            }
+        }
+    }
+}
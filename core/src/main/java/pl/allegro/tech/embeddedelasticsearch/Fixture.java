@@ -0,0 +1,128 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * <p>File with documents to be loaded into Elasticsearch, either NDJSON (one document per line) or body of _bulk request.
+ * Gzipped files are detected automatically.</p>
+ * <p>Instances are immutable, use withXXX methods to create modified copies.</p>
+ */
+public final class Fixture {
+
+    private static final int CONTENT_HASH_BUFFER_SIZE = 64 * 1024;
+
+    private final String name;
+    private final Path file;
+    private final URL resource;
+    private final String indexName;
+    private final FixtureFormat format;
+
+    private Fixture(String name, Path file, URL resource, String indexName, FixtureFormat format) {
+        this.name = name;
+        this.file = file;
+        this.resource = resource;
+        this.indexName = indexName;
+        this.format = format;
+    }
+
+    /**
+     * Fixture read from file system
+     */
+    public static Fixture fromFile(Path file) {
+        require(file != null, "Fixture file must be specified");
+        return new Fixture(file.toString(), file, null, null, FixtureFormat.NDJSON);
+    }
+
+    /**
+     * Fixture read from file system
+     */
+    public static Fixture fromFile(File file) {
+        require(file != null, "Fixture file must be specified");
+        return fromFile(file.toPath());
+    }
+
+    /**
+     * Fixture read from classpath resource
+     */
+    public static Fixture fromClasspath(String resourcePath) {
+        URL resource = Thread.currentThread().getContextClassLoader().getResource(resourcePath);
+        require(resource != null, "Fixture resource " + resourcePath + " not found");
+        return new Fixture(resourcePath, fileOf(resource), resource, null, FixtureFormat.NDJSON);
+    }
+
+    /**
+     * Index documents are loaded into. Required for NDJSON fixtures, default index for BULK fixtures.
+     */
+    public Fixture withIndexName(String indexName) {
+        return new Fixture(name, file, resource, indexName, format);
+    }
+
+    /**
+     * Format of the fixture. Defaults to NDJSON
+     */
+    public Fixture withFormat(FixtureFormat format) {
+        return new Fixture(name, file, resource, indexName, format);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Optional<String> getIndexName() {
+        return Optional.ofNullable(indexName);
+    }
+
+    FixtureFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * File the fixture can be read from through file channel, if it is stored directly in file system
+     */
+    Optional<Path> getFile() {
+        return Optional.ofNullable(file);
+    }
+
+    InputStream openStream() throws IOException {
+        return file != null ? Files.newInputStream(file) : resource.openStream();
+    }
+
+    /**
+     * Hash of fixture content, format and target index; changes whenever documents loaded from the fixture would change
+     */
+    String contentHash() throws IOException {
+        ContentHash hash = ContentHash.create();
+        byte[] description = (format + "\n" + indexName + "\n").getBytes(UTF_8);
+        hash.update(description, 0, description.length);
+        byte[] buffer = new byte[CONTENT_HASH_BUFFER_SIZE];
+        try (InputStream content = openStream()) {
+            int read;
+            while ((read = content.read(buffer)) >= 0) {
+                hash.update(buffer, 0, read);
+            }
+        }
+        return hash.toHex();
+    }
+
+    private static Path fileOf(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(resource.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+}
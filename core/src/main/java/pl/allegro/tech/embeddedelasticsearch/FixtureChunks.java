@@ -0,0 +1,215 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Splits fixture into chunks of raw bytes containing only complete lines (and complete action/source pairs
+ * for BULK fixtures), so chunks can be parsed independently. Uncompressed files are read from file channel,
+ * other fixtures are streamed. No per document objects are created here.
+ */
+final class FixtureChunks implements Closeable {
+
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+    private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+
+    private final OperationScanner scanner;
+    private final InputStream stream;
+    private byte[] buffer;
+    private int buffered = 0;
+    private boolean endOfInput = false;
+
+    private FixtureChunks(InputStream stream, FixtureFormat format, int chunkSize) {
+        this.scanner = new OperationScanner(format == FixtureFormat.BULK);
+        this.stream = stream;
+        this.buffer = new byte[chunkSize];
+    }
+
+    static FixtureChunks open(Fixture fixture, int chunkSize) throws IOException {
+        Optional<Path> file = fixture.getFile();
+        if (file.isPresent() && !isGzipped(file.get())) {
+            // stream over channel is not buffered, chunks are much larger than stream buffer, so reads fill them directly
+            return new FixtureChunks(Channels.newInputStream(FileChannel.open(file.get(), StandardOpenOption.READ)), fixture.getFormat(), chunkSize);
+        }
+        BufferedInputStream stream = new BufferedInputStream(fixture.openStream());
+        if (isGzipped(stream)) {
+            return new FixtureChunks(new GZIPInputStream(stream, 64 * 1024), fixture.getFormat(), chunkSize);
+        }
+        return new FixtureChunks(stream, fixture.getFormat(), chunkSize);
+    }
+
+    /**
+     * @return next chunk or null if whole fixture was read
+     */
+    Chunk next() throws IOException {
+        while (!endOfInput || buffered > 0) {
+            long firstLineNumber = scanner.lineNumber;
+            fillBuffer();
+            int completeLength = scanner.scan(buffer, buffered, endOfInput);
+            if (completeLength > 0) {
+                byte[] data = buffer;
+                // buffer grown for operation larger than chunk size stays that large for next chunks
+                buffer = new byte[Math.max(data.length, buffered - completeLength)];
+                System.arraycopy(data, completeLength, buffer, 0, buffered - completeLength);
+                buffered -= completeLength;
+                return new Chunk(data, completeLength, firstLineNumber);
+            }
+            if (endOfInput) {
+                return null;
+            }
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    private void fillBuffer() throws IOException {
+        while (!endOfInput && buffered < buffer.length) {
+            int read = stream.read(buffer, buffered, buffer.length - buffered);
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                buffered += read;
+            }
+        }
+    }
+
+    private static boolean isGzipped(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read both bytes of the header
+            }
+            return magic.position() == 2 && (magic.get(0) & 0xff) == GZIP_MAGIC_FIRST_BYTE && (magic.get(1) & 0xff) == GZIP_MAGIC_SECOND_BYTE;
+        }
+    }
+
+    private static boolean isGzipped(BufferedInputStream stream) throws IOException {
+        stream.mark(2);
+        int first = stream.read();
+        int second = stream.read();
+        stream.reset();
+        return first == GZIP_MAGIC_FIRST_BYTE && second == GZIP_MAGIC_SECOND_BYTE;
+    }
+
+    static final class Chunk {
+        final byte[] data;
+        final int length;
+        final long firstLineNumber;
+
+        Chunk(byte[] data, int length, long firstLineNumber) {
+            this.data = data;
+            this.length = length;
+            this.firstLineNumber = firstLineNumber;
+        }
+    }
+
+    /**
+     * Finds boundaries of complete operations: single lines for NDJSON, action line followed by source line
+     * (except delete actions) for BULK.
+     */
+    private static final class OperationScanner {
+
+        private final boolean bulkFormat;
+        private long lineNumber = 1;
+
+        private OperationScanner(boolean bulkFormat) {
+            this.bulkFormat = bulkFormat;
+        }
+
+        int scan(byte[] data, int length, boolean endOfInput) {
+            int completeLength = 0;
+            int lines = 0;
+            int completeLines = 0;
+            boolean expectingSource = false;
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = indexOf(data, (byte) '\n', lineStart, length);
+                if (lineEnd < 0 && !endOfInput) {
+                    break;
+                }
+                int nextLineStart = lineEnd < 0 ? length : lineEnd + 1;
+                lines++;
+                if (bulkFormat && !isBlank(data, lineStart, nextLineStart)) {
+                    expectingSource = !expectingSource && !isDeleteAction(data, lineStart, nextLineStart);
+                }
+                if (!expectingSource) {
+                    completeLength = nextLineStart;
+                    completeLines = lines;
+                }
+                lineStart = nextLineStart;
+            }
+            if (endOfInput && lineStart >= length) {
+                completeLength = length;
+                completeLines = lines;
+            }
+            lineNumber += completeLines;
+            return completeLength;
+        }
+
+        private static int indexOf(byte[] data, byte value, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (data[i] == value) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean isBlank(byte[] data, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (!isWhitespace(data[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isDeleteAction(byte[] data, int from, int to) {
+            int position = skipWhitespace(data, from, to);
+            if (position >= to || data[position] != '{') {
+                return false;
+            }
+            position = skipWhitespace(data, position + 1, to);
+            return startsWith(data, position, to, "\"delete\"");
+        }
+
+        private static int skipWhitespace(byte[] data, int from, int to) {
+            int position = from;
+            while (position < to && isWhitespace(data[position])) {
+                position++;
+            }
+            return position;
+        }
+
+        private static boolean startsWith(byte[] data, int from, int to, String prefix) {
+            if (to - from < prefix.length()) {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (data[from + i] != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isWhitespace(byte value) {
+            return value == ' ' || value == '\t' || value == '\r' || value == '\n';
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Format of fixture files loaded with {@link EmbeddedElastic#loadFixture(Fixture)}.
+ */
+public enum FixtureFormat {
+    /**
+     * One JSON document per line. Requires index name to be specified for the fixture.
+     */
+    NDJSON,
+    /**
+     * Body of Elasticsearch _bulk request, i.e. action lines followed by document sources.
+     * Index name specified for the fixture is used for actions without _index.
+     */
+    BULK
+}
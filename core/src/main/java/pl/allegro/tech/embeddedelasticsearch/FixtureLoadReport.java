@@ -0,0 +1,60 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Summary of fixture loading: number of loaded documents, their size and load throughput.
+ */
+public final class FixtureLoadReport {
+
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private final String fixtureName;
+    private final long documents;
+    private final long bytes;
+    private final long elapsedNanos;
+
+    FixtureLoadReport(String fixtureName, long documents, long bytes, long elapsedNanos) {
+        this.fixtureName = fixtureName;
+        this.documents = documents;
+        this.bytes = bytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getFixtureName() {
+        return fixtureName;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Uncompressed size of loaded fixture
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getDocumentsPerSecond() {
+        return perSecond(documents);
+    }
+
+    public double getMegabytesPerSecond() {
+        return perSecond(bytes) / BYTES_IN_MEGABYTE;
+    }
+
+    private double perSecond(double value) {
+        return elapsedNanos == 0 ? 0 : value * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Loaded %d documents (%.2f MB) from %s in %d ms: %.0f docs/s, %.2f MB/s",
+                documents, bytes / BYTES_IN_MEGABYTE, fixtureName, getElapsedMillis(), getDocumentsPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,222 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Loads fixtures in a pipeline: single thread splits fixture into chunks, chunks are validated and turned
+ * into bulk request bodies in parallel, and bodies are sent to Elasticsearch in fixture order.
+ */
+class FixtureLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(FixtureLoader.class);
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final int CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final byte[] INDEX_ACTION = "{\"index\":{}}\n".getBytes(UTF_8);
+
+    private final ElasticRestClient elasticRestClient;
+    private final int parallelism;
+
+    FixtureLoader(ElasticRestClient elasticRestClient) {
+        this(elasticRestClient, WorkerPools.defaultParallelism());
+    }
+
+    FixtureLoader(ElasticRestClient elasticRestClient, int parallelism) {
+        this.elasticRestClient = elasticRestClient;
+        this.parallelism = parallelism;
+    }
+
+    FixtureLoadReport load(Fixture fixture) throws IOException, InterruptedException {
+        require(fixture.getFormat() != FixtureFormat.NDJSON || fixture.getIndexName().isPresent(),
+                "Index name must be specified for NDJSON fixture " + fixture.getName());
+        long start = System.nanoTime();
+        long documents = 0;
+        long bytes = 0;
+        ExecutorService parsers = WorkerPools.newFixedPool("EmbeddedElsFixtureParser", parallelism);
+        Deque<Future<BulkChunk>> parsedChunks = new ArrayDeque<>();
+        try (FixtureChunks chunks = FixtureChunks.open(fixture, CHUNK_SIZE)) {
+            FixtureChunks.Chunk chunk;
+            while ((chunk = chunks.next()) != null) {
+                FixtureChunks.Chunk chunkToParse = chunk;
+                parsedChunks.add(parsers.submit(() -> parse(fixture, chunkToParse)));
+                if (parsedChunks.size() > parallelism) {
+                    BulkChunk bulkChunk = send(fixture, parsedChunks.poll());
+                    documents += bulkChunk.documents;
+                    bytes += bulkChunk.rawBytes;
+                }
+            }
+            while (!parsedChunks.isEmpty()) {
+                BulkChunk bulkChunk = send(fixture, parsedChunks.poll());
+                documents += bulkChunk.documents;
+                bytes += bulkChunk.rawBytes;
+            }
+        } finally {
+            parsers.shutdownNow();
+        }
+        elasticRestClient.refresh();
+        FixtureLoadReport report = new FixtureLoadReport(fixture.getName(), documents, bytes, System.nanoTime() - start);
+        logger.info(report.toString());
+        return report;
+    }
+
+    private BulkChunk send(Fixture fixture, Future<BulkChunk> parsedChunk) throws InterruptedException {
+        BulkChunk bulkChunk = await(parsedChunk);
+        if (bulkChunk.documents > 0) {
+            elasticRestClient.bulk(fixture.getIndexName().orElse(null), bulkChunk.body, bulkChunk.length);
+        }
+        return bulkChunk;
+    }
+
+    private static BulkChunk await(Future<BulkChunk> parsedChunk) throws InterruptedException {
+        try {
+            return parsedChunk.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static BulkChunk parse(Fixture fixture, FixtureChunks.Chunk chunk) {
+        return fixture.getFormat() == FixtureFormat.BULK ? parseBulk(fixture, chunk) : parseNdjson(fixture, chunk);
+    }
+
+    private static BulkChunk parseNdjson(Fixture fixture, FixtureChunks.Chunk chunk) {
+        BulkBuffer body = new BulkBuffer(chunk.length + chunk.length / 8);
+        int documents = 0;
+        long lineNumber = chunk.firstLineNumber;
+        int lineStart = 0;
+        while (lineStart < chunk.length) {
+            int lineEnd = lineEnd(chunk, lineStart);
+            if (!isBlank(chunk.data, lineStart, lineEnd)) {
+                validateObject(fixture, chunk.data, lineStart, lineEnd, lineNumber);
+                body.write(INDEX_ACTION, 0, INDEX_ACTION.length);
+                body.write(chunk.data, lineStart, lineEnd - lineStart);
+                body.write('\n');
+                documents++;
+            }
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+        return new BulkChunk(body.buffer(), body.size(), documents, chunk.length);
+    }
+
+    private static BulkChunk parseBulk(Fixture fixture, FixtureChunks.Chunk chunk) {
+        int documents = 0;
+        long lineNumber = chunk.firstLineNumber;
+        boolean expectingSource = false;
+        int lineStart = 0;
+        while (lineStart < chunk.length) {
+            int lineEnd = lineEnd(chunk, lineStart);
+            if (!isBlank(chunk.data, lineStart, lineEnd)) {
+                if (expectingSource) {
+                    validateObject(fixture, chunk.data, lineStart, lineEnd, lineNumber);
+                    expectingSource = false;
+                } else {
+                    expectingSource = !"delete".equals(validateAction(fixture, chunk.data, lineStart, lineEnd, lineNumber));
+                    documents++;
+                }
+            }
+            lineStart = lineEnd + 1;
+            lineNumber++;
+        }
+        if (expectingSource) {
+            throw new InvalidFixtureException("Missing document source at the end of fixture " + fixture.getName());
+        }
+        byte[] body = chunk.data;
+        int length = chunk.length;
+        if (length > 0 && body[length - 1] != '\n') {
+            body = Arrays.copyOf(body, length + 1);
+            body[length++] = '\n';
+        }
+        return new BulkChunk(body, length, documents, chunk.length);
+    }
+
+    private static int lineEnd(FixtureChunks.Chunk chunk, int lineStart) {
+        for (int i = lineStart; i < chunk.length; i++) {
+            if (chunk.data[i] == '\n') {
+                return i;
+            }
+        }
+        return chunk.length;
+    }
+
+    private static void validateObject(Fixture fixture, byte[] data, int from, int to, long lineNumber) {
+        try (JsonParser parser = JSON_FACTORY.createParser(data, from, to - from)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw invalidLine(fixture, lineNumber, "document must be a JSON object", null);
+            }
+            parser.skipChildren();
+            if (parser.nextToken() != null) {
+                throw invalidLine(fixture, lineNumber, "line must contain exactly one JSON object", null);
+            }
+        } catch (IOException e) {
+            throw invalidLine(fixture, lineNumber, e.getMessage(), e);
+        }
+    }
+
+    private static String validateAction(Fixture fixture, byte[] data, int from, int to, long lineNumber) {
+        try (JsonParser parser = JSON_FACTORY.createParser(data, from, to - from)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT || parser.nextToken() != JsonToken.FIELD_NAME) {
+                throw invalidLine(fixture, lineNumber, "action must be a JSON object with single field", null);
+            }
+            String action = parser.getCurrentName();
+            if (!action.equals("index") && !action.equals("create") && !action.equals("update") && !action.equals("delete")) {
+                throw invalidLine(fixture, lineNumber, "unknown bulk action " + action, null);
+            }
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw invalidLine(fixture, lineNumber, "metadata of action " + action + " must be a JSON object", null);
+            }
+            parser.skipChildren();
+            if (parser.nextToken() != JsonToken.END_OBJECT || parser.nextToken() != null) {
+                throw invalidLine(fixture, lineNumber, "action must be a JSON object with single field", null);
+            }
+            return action;
+        } catch (IOException e) {
+            throw invalidLine(fixture, lineNumber, e.getMessage(), e);
+        }
+    }
+
+    private static InvalidFixtureException invalidLine(Fixture fixture, long lineNumber, String reason, Throwable cause) {
+        return new InvalidFixtureException("Invalid line " + lineNumber + " of fixture " + fixture.getName() + ": " + reason, cause);
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] != ' ' && data[i] != '\t' && data[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class BulkChunk {
+        private final byte[] body;
+        private final int length;
+        private final int documents;
+        private final int rawBytes;
+
+        private BulkChunk(byte[] body, int length, int documents, int rawBytes) {
+            this.body = body;
+            this.length = length;
+            this.documents = documents;
+            this.rawBytes = rawBytes;
+        }
+    }
+}
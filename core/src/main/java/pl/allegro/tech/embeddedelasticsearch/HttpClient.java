@@ -3,27 +3,101 @@ package pl.allegro.tech.embeddedelasticsearch;
 import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
 import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
 import org.apache.hc.core5.http.io.HttpClientResponseHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.function.Consumer;
 
 class HttpClient {
 
-    private final CloseableHttpClient internalHttpClient = HttpClients.createDefault();
+    private final CloseableHttpClient internalHttpClient;
 
     String token = null;
+    private final List<RestCallListener> listeners;
+    private final HttpCompression compression;
+    private final int minimumCompressedBytes;
 
     public HttpClient() {
+        this(Collections.emptyList(), HttpCompression.NONE, 0);
     }
 
     public HttpClient(String username, String password) {
+        this(username, password, Collections.emptyList(), HttpCompression.NONE, 0);
+    }
+
+    /**
+     * @param compression codec of bulk and search request bodies of at least given size
+     */
+    HttpClient(List<RestCallListener> listeners, HttpCompression compression, int minimumCompressedBytes) {
+        this.listeners = listeners;
+        this.compression = compression;
+        this.minimumCompressedBytes = minimumCompressedBytes;
+        this.internalHttpClient = HttpClients.createDefault();
+    }
+
+    HttpClient(String username, String password, List<RestCallListener> listeners, HttpCompression compression, int minimumCompressedBytes) {
+        this(listeners, compression, minimumCompressedBytes);
         String decodedToken = username + ":" + password;
         this.token = Base64.getEncoder().encodeToString(decodedToken.getBytes());
     }
 
+    private HttpClient(CloseableHttpClient internalHttpClient, String token, List<RestCallListener> listeners, HttpCompression compression,
+                       int minimumCompressedBytes) {
+        this.internalHttpClient = internalHttpClient;
+        this.token = token;
+        this.listeners = listeners;
+        this.compression = compression;
+        this.minimumCompressedBytes = minimumCompressedBytes;
+    }
+
+    /**
+     * Client with the same credentials, without listeners, compression and decompression of responses, so requests and
+     * responses pass as they are, keeping up to given number of connections open, so that many threads may send requests
+     * at once; close it when it is no longer needed
+     */
+    HttpClient rawWithMaxConnections(int maxConnections) {
+        return new HttpClient(HttpClients.custom().setConnectionManager(connectionManager(maxConnections)).disableContentCompression().build(),
+                token, Collections.emptyList(), HttpCompression.NONE, 0);
+    }
+
+    /**
+     * Client with the same credentials, listeners and compression, keeping up to given number of connections open;
+     * close it when it is no longer needed
+     */
+    HttpClient withConnectionPool(int maxConnections) {
+        return new HttpClient(HttpClients.custom().setConnectionManager(connectionManager(maxConnections)).build(),
+                token, listeners, compression, minimumCompressedBytes);
+    }
+
+    private static PoolingHttpClientConnectionManager connectionManager(int maxConnections) {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnections)
+                .build();
+    }
+
+    void close() {
+        try {
+            internalHttpClient.close();
+        } catch (IOException e) {
+            throw new HttpRequestException(e);
+        }
+    }
+
     void execute(HttpUriRequestBase request) {
         execute(request, (HttpClientResponseHandler<Void>) response -> null);
     }
@@ -36,16 +110,127 @@ class HttpClient {
     }
 
     <T> T execute(HttpUriRequestBase request, HttpClientResponseHandler<T> responseHandler) {
+        compressBody(request);
         if (this.token != null) {
             request.addHeader("Authorization", "Basic " + token);
         }
-        try {
-            return internalHttpClient.execute(request, responseHandler);
+        if (listeners.isEmpty()) {
+            try {
+                return internalHttpClient.execute(request, responseHandler);
+            } catch (IOException e) {
+                throw new HttpRequestException(e);
+            } finally {
+                request.reset();
+            }
+        }
+        return executeObserved(request, responseHandler);
+    }
+
+    private void compressBody(HttpUriRequestBase request) {
+        HttpEntity entity = request.getEntity();
+        if (compression == HttpCompression.NONE || entity == null || entity.getContentEncoding() != null
+                || entity.getContentLength() < minimumCompressedBytes || !isCompressible(request)) {
+            return;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) (entity.getContentLength() / 4) + 64);
+        try (OutputStream out = compression.compress(compressed)) {
+            entity.writeTo(out);
         } catch (IOException e) {
             throw new HttpRequestException(e);
+        }
+        request.setEntity(new ByteArrayEntity(compressed.toByteArray(), ContentType.parse(entity.getContentType()), compression.contentEncoding()));
+    }
+
+    private static boolean isCompressible(HttpUriRequestBase request) {
+        RestOperation operation = RestOperation.of(request.getMethod(), request.getRequestUri());
+        return operation == RestOperation.BULK || operation == RestOperation.SEARCH || operation == RestOperation.COUNT;
+    }
+
+    /**
+     * Executes request measuring its duration (including reading the response by handler) and transferred bytes,
+     * and notifies listeners about it
+     */
+    private <T> T executeObserved(HttpUriRequestBase request, HttpClientResponseHandler<T> responseHandler) {
+        long start = System.nanoTime();
+        ObservedResponse observed = new ObservedResponse();
+        T result;
+        try {
+            result = internalHttpClient.execute(request, response -> {
+                observed.statusCode = response.getCode();
+                if (response.getEntity() == null) {
+                    return responseHandler.handleResponse(response);
+                }
+                CountingEntity entity = new CountingEntity(response.getEntity());
+                response.setEntity(entity);
+                try {
+                    return responseHandler.handleResponse(response);
+                } finally {
+                    observed.bytes = Math.max(entity.bytesRead, entity.getContentLength());
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            RuntimeException failure = e instanceof IOException ? new HttpRequestException((IOException) e) : (RuntimeException) e;
+            try {
+                notifyListeners(request, observed, System.nanoTime() - start);
+            } catch (RuntimeException listenerFailure) {
+                failure.addSuppressed(listenerFailure);
+            }
+            throw failure;
         } finally {
             request.reset();
         }
+        notifyListeners(request, observed, System.nanoTime() - start);
+        return result;
+    }
+
+    private void notifyListeners(HttpUriRequestBase request, ObservedResponse observed, long durationNanos) {
+        long requestBytes = request.getEntity() != null ? Math.max(0, request.getEntity().getContentLength()) : 0;
+        String requestUri = request.getRequestUri();
+        RestCall call = new RestCall(RestOperation.of(request.getMethod(), requestUri), request.getMethod(), requestUri,
+                observed.statusCode, requestBytes, observed.bytes, durationNanos);
+        for (RestCallListener listener : listeners) {
+            listener.onCall(call);
+        }
+    }
+
+    private static final class ObservedResponse {
+        private int statusCode = -1;
+        private long bytes = 0;
+    }
+
+    /**
+     * Counts bytes of response body read by response handler
+     */
+    private static final class CountingEntity extends HttpEntityWrapper {
+
+        private long bytesRead = 0;
+
+        private CountingEntity(HttpEntity wrappedEntity) {
+            super(wrappedEntity);
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int value = super.read();
+                    if (value >= 0) {
+                        bytesRead++;
+                    }
+                    return value;
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int read = super.read(buffer, offset, length);
+                    if (read > 0) {
+                        bytesRead += read;
+                    }
+                    return read;
+                }
+            };
+        }
     }
 
     static class HttpRequestException extends RuntimeException {
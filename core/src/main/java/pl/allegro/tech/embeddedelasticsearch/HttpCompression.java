@@ -0,0 +1,38 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression of HTTP traffic between EmbeddedElastic and Elasticsearch. Bodies of bulk and search requests are
+ * compressed with chosen codec, and compressed responses are accepted. Over loopback compression usually costs more
+ * CPU than it saves; it pays off for remote or containerized nodes and large bulk requests.
+ */
+public enum HttpCompression {
+    NONE(null),
+    GZIP("gzip"),
+    DEFLATE("deflate");
+
+    private final String contentEncoding;
+
+    HttpCompression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    String contentEncoding() {
+        return contentEncoding;
+    }
+
+    OutputStream compress(OutputStream out) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPOutputStream(out, 8192);
+            case DEFLATE:
+                return new DeflaterOutputStream(out);
+            default:
+                return out;
+        }
+    }
+}
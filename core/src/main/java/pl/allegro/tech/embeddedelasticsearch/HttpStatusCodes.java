@@ -3,4 +3,5 @@ package pl.allegro.tech.embeddedelasticsearch;
 interface HttpStatusCodes {
     int OK = 200;
     int NOT_FOUND = 404;
+    int TOO_MANY_REQUESTS = 429;
 }
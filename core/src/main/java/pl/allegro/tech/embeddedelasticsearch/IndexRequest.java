@@ -1,33 +1,62 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
-public class IndexRequest {
-
-    private final String indexName;
-    private final String id;
-    private final String routing;
-    private final String json;
-
-    private IndexRequest(String indexName, String json, String id, String routing) {
-        this.indexName = indexName;
-        this.id = id;
-        this.routing = routing;
-        this.json = json;
-    }
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+public class IndexRequest extends BulkOperation {
 
-    public String getIndexName() {
-        return indexName;
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Object source;
+    private final String pipeline;
+    private final boolean create;
+
+    private IndexRequest(IndexRequestBuilder builder) {
+        super(builder.indexName, builder.id, builder.routing, builder.version, builder.versionType, builder.ifSeqNo, builder.ifPrimaryTerm);
+        this.source = builder.source;
+        this.pipeline = builder.pipeline;
+        this.create = builder.create;
     }
 
-    public String getId() {
-        return id;
+    /**
+     * @return create when document must not exist yet, index otherwise
+     */
+    @Override
+    public String getAction() {
+        return create ? "create" : "index";
     }
 
-    public String getRouting() {
-        return routing;
+    public String getPipeline() {
+        return pipeline;
     }
 
+    /**
+     * @return source as JSON; object sources are serialized with default ObjectMapper on every call
+     */
     public String getJson() {
-        return json;
+        if (source == null || source instanceof String) {
+            return (String) source;
+        }
+        if (source instanceof byte[]) {
+            return new String((byte[]) source, UTF_8);
+        }
+        try {
+            return OBJECT_MAPPER.writeValueAsString(source);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Cannot serialize source of document " + getId(), e);
+        }
+    }
+
+    /**
+     * @return JSON string, UTF-8 encoded JSON bytes or object serialized when bulk request is written
+     */
+    Object getSource() {
+        return source;
     }
 
     public static class IndexRequestBuilder {
@@ -35,11 +64,25 @@ public class IndexRequest {
         private String indexName;
         private String id;
         private String routing;
-        private String json;
+        private Object source;
+        private String pipeline;
+        private boolean create;
+        private Long version;
+        private VersionType versionType;
+        private Long ifSeqNo;
+        private Long ifPrimaryTerm;
 
         public IndexRequestBuilder(final String indexName, final String json) {
             this.indexName = indexName;
-            this.json = json;
+            this.source = json;
+        }
+
+        /**
+         * @param json UTF-8 encoded JSON, written to bulk request without converting it to string
+         */
+        public IndexRequestBuilder(final String indexName, final byte[] json) {
+            this.indexName = indexName;
+            this.source = json;
         }
 
         public IndexRequestBuilder withIndexName(String indexName) {
@@ -58,12 +101,57 @@ public class IndexRequest {
         }
 
         public IndexRequestBuilder withJson(String json) {
-            this.json = json;
+            this.source = json;
+            return this;
+        }
+
+        public IndexRequestBuilder withJson(byte[] json) {
+            this.source = json;
+            return this;
+        }
+
+        /**
+         * Object serialized with Jackson straight into bulk request, in JSON or SMILE
+         */
+        public IndexRequestBuilder withSource(Object document) {
+            this.source = document;
+            return this;
+        }
+
+        /**
+         * Ingest pipeline preprocessing the document
+         */
+        public IndexRequestBuilder withPipeline(String pipeline) {
+            this.pipeline = pipeline;
+            return this;
+        }
+
+        /**
+         * Sends create action, which fails if document with given id already exists
+         */
+        public IndexRequestBuilder withOpTypeCreate() {
+            this.create = true;
+            return this;
+        }
+
+        public IndexRequestBuilder withVersion(long version, VersionType versionType) {
+            require(versionType != null, "Version type must be given with version " + version);
+            this.version = version;
+            this.versionType = versionType;
+            return this;
+        }
+
+        /**
+         * Document is indexed only if it was last modified by operation of given sequence number and primary term
+         */
+        public IndexRequestBuilder withIfSeqNo(long seqNo, long primaryTerm) {
+            this.ifSeqNo = seqNo;
+            this.ifPrimaryTerm = primaryTerm;
             return this;
         }
 
         public IndexRequest build() {
-            return new IndexRequest(indexName, json, id, routing);
+            return new IndexRequest(this);
         }
     }
 }
@@ -7,6 +7,7 @@ import org.apache.commons.io.IOUtils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Map;
 import java.util.Optional;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -14,24 +15,44 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 public class IndexSettings {
 
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String INDEX_PREFIX = "index.";
+
+    static final String CONTENT_HASH_META_FIELD = "embedded_elasticsearch_content_hash";
 
     private final Optional<JsonNode> mappings;
     private final Optional<JsonNode> settings;
     private final Optional<JsonNode> aliases;
+    private final String contentHash;
+    private final boolean contentHashInMappings;
+    private final ObjectNode declaredJson;
+    private final byte[] requestBody;
+
     public static Builder builder() {
         return new Builder();
     }
 
     public IndexSettings(Optional<String>  mapping, Optional<String> settings) {
-        this.mappings = mapping.map(this::rawToJson);
-        this.settings = settings.map(this::rawToJson);
-        this.aliases = Optional.empty();
+        this(mapping, settings, Optional.empty());
     }
 
     private IndexSettings(Optional<String> mapping, Optional<String> settings, Optional<String> aliases) {
-        this.mappings = mapping.map(this::rawToJson);
-        this.settings = settings.map(this::rawToJson);
-        this.aliases = aliases.map(this::rawToJson);
+        this(mapping.map(IndexSettings::rawToJson).orElse(null),
+                settings.map(IndexSettings::rawToJson).orElse(null),
+                aliases.map(IndexSettings::rawToJson).orElse(null));
+    }
+
+    private IndexSettings(JsonNode mappings, JsonNode settings, JsonNode aliases) {
+        this(mappings, settings, aliases, false);
+    }
+
+    private IndexSettings(JsonNode mappings, JsonNode settings, JsonNode aliases, boolean contentHashInMappings) {
+        this.mappings = Optional.ofNullable(mappings);
+        this.settings = Optional.ofNullable(settings);
+        this.aliases = Optional.ofNullable(aliases);
+        this.contentHashInMappings = contentHashInMappings;
+        this.declaredJson = createRequestJson();
+        this.contentHash = ContentHash.of(toBytes(declaredJson));
+        this.requestBody = toBytes(contentHashInMappings ? withContentHashInMappings(declaredJson, contentHash) : declaredJson);
     }
 
     public static class Builder {
@@ -107,17 +128,98 @@ public class IndexSettings {
         }
     }
 
+    /**
+     * Declared mappings, settings and aliases, without content hash added to request body
+     */
     public ObjectNode toJson() {
-        ObjectNode objectNode = new ObjectMapper().createObjectNode();
+        return declaredJson.deepCopy();
+    }
+
+    /**
+     * SHA-256 of declared mappings, settings and aliases. Stays the same as long as index definition does not change.
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * Body of create index request, serialized once. The array is shared and must not be modified.
+     */
+    byte[] toRequestBody() {
+        return requestBody;
+    }
+
+    /**
+     * Whether content hash is stored in _meta of index mappings, so it can be compared with live index
+     */
+    boolean isContentHashInMappings() {
+        return contentHashInMappings;
+    }
+
+    /**
+     * Creates copy of these settings which stores content hash in _meta of index mappings.
+     * Works only with typeless mappings, i.e. Elasticsearch 7 and newer.
+     */
+    IndexSettings withContentHashInMappings() {
+        return new IndexSettings(mappings.orElse(null), settings.orElse(null), aliases.orElse(null), true);
+    }
+
+    private ObjectNode createRequestJson() {
+        ObjectNode objectNode = OBJECT_MAPPER.createObjectNode();
         objectNode.set("settings", settings.orElse(OBJECT_MAPPER.createObjectNode()));
         objectNode.set("aliases", aliases.orElse(OBJECT_MAPPER.createObjectNode()));
 
-        objectNode.set("mappings",mappings.orElse(OBJECT_MAPPER.createObjectNode()));
+        objectNode.set("mappings", mappings.orElse(OBJECT_MAPPER.createObjectNode()));
 
         return objectNode;
     }
 
-    private JsonNode rawToJson(String rawJson) {
+    private static ObjectNode withContentHashInMappings(ObjectNode json, String contentHash) {
+        ObjectNode jsonWithContentHash = json.deepCopy();
+        JsonNode mappings = jsonWithContentHash.get("mappings");
+        if (mappings.isObject()) {
+            ((ObjectNode) mappings).withObject("/_meta").put(CONTENT_HASH_META_FIELD, contentHash);
+        }
+        return jsonWithContentHash;
+    }
+
+    private static byte[] toBytes(JsonNode json) {
+        try {
+            return OBJECT_MAPPER.writeValueAsBytes(json);
+        } catch (IOException e) {
+            throw new RuntimeException("Problem with serializing settings for index", e);
+        }
+    }
+
+    /**
+     * Creates copy of these settings extended with given index settings (e.g. "index.number_of_replicas").
+     * Settings already specified for this index, either in flat or nested form, take precedence.
+     */
+    IndexSettings withDefaultSettings(Map<String, Object> defaults) {
+        if (defaults.isEmpty()) {
+            return this;
+        }
+        ObjectNode mergedSettings = settings
+                .filter(JsonNode::isObject)
+                .map(node -> (ObjectNode) node.deepCopy())
+                .orElseGet(OBJECT_MAPPER::createObjectNode);
+        defaults.forEach((key, value) -> {
+            if (!containsSetting(mergedSettings, key)) {
+                mergedSettings.set(key, OBJECT_MAPPER.valueToTree(value));
+            }
+        });
+        return new IndexSettings(mappings.orElse(null), mergedSettings, aliases.orElse(null), contentHashInMappings);
+    }
+
+    private static boolean containsSetting(JsonNode settings, String key) {
+        String keyWithoutPrefix = key.startsWith(INDEX_PREFIX) ? key.substring(INDEX_PREFIX.length()) : key;
+        return settings.has(key)
+                || settings.has(keyWithoutPrefix)
+                || !settings.at("/" + key.replace('.', '/')).isMissingNode()
+                || !settings.at("/" + keyWithoutPrefix.replace('.', '/')).isMissingNode();
+    }
+
+    private static JsonNode rawToJson(String rawJson) {
         try {
             return OBJECT_MAPPER.readTree(rawJson);
         } catch (IOException e) {
@@ -1,6 +1,8 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -9,7 +11,16 @@ class IndicesDescription {
     private final Map<String, Optional<IndexSettings>> indices;
 
     IndicesDescription(Map<String, Optional<IndexSettings>> indices) {
-        this.indices = indices;
+        this(indices, Collections.emptyMap(), false);
+    }
+
+    /**
+     * @param defaultIndexSettings settings applied to every index unless specified explicitly
+     * @param contentHashInMappings whether content hash of index definition should be stored in _meta of index mappings,
+     *                              possible for typeless mappings only
+     */
+    IndicesDescription(Map<String, Optional<IndexSettings>> indices, Map<String, Object> defaultIndexSettings, boolean contentHashInMappings) {
+        this.indices = resolveIndexSettings(indices, defaultIndexSettings, contentHashInMappings);
     }
 
     Collection<String> getIndicesNames() {
@@ -17,6 +28,21 @@ class IndicesDescription {
     }
 
     Optional<IndexSettings> getIndexSettings(String indexName) {
-        return indices.get(indexName);
+        return indices.getOrDefault(indexName, Optional.empty());
+    }
+
+    private static Map<String, Optional<IndexSettings>> resolveIndexSettings(Map<String, Optional<IndexSettings>> indices,
+                                                                             Map<String, Object> defaultIndexSettings,
+                                                                             boolean contentHashInMappings) {
+        if (defaultIndexSettings.isEmpty() && !contentHashInMappings) {
+            return indices;
+        }
+        Map<String, Optional<IndexSettings>> resolvedIndices = new LinkedHashMap<>();
+        indices.forEach((indexName, indexSettings) -> {
+            IndexSettings resolvedSettings = indexSettings.orElseGet(() -> IndexSettings.builder().build())
+                    .withDefaultSettings(defaultIndexSettings);
+            resolvedIndices.put(indexName, Optional.of(contentHashInMappings ? resolvedSettings.withContentHashInMappings() : resolvedSettings));
+        });
+        return resolvedIndices;
     }
 }
@@ -0,0 +1,103 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * <p>Describes how {@link IngestionSink} batches documents and how much load it puts on Elasticsearch:
+ * batches are sent when they reach given number of documents or bytes, or when flush interval elapses,
+ * and at most given number of bulk requests is in flight at once.</p>
+ * <p>Instances are immutable, use withXXX methods to create modified copies.</p>
+ */
+public final class IngestionOptions {
+
+    private static final int DEFAULT_BATCH_DOCUMENTS = 1000;
+    private static final long DEFAULT_BATCH_BYTES = 5 * 1024 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_IN_MS = 1000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_BULKS = 2;
+    private static final int DEFAULT_MAX_RETRIES = 10;
+
+    private final int batchDocuments;
+    private final long batchBytes;
+    private final long flushIntervalInMs;
+    private final int maxInFlightBulks;
+    private final int maxRetries;
+
+    private IngestionOptions(int batchDocuments, long batchBytes, long flushIntervalInMs, int maxInFlightBulks, int maxRetries) {
+        this.batchDocuments = batchDocuments;
+        this.batchBytes = batchBytes;
+        this.flushIntervalInMs = flushIntervalInMs;
+        this.maxInFlightBulks = maxInFlightBulks;
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Batches of 1000 documents or 5 MB sent at least every second, at most 2 bulk requests in flight
+     */
+    public static IngestionOptions defaults() {
+        return new IngestionOptions(DEFAULT_BATCH_DOCUMENTS, DEFAULT_BATCH_BYTES, DEFAULT_FLUSH_INTERVAL_IN_MS,
+                DEFAULT_MAX_IN_FLIGHT_BULKS, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Number of documents which makes batch be sent at once
+     */
+    public IngestionOptions withBatchDocuments(int batchDocuments) {
+        require(batchDocuments > 0, "Number of documents in batch must be positive");
+        return new IngestionOptions(batchDocuments, batchBytes, flushIntervalInMs, maxInFlightBulks, maxRetries);
+    }
+
+    /**
+     * Size of bulk request body which makes batch be sent at once
+     */
+    public IngestionOptions withBatchBytes(long batchBytes) {
+        require(batchBytes > 0, "Size of batch must be positive");
+        return new IngestionOptions(batchDocuments, batchBytes, flushIntervalInMs, maxInFlightBulks, maxRetries);
+    }
+
+    /**
+     * Longest time documents wait in not full batch before it is sent
+     */
+    public IngestionOptions withFlushInterval(long value, TimeUnit unit) {
+        require(value > 0, "Flush interval must be positive");
+        return new IngestionOptions(batchDocuments, batchBytes, unit.toMillis(value), maxInFlightBulks, maxRetries);
+    }
+
+    /**
+     * Number of bulk requests sent concurrently; producers block when all of them are in flight.
+     * Sink lowers it temporarily while Elasticsearch rejects requests
+     */
+    public IngestionOptions withMaxInFlightBulks(int maxInFlightBulks) {
+        require(maxInFlightBulks > 0, "Number of in-flight bulk requests must be positive");
+        return new IngestionOptions(batchDocuments, batchBytes, flushIntervalInMs, maxInFlightBulks, maxRetries);
+    }
+
+    /**
+     * How many times documents rejected by overloaded Elasticsearch are retried before ingestion fails
+     */
+    public IngestionOptions withMaxRetries(int maxRetries) {
+        require(maxRetries >= 0, "Number of retries cannot be negative");
+        return new IngestionOptions(batchDocuments, batchBytes, flushIntervalInMs, maxInFlightBulks, maxRetries);
+    }
+
+    int getBatchDocuments() {
+        return batchDocuments;
+    }
+
+    long getBatchBytes() {
+        return batchBytes;
+    }
+
+    long getFlushIntervalInMs() {
+        return flushIntervalInMs;
+    }
+
+    int getMaxInFlightBulks() {
+        return maxInFlightBulks;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+}
@@ -0,0 +1,358 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * <p>Indexes documents coming from many producer threads in bulk requests sent in background. Documents are batched
+ * by count, size and time, see {@link IngestionOptions}. Producers are slowed down instead of buffering without bound:
+ * {@link #accept(BulkOperation)} blocks while all allowed bulk requests are in flight. Documents rejected by overloaded
+ * Elasticsearch (429, thread pool rejections) are retried with exponential backoff, and the number of bulk requests
+ * allowed in flight is halved on every rejection and grows back by one with every bulk request accepted at once.</p>
+ * <p>Created by {@link EmbeddedElastic#ingestionSink(IngestionOptions)}, use in try-with-resources so remaining
+ * documents are sent on close. Other failures are rethrown to producers and on close.</p>
+ */
+public final class IngestionSink implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionSink.class);
+    private static final long INITIAL_BACKOFF_IN_MS = 50;
+    private static final long MAX_BACKOFF_IN_MS = 5000;
+
+    private final IngestionOptions options;
+    private final BulkTarget target;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService flusher;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition bulkFinished = lock.newCondition();
+    private final AtomicLong indexedDocuments = new AtomicLong();
+    private final AtomicLong bulkRequests = new AtomicLong();
+    private final AtomicLong rejectedDocuments = new AtomicLong();
+    private final AtomicLong backoffMillis = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private Batch batch = new Batch();
+    private int inFlight;
+    private int inFlightLimit;
+    private RuntimeException failure;
+    private boolean closed;
+
+    IngestionSink(IngestionOptions options, BulkTarget target) {
+        this.options = options;
+        this.target = target;
+        this.inFlightLimit = options.getMaxInFlightBulks();
+        this.senders = WorkerPools.newIoPool("EmbeddedElsIngestion", options.getMaxInFlightBulks());
+        this.flusher = WorkerPools.newScheduledPool("EmbeddedElsIngestionFlusher");
+        flusher.scheduleAtFixedRate(this::flushOnInterval, options.getFlushIntervalInMs(), options.getFlushIntervalInMs(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds document operation (index, create, update or delete) to current batch, sends the batch if it is full.
+     * Blocks while all allowed bulk requests are in flight.
+     *
+     * @throws IllegalStateException if sink is closed or earlier bulk request failed
+     * @throws InterruptedException if the current thread is interrupted while waiting for bulk request to finish
+     */
+    public void accept(BulkOperation operation) throws InterruptedException {
+        byte[] lines = target.render(operation);
+        lock.lockInterruptibly();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Ingestion sink is closed");
+            }
+            throwIfFailed();
+            batch.add(lines, 0, lines.length);
+            send(this::isFull);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends current batch, waits for all bulk requests in flight and refreshes indices, so accepted documents are searchable
+     *
+     * @throws IllegalStateException if any bulk request failed
+     * @throws InterruptedException if the current thread is interrupted while waiting for bulk requests
+     */
+    public void flush() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            send(Batch::isNotEmpty);
+            while (inFlight > 0) {
+                bulkFinished.await();
+            }
+            throwIfFailed();
+        } finally {
+            lock.unlock();
+        }
+        if (indexedDocuments.get() > 0) {
+            target.refresh();
+        }
+    }
+
+    /**
+     * Flushes remaining documents and stops background threads
+     */
+    @Override
+    public void close() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush();
+        } finally {
+            flusher.shutdownNow();
+            senders.shutdown();
+            target.close();
+            logger.info(toString());
+        }
+    }
+
+    public long getIndexedDocuments() {
+        return indexedDocuments.get();
+    }
+
+    /**
+     * Bulk requests sent so far, including retries
+     */
+    public long getBulkRequests() {
+        return bulkRequests.get();
+    }
+
+    /**
+     * Documents rejected by overloaded Elasticsearch and sent again, counted once per rejection
+     */
+    public long getRejectedDocuments() {
+        return rejectedDocuments.get();
+    }
+
+    /**
+     * Total time bulk requests waited before retrying rejected documents
+     */
+    public long getBackoffMillis() {
+        return backoffMillis.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Ingested %d documents in %d ms using %d bulk requests, %d documents rejected and retried after %d ms of backoff",
+                getIndexedDocuments(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), getBulkRequests(),
+                getRejectedDocuments(), getBackoffMillis());
+    }
+
+    private boolean isFull(Batch batch) {
+        return batch.documents >= options.getBatchDocuments() || batch.size() >= options.getBatchBytes();
+    }
+
+    /**
+     * Hands current batch over to sender thread as long as it satisfies given condition, waiting for free slot
+     * if needed. Documents added meanwhile by other producers go to the same batch, so none is lost on interruption.
+     */
+    private void send(Predicate<Batch> shouldSend) throws InterruptedException {
+        while (shouldSend.test(batch)) {
+            throwIfFailed();
+            if (inFlight < inFlightLimit) {
+                Batch full = batch;
+                batch = new Batch();
+                inFlight++;
+                senders.execute(() -> sendInBackground(full));
+            } else {
+                bulkFinished.await();
+            }
+        }
+    }
+
+    private void flushOnInterval() {
+        try {
+            lock.lockInterruptibly();
+            try {
+                send(Batch::isNotEmpty);
+            } finally {
+                lock.unlock();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // failure is rethrown to producers
+        }
+    }
+
+    private void sendInBackground(Batch batch) {
+        boolean rejected = false;
+        RuntimeException bulkFailure = null;
+        try {
+            rejected = sendRetryingRejected(batch);
+            indexedDocuments.addAndGet(batch.documents);
+        } catch (InterruptedException e) {
+            bulkFailure = new IllegalStateException("Interrupted while retrying rejected documents", e);
+        } catch (RuntimeException e) {
+            bulkFailure = e;
+        }
+        lock.lock();
+        try {
+            inFlight--;
+            if (!rejected && bulkFailure == null) {
+                inFlightLimit = Math.min(inFlightLimit + 1, options.getMaxInFlightBulks());
+            }
+            if (failure == null) {
+                failure = bulkFailure;
+            }
+            bulkFinished.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if any document of the batch was rejected before being indexed
+     */
+    private boolean sendRetryingRejected(Batch batch) throws InterruptedException {
+        Batch toSend = batch;
+        long backoff = INITIAL_BACKOFF_IN_MS;
+        for (int retry = 0; ; retry++) {
+            bulkRequests.incrementAndGet();
+            BitSet rejectedItems = target.send(toSend.buffer(), toSend.size(), toSend.documents);
+            if (rejectedItems.isEmpty()) {
+                return retry > 0;
+            }
+            if (retry == options.getMaxRetries()) {
+                throw new IllegalStateException(rejectedItems.cardinality() + " documents still rejected by Elasticsearch after "
+                        + retry + " retries");
+            }
+            rejectedDocuments.addAndGet(rejectedItems.cardinality());
+            lowerInFlightLimit();
+            Thread.sleep(backoff);
+            backoffMillis.addAndGet(backoff);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_IN_MS);
+            toSend = toSend.select(rejectedItems);
+        }
+    }
+
+    private void lowerInFlightLimit() {
+        lock.lock();
+        try {
+            inFlightLimit = Math.max(1, inFlightLimit / 2);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Where documents are sent to, replaced by a stub in tests
+     */
+    interface BulkTarget {
+
+        /**
+         * @return action and source of the operation in bulk body format
+         */
+        byte[] render(BulkOperation operation);
+
+        /**
+         * @return positions of items rejected by overloaded Elasticsearch, which may be retried
+         */
+        BitSet send(byte[] body, int length, int items);
+
+        void refresh();
+
+        /**
+         * Releases connections kept for bulk requests
+         */
+        void close();
+
+        /**
+         * Supplier is asked for every request, as client changes when node is restarted. Bulk requests are sent
+         * by a client keeping given number of connections open, so that all bulk requests in flight get one.
+         */
+        static BulkTarget of(Supplier<ElasticRestClient> elasticRestClient, int connections) {
+            return new BulkTarget() {
+                private ElasticRestClient source;
+                private ElasticRestClient pooled;
+
+                @Override
+                public byte[] render(BulkOperation operation) {
+                    return elasticRestClient.get().bulkItem(operation);
+                }
+
+                @Override
+                public BitSet send(byte[] body, int length, int items) {
+                    return pooledClient().bulkReturningRejected(body, length, items);
+                }
+
+                @Override
+                public void refresh() {
+                    elasticRestClient.get().refresh();
+                }
+
+                @Override
+                public synchronized void close() {
+                    if (pooled != null) {
+                        pooled.close();
+                    }
+                    source = null;
+                    pooled = null;
+                }
+
+                private synchronized ElasticRestClient pooledClient() {
+                    ElasticRestClient current = elasticRestClient.get();
+                    if (current != source) {
+                        close();
+                        pooled = current.withConnectionPool(connections);
+                        source = current;
+                    }
+                    return pooled;
+                }
+            };
+        }
+    }
+
+    /**
+     * Bulk request body with positions of its items
+     */
+    private static final class Batch extends BulkBuffer {
+
+        private int[] itemStarts = new int[16];
+        private int documents;
+
+        private void add(byte[] lines, int offset, int length) {
+            if (documents == itemStarts.length) {
+                itemStarts = Arrays.copyOf(itemStarts, documents * 2);
+            }
+            itemStarts[documents++] = count;
+            write(lines, offset, length);
+        }
+
+        private boolean isNotEmpty() {
+            return documents > 0;
+        }
+
+        private Batch select(BitSet items) {
+            Batch selected = new Batch();
+            for (int item = items.nextSetBit(0); item >= 0; item = items.nextSetBit(item + 1)) {
+                int end = item + 1 < documents ? itemStarts[item + 1] : count;
+                selected.add(buf, itemStarts[item], end - itemStarts[item]);
+            }
+            return selected;
+        }
+    }
+}
@@ -7,11 +7,16 @@ import java.io.File;
 import java.net.Proxy;
 import java.net.URL;
 import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 class InstallationDescription {
 
     private static final File DEFAULT_INSTALL_DIR = new File(System.getProperty("java.io.tmpdir"), "embedded-elasticsearch-temp-dir");
     private static final File DEFAULT_DOWNLOAD_DIR = DEFAULT_INSTALL_DIR;
+    private static final Pattern MAJOR_VERSION_PATTERN = Pattern.compile("^(\\d+)");
+    private static final Pattern MINOR_VERSION_PATTERN = Pattern.compile("^\\d+\\.(\\d+)");
 
     private final InstallationSource installationSource;
     private final List<Plugin> plugins;
@@ -21,6 +26,9 @@ class InstallationDescription {
     private final int downloaderConnectionTimeoutInMs;
     private final int downloaderReadTimeoutInMs;
     private final Proxy downloadProxy;
+    private final File inMemoryDataDirectory;
+    private final long inMemoryDataDirectoryMinimumFreeSpaceInBytes;
+    private final boolean sharedDistribution;
 
     InstallationDescription(
             InstallationSource installationSource,
@@ -29,7 +37,10 @@ class InstallationDescription {
             boolean cleanInstallationDirectoryOnStop,
             List<Plugin> plugins,
             int downloaderConnectionTimeoutInMs,
-            int downloaderReadTimeoutInMs, Proxy downloadProxy) {
+            int downloaderReadTimeoutInMs, Proxy downloadProxy,
+            File inMemoryDataDirectory,
+            long inMemoryDataDirectoryMinimumFreeSpaceInBytes,
+            boolean sharedDistribution) {
         this.installationSource = installationSource;
         this.plugins = plugins;
         this.cleanInstallationDirectoryOnStop = cleanInstallationDirectoryOnStop;
@@ -38,6 +49,9 @@ class InstallationDescription {
         this.downloaderConnectionTimeoutInMs = downloaderConnectionTimeoutInMs;
         this.downloaderReadTimeoutInMs = downloaderReadTimeoutInMs;
         this.downloadProxy = downloadProxy;
+        this.inMemoryDataDirectory = inMemoryDataDirectory;
+        this.inMemoryDataDirectoryMinimumFreeSpaceInBytes = inMemoryDataDirectoryMinimumFreeSpaceInBytes;
+        this.sharedDistribution = sharedDistribution;
     }
 
     String getVersion() {
@@ -52,6 +66,30 @@ class InstallationDescription {
         return plugins;
     }
 
+    int getMajorVersion() {
+        Matcher matcher = MAJOR_VERSION_PATTERN.matcher(getVersion());
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Cannot determine major version of Elasticsearch: " + getVersion());
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * @return 0 when version does not specify minor version
+     */
+    int getMinorVersion() {
+        Matcher matcher = MINOR_VERSION_PATTERN.matcher(getVersion());
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 0;
+    }
+
+    /**
+     * @return false also when version of Elasticsearch cannot be determined
+     */
+    boolean isMajorVersionAtLeast(int majorVersion) {
+        Matcher matcher = MAJOR_VERSION_PATTERN.matcher(getVersion());
+        return matcher.find() && Integer.parseInt(matcher.group(1)) >= majorVersion;
+    }
+
     boolean versionIs1x() {
         return getVersion().startsWith("1.");
     }
@@ -84,6 +122,18 @@ class InstallationDescription {
         return downloadProxy;
     }
 
+    Optional<File> getInMemoryDataDirectory() {
+        return Optional.ofNullable(inMemoryDataDirectory);
+    }
+
+    long getInMemoryDataDirectoryMinimumFreeSpaceInBytes() {
+        return inMemoryDataDirectoryMinimumFreeSpaceInBytes;
+    }
+
+    boolean isSharedDistribution() {
+        return sharedDistribution;
+    }
+
     static class Plugin {
         private final String expression;
 
@@ -7,6 +7,7 @@ import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 
 class InstanceSettings {
 
@@ -28,6 +29,26 @@ class InstanceSettings {
         return new InstanceSettings(extendedSettings);
     }
 
+    InstanceSettings withSettings(Map<String, Object> overrides) {
+        Map<String, Object> extendedSettings = new HashMap<>(settings);
+        extendedSettings.putAll(overrides);
+        return new InstanceSettings(extendedSettings);
+    }
+
+    boolean contains(String key) {
+        return settings.containsKey(key);
+    }
+
+    Optional<Object> get(String key) {
+        return Optional.ofNullable(settings.get(key));
+    }
+
+    InstanceSettings withDefaultSettings(Map<String, Object> defaults) {
+        Map<String, Object> extendedSettings = new HashMap<>(defaults);
+        extendedSettings.putAll(settings);
+        return new InstanceSettings(extendedSettings);
+    }
+
     String toYaml() {
         try {
             return yamlObjectMapper.writeValueAsString(settings);
@@ -0,0 +1,12 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+public class InvalidFixtureException extends IllegalArgumentException {
+
+    public InvalidFixtureException(String message) {
+        super(message);
+    }
+
+    public InvalidFixtureException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,69 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Histogram of latencies with fixed relative precision, in the spirit of HdrHistogram: every power of two range
+ * is split into 64 linear sub-buckets, so recorded values are kept with error below 1.6% in constant memory.
+ * Recording is synchronized, which is cheap compared to the REST calls being measured.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long maxValue;
+
+    synchronized void record(long value) {
+        long nonNegativeValue = Math.max(0, value);
+        counts[bucketIndex(nonNegativeValue)]++;
+        totalCount++;
+        maxValue = Math.max(maxValue, nonNegativeValue);
+    }
+
+    synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    synchronized long getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the highest value equivalent to the bucket the percentile falls into, 0 if nothing was recorded
+     */
+    synchronized long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long countAtPercentile = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+        for (int index = 0; index < counts.length; index++) {
+            count += counts[index];
+            if (count >= countAtPercentile) {
+                return Math.min(highestEquivalentValue(index), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - 1 - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long subBucket = index - (long) shift * SUB_BUCKETS;
+        long nextBucketStart = (subBucket + 1) << shift;
+        return nextBucketStart > 0 ? nextBucketStart - 1 : Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,211 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Typed set of throughput tweaks commonly applied to Elasticsearch nodes used in tests.
+ * Node level tweaks end up in elasticsearch.yml, index level tweaks are used as defaults
+ * for every index created by EmbeddedElastic. Keys are resolved against the version of the installed
+ * Elasticsearch, so the same preset can be shared between projects using different versions.
+ */
+public final class NodePreset {
+
+    private static final String DEFAULT_REFRESH_INTERVAL = "30s";
+    private static final int DEFAULT_BULK_THREAD_POOL_SIZE = 1;
+
+    private final boolean noReplicas;
+    private final String refreshInterval;
+    private final boolean asyncTranslog;
+    private final boolean diskWatermarksDisabled;
+    private final boolean memoryLock;
+    private final Integer bulkThreadPoolSize;
+    private final boolean machineLearningDisabled;
+    private final boolean xPackFeaturesDisabled;
+    private final boolean xPackTweaksSkippedWithoutXPack;
+
+    private NodePreset(Builder builder) {
+        this.noReplicas = builder.noReplicas;
+        this.refreshInterval = builder.refreshInterval;
+        this.asyncTranslog = builder.asyncTranslog;
+        this.diskWatermarksDisabled = builder.diskWatermarksDisabled;
+        this.memoryLock = builder.memoryLock;
+        this.bulkThreadPoolSize = builder.bulkThreadPoolSize;
+        this.machineLearningDisabled = builder.machineLearningDisabled;
+        this.xPackFeaturesDisabled = builder.xPackFeaturesDisabled;
+        this.xPackTweaksSkippedWithoutXPack = builder.xPackTweaksSkippedWithoutXPack;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * All tweaks useful for fast indexing in tests: no replicas, 30s refresh interval, async translog,
+     * disabled disk watermarks, single threaded bulk pool and disabled ML/xpack features (skipped for Elasticsearch
+     * older than 6.3, which does not bundle xpack). Memory lock is not included as it requires raising memlock limits
+     * of the user running tests.
+     */
+    public static NodePreset testThroughput() {
+        return builder()
+                .withoutReplicas()
+                .withRefreshInterval(DEFAULT_REFRESH_INTERVAL)
+                .withAsyncTranslog()
+                .withoutDiskWatermarks()
+                .withBulkThreadPoolSize(DEFAULT_BULK_THREAD_POOL_SIZE)
+                .withoutMachineLearning()
+                .withoutXPackFeatures()
+                .skippingXPackTweaksWithoutXPack()
+                .build();
+    }
+
+    Map<String, Object> nodeSettings(int majorVersion, int minorVersion) {
+        boolean xPackBundled = majorVersion > 6 || majorVersion == 6 && minorVersion >= 3;
+        Map<String, Object> settings = new LinkedHashMap<>();
+        if (diskWatermarksDisabled) {
+            settings.put("cluster.routing.allocation.disk.threshold_enabled", false);
+        }
+        if (memoryLock) {
+            settings.put(majorVersion >= 5 ? "bootstrap.memory_lock" : "bootstrap.mlockall", true);
+        }
+        if (bulkThreadPoolSize != null) {
+            settings.put(bulkThreadPoolSizeKey(majorVersion), bulkThreadPoolSize);
+        }
+        if (machineLearningDisabled && appliesXPackTweak(xPackBundled, "Disabling machine learning")) {
+            settings.put("xpack.ml.enabled", false);
+        }
+        if (xPackFeaturesDisabled && appliesXPackTweak(xPackBundled, "Disabling xpack features")) {
+            settings.put("xpack.ml.enabled", false);
+            settings.put("xpack.watcher.enabled", false);
+            settings.put("xpack.monitoring.collection.enabled", false);
+            settings.put("xpack.security.enabled", false);
+        }
+        return settings;
+    }
+
+    Map<String, Object> indexSettings(int majorVersion) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        if (noReplicas) {
+            settings.put("index.number_of_replicas", 0);
+        }
+        if (refreshInterval != null) {
+            settings.put("index.refresh_interval", refreshInterval);
+        }
+        if (asyncTranslog) {
+            require(majorVersion >= 2, "Async translog durability is available since Elasticsearch 2.0");
+            settings.put("index.translog.durability", "async");
+        }
+        return settings;
+    }
+
+    private static String bulkThreadPoolSizeKey(int majorVersion) {
+        if (majorVersion <= 2) {
+            return "threadpool.bulk.size";
+        }
+        if (majorVersion <= 6) {
+            return "thread_pool.bulk.size";
+        }
+        return "thread_pool.write.size";
+    }
+
+    /**
+     * @return false if tweak is skipped, as installed Elasticsearch does not bundle xpack
+     */
+    private boolean appliesXPackTweak(boolean xPackBundled, String tweak) {
+        require(xPackBundled || xPackTweaksSkippedWithoutXPack,
+                tweak + " requires Elasticsearch 6.3 or newer, where xpack is bundled with default distribution");
+        return xPackBundled;
+    }
+
+    public static final class Builder {
+
+        private boolean noReplicas = false;
+        private String refreshInterval = null;
+        private boolean asyncTranslog = false;
+        private boolean diskWatermarksDisabled = false;
+        private boolean memoryLock = false;
+        private Integer bulkThreadPoolSize = null;
+        private boolean machineLearningDisabled = false;
+        private boolean xPackFeaturesDisabled = false;
+        private boolean xPackTweaksSkippedWithoutXPack = false;
+
+        private Builder() {
+        }
+
+        /**
+         * Create indices without replicas, so single node cluster reaches green status
+         */
+        public Builder withoutReplicas() {
+            this.noReplicas = true;
+            return this;
+        }
+
+        /**
+         * Default refresh interval of created indices, e.g. "30s" or "-1" to disable periodic refresh
+         */
+        public Builder withRefreshInterval(String refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * Fsync translog in background instead of after every request
+         */
+        public Builder withAsyncTranslog() {
+            this.asyncTranslog = true;
+            return this;
+        }
+
+        /**
+         * Disable disk based shard allocation, so nearly full disks on CI agents do not block indexing
+         */
+        public Builder withoutDiskWatermarks() {
+            this.diskWatermarksDisabled = true;
+            return this;
+        }
+
+        /**
+         * Lock Elasticsearch heap in memory. Requires unlimited memlock for user running tests
+         */
+        public Builder withMemoryLock() {
+            this.memoryLock = true;
+            return this;
+        }
+
+        /**
+         * Number of threads used to process bulk (write) requests
+         */
+        public Builder withBulkThreadPoolSize(int size) {
+            require(size > 0, "Bulk thread pool size must be positive");
+            this.bulkThreadPoolSize = size;
+            return this;
+        }
+
+        /**
+         * Disable machine learning, which is known to cause startup issues on some systems
+         */
+        public Builder withoutMachineLearning() {
+            this.machineLearningDisabled = true;
+            return this;
+        }
+
+        /**
+         * Disable machine learning, watcher, monitoring collection and security
+         */
+        public Builder withoutXPackFeatures() {
+            this.xPackFeaturesDisabled = true;
+            return this;
+        }
+
+        private Builder skippingXPackTweaksWithoutXPack() {
+            this.xPackTweaksSkippedWithoutXPack = true;
+            return this;
+        }
+
+        public NodePreset build() {
+            return new NodePreset(this);
+        }
+    }
+}
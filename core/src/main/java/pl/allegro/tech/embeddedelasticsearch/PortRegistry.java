@@ -0,0 +1,150 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Reserves ports for Elasticsearch nodes before they start. Every reserved port is guarded by a lock on its own file
+ * in registry directory shared by all JVMs of the user, held until reservation is released or JVM exits,
+ * so concurrently starting nodes never pick the same port. Ports used by other processes are skipped.
+ */
+class PortRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(PortRegistry.class);
+
+    static final int DEFAULT_FIRST_PORT = 20_000;
+    static final int DEFAULT_LAST_PORT = 40_000;
+    private static final File DEFAULT_REGISTRY_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "embedded-elasticsearch-ports");
+
+    private final File registryDirectory;
+    private final int firstPort;
+    private final int lastPort;
+
+    PortRegistry(int firstPort, int lastPort) {
+        this(DEFAULT_REGISTRY_DIRECTORY, firstPort, lastPort);
+    }
+
+    PortRegistry(File registryDirectory, int firstPort, int lastPort) {
+        require(firstPort > 0 && lastPort <= 65_535 && firstPort < lastPort, "Invalid port range " + firstPort + "-" + lastPort);
+        this.registryDirectory = registryDirectory;
+        this.firstPort = firstPort;
+        this.lastPort = lastPort;
+    }
+
+    /**
+     * Reserves given number of free ports from the range. Search starts at random port to limit lock contention
+     * between nodes starting at the same time.
+     */
+    Reservation reserve(int count) throws IOException {
+        require(registryDirectory.isDirectory() || registryDirectory.mkdirs(), "Cannot create port registry directory " + registryDirectory);
+        int rangeSize = lastPort - firstPort + 1;
+        int offset = ThreadLocalRandom.current().nextInt(rangeSize);
+        List<PortLock> locks = new ArrayList<>();
+        Reservation reservation = new Reservation(locks);
+        try {
+            for (int i = 0; i < rangeSize && locks.size() < count; i++) {
+                int port = firstPort + (offset + i) % rangeSize;
+                PortLock lock = tryLock(port);
+                if (lock != null) {
+                    locks.add(lock);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            reservation.close();
+            throw e;
+        }
+        if (locks.size() < count) {
+            reservation.close();
+            throw new EmbeddedElasticsearchStartupException("Cannot reserve " + count + " free ports in range " + firstPort + "-" + lastPort);
+        }
+        logger.info("Reserved ports " + reservation.ports());
+        return reservation;
+    }
+
+    private PortLock tryLock(int port) throws IOException {
+        FileChannel channel = FileChannel.open(new File(registryDirectory, "port-" + port + ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // port is already reserved within this JVM
+                lock = null;
+            }
+            if (lock != null && isFree(port)) {
+                return new PortLock(port, channel);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        channel.close();
+        return null;
+    }
+
+    private static boolean isFree(int port) {
+        try (ServerSocket socket = new ServerSocket(port)) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static final class PortLock {
+        private final int port;
+        private final FileChannel channel;
+
+        private PortLock(int port, FileChannel channel) {
+            this.port = port;
+            this.channel = channel;
+        }
+    }
+
+    static final class Reservation implements Closeable {
+
+        private final List<PortLock> locks;
+
+        private Reservation(List<PortLock> locks) {
+            this.locks = locks;
+        }
+
+        int port(int index) {
+            return locks.get(index).port;
+        }
+
+        List<Integer> ports() {
+            List<Integer> ports = new ArrayList<>();
+            locks.forEach(lock -> ports.add(lock.port));
+            return ports;
+        }
+
+        /**
+         * Releases ports, closing lock file channel releases its lock
+         */
+        @Override
+        public void close() {
+            for (PortLock lock : locks) {
+                try {
+                    lock.channel.close();
+                } catch (IOException e) {
+                    logger.warn("Cannot release lock of port " + lock.port, e);
+                }
+            }
+        }
+    }
+}
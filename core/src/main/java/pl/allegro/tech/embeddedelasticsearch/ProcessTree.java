@@ -0,0 +1,51 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Process together with processes it spawned. Java 8 cannot see descendants, so only the process itself is handled;
+ * on Java 9+ the variant from META-INF/versions/9 of the multi-release jar kills descendants too.
+ */
+final class ProcessTree {
+
+    private final Process process;
+
+    private ProcessTree(Process process) {
+        this.process = process;
+    }
+
+    /**
+     * Captures descendants of the process, must be called before the process is terminated as its descendants
+     * are reparented afterwards
+     */
+    static ProcessTree of(Process process) {
+        return new ProcessTree(process);
+    }
+
+    /**
+     * Asks processes to terminate (SIGTERM on Unix)
+     */
+    void destroy() {
+        process.destroy();
+    }
+
+    void destroyForcibly() {
+        process.destroyForcibly();
+    }
+
+    /**
+     * @return true if all processes exited within timeout
+     */
+    boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        return process.waitFor(timeout, unit);
+    }
+
+    /**
+     * CPU time consumed by processes of the tree as reported by operating system, not available on Java 8
+     */
+    Optional<Duration> totalCpuDuration() {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,87 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * HTTP request sent to Elasticsearch at given moment of recorded workload, see {@link RequestLog}
+ */
+public final class RecordedRequest {
+
+    static final int UNKNOWN = -1;
+    private static final byte[] NO_BODY = new byte[0];
+
+    private final long offsetMicros;
+    private final String method;
+    private final String path;
+    private final String contentType;
+    private final String contentEncoding;
+    private final byte[] body;
+    private final int statusCode;
+    private final long latencyMicros;
+
+    /**
+     * @param offsetMicros when the request was sent, in microseconds since start of the workload
+     * @param path         path with query string, e.g. {@code /cars/_search?size=10}
+     * @param contentType  content type of the body, null without body
+     * @param body         body, not copied; null or empty without body
+     */
+    public RecordedRequest(long offsetMicros, String method, String path, String contentType, byte[] body) {
+        this(offsetMicros, method, path, contentType, null, body, UNKNOWN, UNKNOWN);
+    }
+
+    RecordedRequest(long offsetMicros, String method, String path, String contentType, String contentEncoding, byte[] body,
+                    int statusCode, long latencyMicros) {
+        this.offsetMicros = offsetMicros;
+        this.method = method;
+        this.path = path;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.body = body != null ? body : NO_BODY;
+        this.statusCode = statusCode;
+        this.latencyMicros = latencyMicros;
+    }
+
+    public long getOffsetMicros() {
+        return offsetMicros;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return encoding of compressed body, e.g. gzip, null when body is not compressed
+     */
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return status code of recorded response, -1 when unknown
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return latency of recorded response in microseconds, -1 when unknown
+     */
+    public long getLatencyMicros() {
+        return latencyMicros;
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + path;
+    }
+}
@@ -0,0 +1,465 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * <p>HTTP proxy in front of the node recording requests passing through it to {@link RequestLog}, with status and
+ * latency of their responses, so traffic of an application under test can be analyzed or replayed with
+ * {@link EmbeddedElastic#replay(Path, ReplayOptions)}. Point the application at {@link #getPort()} instead of
+ * {@link EmbeddedElastic#getHttpPort()}.</p>
+ * <p>Every client connection is served by its own thread over blocking NIO channels. Requests are read into memory,
+ * as they are recorded; responses are relayed through a direct buffer, parsing only their head and framing.
+ * Requests with {@code Expect: 100-continue} are answered by the proxy, and chunked requests are forwarded with
+ * content length, otherwise traffic is forwarded as it is. Port of the node is looked up for every connection, so the
+ * proxy keeps working after the node is restarted on another port.</p>
+ * <p>Created by {@link EmbeddedElastic#startRecordingProxy(Path)} and closed at the latest when EmbeddedElastic stops.</p>
+ */
+public final class RecordingProxy implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecordingProxy.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(ISO_8859_1);
+
+    private final IntSupplier upstreamPort;
+    private final Path requestLog;
+    private final RequestLog.Writer log;
+    private final ServerSocketChannel server;
+    private final Executor connections = WorkerPools.newThreadPerTask("EmbeddedElsProxy");
+    private final Set<SocketChannel> openChannels = ConcurrentHashMap.newKeySet();
+    private final AtomicLong recordedRequests = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile boolean closed;
+
+    RecordingProxy(IntSupplier upstreamPort, Path requestLog) throws IOException {
+        this.upstreamPort = upstreamPort;
+        this.requestLog = requestLog;
+        this.log = new RequestLog.Writer(Files.newOutputStream(requestLog));
+        this.server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        WorkerPools.newDaemonThread("EmbeddedElsProxyAcceptor", this::acceptConnections).start();
+    }
+
+    /**
+     * Port on loopback interface accepting connections forwarded to Elasticsearch
+     */
+    public int getPort() {
+        return server.socket().getLocalPort();
+    }
+
+    public long getRecordedRequests() {
+        return recordedRequests.get();
+    }
+
+    /**
+     * Stops accepting connections, closes open ones and completes request log
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.close();
+        for (SocketChannel channel : openChannels) {
+            closeQuietly(channel);
+        }
+        log.close();
+        logger.info("Recorded " + recordedRequests.get() + " requests to " + requestLog);
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            try {
+                SocketChannel client = server.accept();
+                connections.execute(() -> proxy(client));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                logger.warn("Recording proxy cannot accept connection", e);
+            }
+        }
+    }
+
+    private void proxy(SocketChannel client) {
+        openChannels.add(client);
+        try (SocketChannel clientChannel = client; SocketChannel upstreamChannel = openUpstream()) {
+            openChannels.add(upstreamChannel);
+            // head and body of a message are written separately, they should not wait for acknowledgement of each other
+            clientChannel.socket().setTcpNoDelay(true);
+            upstreamChannel.socket().setTcpNoDelay(true);
+            try {
+                ByteBuffer requestBuffer = emptyBuffer(ByteBuffer.allocate(BUFFER_SIZE));
+                ByteBuffer responseBuffer = emptyBuffer(ByteBuffer.allocateDirect(BUFFER_SIZE));
+                while (exchange(clientChannel, upstreamChannel, requestBuffer, responseBuffer)) {
+                    // serve requests until either side closes the connection
+                }
+            } finally {
+                openChannels.remove(upstreamChannel);
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                logger.debug("Recording proxy connection closed", e);
+            }
+        } finally {
+            openChannels.remove(client);
+        }
+    }
+
+    private SocketChannel openUpstream() throws IOException {
+        return SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), upstreamPort.getAsInt()));
+    }
+
+    /**
+     * Forwards one request and its response
+     *
+     * @return false when connection should not be used anymore
+     */
+    private boolean exchange(SocketChannel client, SocketChannel upstream, ByteBuffer requestBuffer, ByteBuffer responseBuffer) throws IOException {
+        Head request = readHead(client, requestBuffer);
+        if (request == null) {
+            return false;
+        }
+        if ("100-continue".equalsIgnoreCase(request.header("Expect"))) {
+            writeFully(client, ByteBuffer.wrap(CONTINUE));
+        }
+        boolean chunked = request.isChunked();
+        byte[] body = chunked ? readChunkedBody(client, requestBuffer) : readBody(client, requestBuffer, request.contentLength());
+        long sentNanos = System.nanoTime();
+        writeFully(upstream, ByteBuffer.wrap(request.forwarded(chunked ? body.length : -1)), ByteBuffer.wrap(body));
+
+        Head response = readResponseHead(upstream, client, responseBuffer);
+        boolean keepAlive = relayResponseBody(request, response, upstream, client, responseBuffer);
+        long latencyNanos = System.nanoTime() - sentNanos;
+
+        log.append(new RecordedRequest(TimeUnit.NANOSECONDS.toMicros(sentNanos - startNanos), request.method(), request.target(),
+                request.header("Content-Type"), request.header("Content-Encoding"), body, response.status(),
+                TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        recordedRequests.incrementAndGet();
+        return keepAlive && !"close".equalsIgnoreCase(request.header("Connection")) && !"close".equalsIgnoreCase(response.header("Connection"));
+    }
+
+    /**
+     * Relays head of final response, and of informational ones preceding it
+     */
+    private static Head readResponseHead(SocketChannel upstream, SocketChannel client, ByteBuffer buffer) throws IOException {
+        while (true) {
+            Head response = readHead(upstream, buffer);
+            if (response == null) {
+                throw new EOFException("Elasticsearch closed connection without response");
+            }
+            writeFully(client, ByteBuffer.wrap(response.raw));
+            if (response.status() / 100 != 1) {
+                return response;
+            }
+        }
+    }
+
+    /**
+     * @return false if response body is delimited by closing the connection
+     */
+    private static boolean relayResponseBody(Head request, Head response, SocketChannel upstream, SocketChannel client,
+                                             ByteBuffer buffer) throws IOException {
+        int status = response.status();
+        if ("HEAD".equals(request.method()) || status == 204 || status == 304) {
+            return true;
+        }
+        if (response.isChunked()) {
+            relayChunked(upstream, client, buffer);
+            return true;
+        }
+        long contentLength = response.contentLength();
+        if (contentLength >= 0) {
+            relay(upstream, client, buffer, contentLength);
+            return true;
+        }
+        do {
+            writeFully(client, buffer);
+        } while (fill(upstream, buffer));
+        return false;
+    }
+
+    private static void relayChunked(SocketChannel upstream, SocketChannel client, ByteBuffer buffer) throws IOException {
+        while (true) {
+            byte[] sizeLine = readLine(upstream, buffer);
+            writeFully(client, ByteBuffer.wrap(sizeLine));
+            long size = chunkSize(sizeLine);
+            if (size == 0) {
+                byte[] trailer;
+                do {
+                    trailer = readLine(upstream, buffer);
+                    writeFully(client, ByteBuffer.wrap(trailer));
+                } while (trailer.length > 2);
+                return;
+            }
+            relay(upstream, client, buffer, size + 2);
+        }
+    }
+
+    /**
+     * Relays given number of bytes without copying them to heap
+     */
+    private static void relay(SocketChannel upstream, SocketChannel client, ByteBuffer buffer, long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            if (!buffer.hasRemaining() && !fill(upstream, buffer)) {
+                throw new EOFException("Connection closed in the middle of message body");
+            }
+            int relayed = (int) Math.min(remaining, buffer.remaining());
+            ByteBuffer part = buffer.duplicate();
+            part.limit(part.position() + relayed);
+            writeFully(client, part);
+            buffer.position(buffer.position() + relayed);
+            remaining -= relayed;
+        }
+    }
+
+    private static byte[] readBody(SocketChannel channel, ByteBuffer buffer, long contentLength) throws IOException {
+        if (contentLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Request body of " + contentLength + " bytes is too large to record");
+        }
+        byte[] body = new byte[(int) Math.max(0, contentLength)];
+        int buffered = Math.min(body.length, buffer.remaining());
+        buffer.get(body, 0, buffered);
+        ByteBuffer rest = ByteBuffer.wrap(body, buffered, body.length - buffered);
+        while (rest.hasRemaining()) {
+            if (channel.read(rest) < 0) {
+                throw new EOFException("Connection closed in the middle of request body");
+            }
+        }
+        return body;
+    }
+
+    private static byte[] readChunkedBody(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        long size;
+        while ((size = chunkSize(readLine(channel, buffer))) > 0) {
+            body.write(readBody(channel, buffer, size));
+            readLine(channel, buffer);
+        }
+        while (readLine(channel, buffer).length > 2) {
+            // trailers are not forwarded
+        }
+        return body.toByteArray();
+    }
+
+    private static long chunkSize(byte[] line) throws IOException {
+        String size = new String(line, ISO_8859_1).trim();
+        int extension = size.indexOf(';');
+        try {
+            return Long.parseLong(extension >= 0 ? size.substring(0, extension).trim() : size, 16);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid chunk size: " + size, e);
+        }
+    }
+
+    /**
+     * @return message head up to and including the empty line, null if connection was closed before it started
+     */
+    private static Head readHead(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        int end;
+        while ((end = indexAfter(buffer, true)) < 0) {
+            boolean started = buffer.hasRemaining();
+            if (!fill(channel, buffer)) {
+                if (started) {
+                    throw new EOFException("Connection closed in the middle of HTTP message head");
+                }
+                return null;
+            }
+        }
+        byte[] raw = new byte[end - buffer.position()];
+        buffer.get(raw);
+        return Head.parse(raw);
+    }
+
+    /**
+     * @return line with its line terminator
+     */
+    private static byte[] readLine(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        int end;
+        while ((end = indexAfter(buffer, false)) < 0) {
+            if (!fill(channel, buffer)) {
+                throw new EOFException("Connection closed in the middle of line");
+            }
+        }
+        byte[] line = new byte[end - buffer.position()];
+        buffer.get(line);
+        return line;
+    }
+
+    /**
+     * @param emptyLine whether to look for the end of head (CRLF CRLF) instead of the end of line
+     * @return position after the terminator among unread bytes, -1 if they do not contain it
+     */
+    private static int indexAfter(ByteBuffer buffer, boolean emptyLine) {
+        int terminatorLength = emptyLine ? 4 : 2;
+        for (int i = buffer.position(); i + terminatorLength <= buffer.limit(); i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && (!emptyLine || buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n')) {
+                return i + terminatorLength;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads more bytes after the unread ones
+     *
+     * @return false at the end of stream
+     */
+    private static boolean fill(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.compact();
+        try {
+            if (!buffer.hasRemaining()) {
+                throw new IOException("HTTP message head or line exceeds " + BUFFER_SIZE + " bytes");
+            }
+            return channel.read(buffer) >= 0;
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer... buffers) throws IOException {
+        long remaining = 0;
+        for (ByteBuffer buffer : buffers) {
+            remaining += buffer.remaining();
+        }
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+    }
+
+    private static ByteBuffer emptyBuffer(ByteBuffer buffer) {
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Cannot close proxied connection", e);
+        }
+    }
+
+    /**
+     * Start line and headers of HTTP request or response
+     */
+    static final class Head {
+
+        private final byte[] raw;
+        private final String startLine;
+        private final List<String> headerLines;
+
+        private Head(byte[] raw, String startLine, List<String> headerLines) {
+            this.raw = raw;
+            this.startLine = startLine;
+            this.headerLines = headerLines;
+        }
+
+        static Head parse(byte[] raw) throws IOException {
+            String[] lines = new String(raw, 0, raw.length - 4, ISO_8859_1).split("\r\n");
+            if (lines[0].split(" ").length < 2) {
+                throw new IOException("Invalid HTTP start line: " + lines[0]);
+            }
+            List<String> headerLines = new ArrayList<>(lines.length - 1);
+            for (int i = 1; i < lines.length; i++) {
+                headerLines.add(lines[i]);
+            }
+            return new Head(raw, lines[0], headerLines);
+        }
+
+        String method() {
+            return startLine.split(" ")[0];
+        }
+
+        String target() {
+            return startLine.split(" ")[1];
+        }
+
+        int status() throws IOException {
+            try {
+                return Integer.parseInt(startLine.split(" ")[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid HTTP status line: " + startLine, e);
+            }
+        }
+
+        /**
+         * @return value of the first header of given name, null if there is none
+         */
+        String header(String name) {
+            for (String line : headerLines) {
+                int colon = line.indexOf(':');
+                if (colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase(name)) {
+                    return line.substring(colon + 1).trim();
+                }
+            }
+            return null;
+        }
+
+        boolean isChunked() {
+            String transferEncoding = header("Transfer-Encoding");
+            return transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
+        }
+
+        /**
+         * @return -1 if content length is not given
+         */
+        long contentLength() throws IOException {
+            String contentLength = header("Content-Length");
+            try {
+                return contentLength != null ? Long.parseLong(contentLength) : -1;
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid content length: " + contentLength, e);
+            }
+        }
+
+        /**
+         * Head sent to Elasticsearch: without Expect header already answered by proxy, and with content length
+         * instead of chunked transfer encoding of body read as a whole
+         *
+         * @param contentLength length of body which replaces chunked encoding, -1 to keep the framing
+         */
+        byte[] forwarded(long contentLength) {
+            if (contentLength < 0 && header("Expect") == null) {
+                return raw;
+            }
+            StringBuilder head = new StringBuilder(raw.length).append(startLine).append("\r\n");
+            for (String line : headerLines) {
+                String name = line.substring(0, Math.max(0, line.indexOf(':'))).trim();
+                boolean replaced = name.equalsIgnoreCase("Expect")
+                        || contentLength >= 0 && (name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Content-Length"));
+                if (!replaced) {
+                    head.append(line).append("\r\n");
+                }
+            }
+            if (contentLength >= 0) {
+                head.append("Content-Length: ").append(contentLength).append("\r\n");
+            }
+            return head.append("\r\n").toString().getBytes(ISO_8859_1);
+        }
+    }
+}
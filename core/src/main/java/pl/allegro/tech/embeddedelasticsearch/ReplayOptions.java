@@ -0,0 +1,84 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.List;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * <p>Describes when replayed requests are sent: with recorded timing, at original speed or its multiple, or open-loop
+ * at fixed rate regardless of recorded timing. Requests are sent on schedule by given number of workers; when all
+ * of them are busy, requests are late and latency is measured from the moment they should have been sent, so slow
+ * responses are not hidden by waiting for them (coordinated omission).</p>
+ * <p>Instances are immutable, use withXXX methods to create modified copies.</p>
+ */
+public final class ReplayOptions {
+
+    private static final int DEFAULT_WORKERS = 16;
+    private static final double NANOS_IN_SECOND = 1_000_000_000;
+    private static final double NANOS_IN_MICRO = 1_000;
+
+    private final double speed;
+    private final double requestsPerSecond;
+    private final int workers;
+
+    private ReplayOptions(double speed, double requestsPerSecond, int workers) {
+        this.speed = speed;
+        this.requestsPerSecond = requestsPerSecond;
+        this.workers = workers;
+    }
+
+    /**
+     * Requests sent with recorded gaps between them, by 16 workers
+     */
+    public static ReplayOptions originalSpeed() {
+        return speedMultiple(1);
+    }
+
+    /**
+     * Requests sent with recorded gaps between them divided by given multiple, e.g. 2 replays workload twice as fast
+     */
+    public static ReplayOptions speedMultiple(double multiple) {
+        require(multiple > 0, "Speed multiple must be positive");
+        return new ReplayOptions(multiple, 0, DEFAULT_WORKERS);
+    }
+
+    /**
+     * Requests sent in recorded order at fixed rate, ignoring recorded timing
+     */
+    public static ReplayOptions fixedRate(double requestsPerSecond) {
+        require(requestsPerSecond > 0, "Rate of requests must be positive");
+        return new ReplayOptions(0, requestsPerSecond, DEFAULT_WORKERS);
+    }
+
+    /**
+     * Number of requests in flight at once, and of connections to Elasticsearch
+     */
+    public ReplayOptions withWorkers(int workers) {
+        require(workers > 0, "Number of workers must be positive");
+        return new ReplayOptions(speed, requestsPerSecond, workers);
+    }
+
+    int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return when every request should be sent, in nanoseconds since start of replay
+     */
+    long[] schedule(List<RecordedRequest> requests) {
+        long[] startNanos = new long[requests.size()];
+        long firstOffsetMicros = requests.isEmpty() ? 0 : requests.get(0).getOffsetMicros();
+        for (int i = 0; i < startNanos.length; i++) {
+            startNanos[i] = requestsPerSecond > 0
+                    ? (long) (i * NANOS_IN_SECOND / requestsPerSecond)
+                    : (long) (Math.max(0, requests.get(i).getOffsetMicros() - firstOffsetMicros) * NANOS_IN_MICRO / speed);
+        }
+        return startNanos;
+    }
+
+    @Override
+    public String toString() {
+        String pacing = requestsPerSecond > 0 ? requestsPerSecond + " requests/s" : speed + "x recorded speed";
+        return pacing + " with " + workers + " workers";
+    }
+}
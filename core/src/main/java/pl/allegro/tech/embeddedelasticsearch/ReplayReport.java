@@ -0,0 +1,110 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and latency of replayed workload. Latency is measured from the moment request should have been sent
+ * according to schedule, so it includes time waiting for a free worker when Elasticsearch does not keep up
+ * (corrected for coordinated omission); service time is measured from the moment request was actually sent.
+ */
+public final class ReplayReport {
+
+    private static final double MICROS_IN_MILLI = 1000;
+
+    private final long requests;
+    private final long errorResponses;
+    private final long failedRequests;
+    private final long durationNanos;
+    private final long latencyP50Micros;
+    private final long latencyP90Micros;
+    private final long latencyP99Micros;
+    private final long latencyP999Micros;
+    private final long latencyMaxMicros;
+    private final long serviceTimeP50Micros;
+    private final long serviceTimeP99Micros;
+    private final long serviceTimeMaxMicros;
+
+    ReplayReport(long requests, long errorResponses, long failedRequests, long durationNanos,
+                 LatencyHistogram latencyMicros, LatencyHistogram serviceTimeMicros) {
+        this.requests = requests;
+        this.errorResponses = errorResponses;
+        this.failedRequests = failedRequests;
+        this.durationNanos = durationNanos;
+        this.latencyP50Micros = latencyMicros.getValueAtPercentile(50);
+        this.latencyP90Micros = latencyMicros.getValueAtPercentile(90);
+        this.latencyP99Micros = latencyMicros.getValueAtPercentile(99);
+        this.latencyP999Micros = latencyMicros.getValueAtPercentile(99.9);
+        this.latencyMaxMicros = latencyMicros.getMaxValue();
+        this.serviceTimeP50Micros = serviceTimeMicros.getValueAtPercentile(50);
+        this.serviceTimeP99Micros = serviceTimeMicros.getValueAtPercentile(99);
+        this.serviceTimeMaxMicros = serviceTimeMicros.getMaxValue();
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    /**
+     * Requests answered with status 400 or higher
+     */
+    public long getErrorResponses() {
+        return errorResponses;
+    }
+
+    /**
+     * Requests not answered at all, e.g. because connection failed
+     */
+    public long getFailedRequests() {
+        return failedRequests;
+    }
+
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    public double getRequestsPerSecond() {
+        return durationNanos > 0 ? requests * (double) TimeUnit.SECONDS.toNanos(1) / durationNanos : 0;
+    }
+
+    public double getLatencyP50Millis() {
+        return latencyP50Micros / MICROS_IN_MILLI;
+    }
+
+    public double getLatencyP90Millis() {
+        return latencyP90Micros / MICROS_IN_MILLI;
+    }
+
+    public double getLatencyP99Millis() {
+        return latencyP99Micros / MICROS_IN_MILLI;
+    }
+
+    public double getLatencyP999Millis() {
+        return latencyP999Micros / MICROS_IN_MILLI;
+    }
+
+    public double getLatencyMaxMillis() {
+        return latencyMaxMicros / MICROS_IN_MILLI;
+    }
+
+    public double getServiceTimeP50Millis() {
+        return serviceTimeP50Micros / MICROS_IN_MILLI;
+    }
+
+    public double getServiceTimeP99Millis() {
+        return serviceTimeP99Micros / MICROS_IN_MILLI;
+    }
+
+    public double getServiceTimeMaxMillis() {
+        return serviceTimeMaxMicros / MICROS_IN_MILLI;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Replayed %d requests in %d ms (%.1f requests/s), %d error responses, %d failed requests%n" +
+                        "latency in ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n" +
+                        "service time in ms: p50 %.2f, p99 %.2f, max %.2f",
+                requests, getDurationMillis(), getRequestsPerSecond(), errorResponses, failedRequests,
+                getLatencyP50Millis(), getLatencyP90Millis(), getLatencyP99Millis(), getLatencyP999Millis(), getLatencyMaxMillis(),
+                getServiceTimeP50Millis(), getServiceTimeP99Millis(), getServiceTimeMaxMillis());
+    }
+}
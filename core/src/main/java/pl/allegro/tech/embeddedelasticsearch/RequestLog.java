@@ -0,0 +1,173 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * <p>Compact binary log of HTTP requests sent to Elasticsearch, written by {@link RecordingProxy} and replayed by
+ * {@link EmbeddedElastic#replay(List, ReplayOptions)}.</p>
+ * <p>File starts with "ESRL" and format version, followed by requests, each written as: offset since start of
+ * recording in microseconds (long), method, path with query string, content type and content encoding (length (int)
+ * followed by UTF-8 bytes, empty when missing), status code of response (int, -1 when unknown), latency in microseconds (long, -1 when
+ * unknown), length of body (int) and the body. Integers are big-endian.</p>
+ */
+public final class RequestLog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestLog.class);
+    private static final int MAGIC = 0x4553524C;
+    private static final int VERSION = 2;
+
+    private RequestLog() {
+    }
+
+    /**
+     * Reads all requests into memory, ordered by the moment they were sent; requests proxied over different
+     * connections are written when their responses complete, so they may be logged out of order. Request cut off
+     * at the end of file, e.g. when recording process was killed, is skipped.
+     */
+    public static List<RecordedRequest> read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            readHeader(in, path);
+            List<RecordedRequest> requests = new ArrayList<>();
+            while (true) {
+                RecordedRequest request;
+                try {
+                    request = readRequest(in);
+                } catch (EOFException e) {
+                    logger.warn("Request log " + path + " ends with incomplete request, it is skipped");
+                    break;
+                }
+                if (request == null) {
+                    break;
+                }
+                requests.add(request);
+            }
+            requests.sort(Comparator.comparingLong(RecordedRequest::getOffsetMicros));
+            return requests;
+        }
+    }
+
+    /**
+     * Writes requests, e.g. workload composed in code, so it can be replayed later
+     */
+    public static void write(Path path, Collection<RecordedRequest> requests) throws IOException {
+        try (Writer writer = new Writer(Files.newOutputStream(path))) {
+            for (RecordedRequest request : requests) {
+                writer.append(request);
+            }
+        }
+    }
+
+    private static void readHeader(DataInputStream in, Path path) throws IOException {
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(path + " is not a request log");
+            }
+            int version = in.readUnsignedByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported version " + version + " of request log " + path);
+            }
+        } catch (EOFException e) {
+            throw new IOException(path + " is not a request log", e);
+        }
+    }
+
+    /**
+     * @return request, null at the end of log
+     */
+    private static RecordedRequest readRequest(DataInputStream in) throws IOException {
+        // end of log is only expected before the first byte of a request
+        int firstByte = in.read();
+        if (firstByte < 0) {
+            return null;
+        }
+        long offsetMicros = firstByte;
+        for (int i = 1; i < Long.BYTES; i++) {
+            offsetMicros = offsetMicros << 8 | in.readUnsignedByte();
+        }
+        String method = readString(in);
+        String path = readString(in);
+        String contentType = emptyToNull(readString(in));
+        String contentEncoding = emptyToNull(readString(in));
+        int statusCode = in.readInt();
+        long latencyMicros = in.readLong();
+        byte[] body = new byte[in.readInt()];
+        in.readFully(body);
+        return new RecordedRequest(offsetMicros, method, path, contentType, contentEncoding, body, statusCode, latencyMicros);
+    }
+
+    /**
+     * Unlike {@link DataInputStream#readUTF()}, not limited to 64 KB, as paths with query strings may be longer
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Appends requests to log; safe to use from many threads
+     */
+    static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+
+        Writer(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        }
+
+        synchronized void append(RecordedRequest request) throws IOException {
+            out.writeLong(request.getOffsetMicros());
+            writeString(request.getMethod());
+            writeString(request.getPath());
+            writeString(orEmpty(request.getContentType()));
+            writeString(orEmpty(request.getContentEncoding()));
+            out.writeInt(request.getStatusCode());
+            out.writeLong(request.getLatencyMicros());
+            out.writeInt(request.getBody().length);
+            out.write(request.getBody());
+        }
+
+        synchronized void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            out.close();
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static String orEmpty(String value) {
+            return value != null ? value : "";
+        }
+    }
+}
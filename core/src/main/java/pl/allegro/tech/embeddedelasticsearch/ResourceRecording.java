@@ -0,0 +1,27 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Period of resource usage being recorded, e.g. for a single test. Created by {@link EmbeddedElastic#startResourceRecording(String)}.
+ */
+public final class ResourceRecording {
+
+    private final String name;
+    private final ResourceSampler sampler;
+    private final ResourceSample first;
+
+    ResourceRecording(String name, ResourceSampler sampler, ResourceSample first) {
+        this.name = name;
+        this.sampler = sampler;
+        this.first = first;
+    }
+
+    /**
+     * Takes final sample and summarizes it together with samples taken since the recording started
+     */
+    public ResourceSummary stop() {
+        ResourceSample last = sampler.sample();
+        ResourceSummary summary = ResourceSummary.of(name, sampler.getSamplesBetween(first, last));
+        sampler.log(summary);
+        return summary;
+    }
+}
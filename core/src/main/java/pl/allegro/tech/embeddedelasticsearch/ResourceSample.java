@@ -0,0 +1,122 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Resource usage of Elasticsearch node at a point in time. Counters (GC, rejections, operations, CPU) are cumulative
+ * since node start, so usage within a period is a difference between two samples.
+ */
+public final class ResourceSample {
+
+    static final long UNKNOWN = -1;
+
+    private final long timestampMillis;
+    private final long heapUsedBytes;
+    private final long heapMaxBytes;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final long threadPoolQueue;
+    private final long threadPoolRejected;
+    private final long indexingOperations;
+    private final long indexingTimeMillis;
+    private final long searchQueries;
+    private final long searchQueryTimeMillis;
+    private final long segments;
+    private final long nodeCpuMillis;
+    private final long processTreeCpuMillis;
+
+    ResourceSample(long timestampMillis, long heapUsedBytes, long heapMaxBytes, long gcCount, long gcTimeMillis,
+                   long threadPoolQueue, long threadPoolRejected, long indexingOperations, long indexingTimeMillis,
+                   long searchQueries, long searchQueryTimeMillis, long segments, long nodeCpuMillis, long processTreeCpuMillis) {
+        this.timestampMillis = timestampMillis;
+        this.heapUsedBytes = heapUsedBytes;
+        this.heapMaxBytes = heapMaxBytes;
+        this.gcCount = gcCount;
+        this.gcTimeMillis = gcTimeMillis;
+        this.threadPoolQueue = threadPoolQueue;
+        this.threadPoolRejected = threadPoolRejected;
+        this.indexingOperations = indexingOperations;
+        this.indexingTimeMillis = indexingTimeMillis;
+        this.searchQueries = searchQueries;
+        this.searchQueryTimeMillis = searchQueryTimeMillis;
+        this.segments = segments;
+        this.nodeCpuMillis = nodeCpuMillis;
+        this.processTreeCpuMillis = processTreeCpuMillis;
+    }
+
+    /**
+     * Wall clock time of the sample, in milliseconds since epoch
+     */
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public long getHeapUsedBytes() {
+        return heapUsedBytes;
+    }
+
+    public long getHeapMaxBytes() {
+        return heapMaxBytes;
+    }
+
+    /**
+     * Number of garbage collections of all collectors
+     */
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    /**
+     * Tasks waiting in queues of all thread pools
+     */
+    public long getThreadPoolQueue() {
+        return threadPoolQueue;
+    }
+
+    /**
+     * Tasks rejected by all thread pools
+     */
+    public long getThreadPoolRejected() {
+        return threadPoolRejected;
+    }
+
+    public long getIndexingOperations() {
+        return indexingOperations;
+    }
+
+    public long getIndexingTimeMillis() {
+        return indexingTimeMillis;
+    }
+
+    public long getSearchQueries() {
+        return searchQueries;
+    }
+
+    public long getSearchQueryTimeMillis() {
+        return searchQueryTimeMillis;
+    }
+
+    /**
+     * Number of Lucene segments of all shards on the node
+     */
+    public long getSegments() {
+        return segments;
+    }
+
+    /**
+     * CPU time of Elasticsearch JVM as reported by the node itself
+     */
+    public long getNodeCpuMillis() {
+        return nodeCpuMillis;
+    }
+
+    /**
+     * CPU time of Elasticsearch process and processes it spawned as reported by operating system,
+     * -1 when not available (Java 8)
+     */
+    public long getProcessTreeCpuMillis() {
+        return processTreeCpuMillis;
+    }
+}
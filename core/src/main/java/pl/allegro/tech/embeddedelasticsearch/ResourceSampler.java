@@ -0,0 +1,158 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Records time series of resource usage of Elasticsearch node: node stats polled over REST and CPU time of the process
+ * tree from operating system. Samples are taken periodically in background if interval is given, and on demand
+ * at start and end of every {@link ResourceRecording}.
+ */
+class ResourceSampler implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceSampler.class);
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final int MAX_SAMPLES = 10_000;
+
+    private final Supplier<ElasticRestClient> elasticRestClient;
+    private final Supplier<Optional<ProcessTree>> processTree;
+    private final Deque<ResourceSample> samples = new ArrayDeque<>();
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Suppliers are asked for every sample, as client and process change when node is restarted
+     */
+    ResourceSampler(Supplier<ElasticRestClient> elasticRestClient, Supplier<Optional<ProcessTree>> processTree) {
+        this.elasticRestClient = elasticRestClient;
+        this.processTree = processTree;
+    }
+
+    void startSampling(long intervalInMs) {
+        scheduler = WorkerPools.newScheduledPool("EmbeddedElsResourceSampler");
+        scheduler.scheduleAtFixedRate(this::sampleQuietly, 0, intervalInMs, TimeUnit.MILLISECONDS);
+    }
+
+    ResourceSample sample() {
+        long processTreeCpuMillis = processTree.get()
+                .flatMap(ProcessTree::totalCpuDuration)
+                .map(Duration::toMillis)
+                .orElse(ResourceSample.UNKNOWN);
+        ResourceSample sample = parse(elasticRestClient.get().localNodeStats(), System.currentTimeMillis(), processTreeCpuMillis);
+        synchronized (samples) {
+            if (samples.size() == MAX_SAMPLES) {
+                samples.removeFirst();
+            }
+            samples.addLast(sample);
+        }
+        return sample;
+    }
+
+    private void sampleQuietly() {
+        try {
+            sample();
+        } catch (RuntimeException e) {
+            // node may be restarting, next sample will tell
+            logger.debug("Cannot sample resource usage of Elasticsearch", e);
+        }
+    }
+
+    List<ResourceSample> getSamples() {
+        synchronized (samples) {
+            return new ArrayList<>(samples);
+        }
+    }
+
+    /**
+     * Samples taken from first to last, inclusive; if first one was already evicted from history, it is still included
+     */
+    List<ResourceSample> getSamplesBetween(ResourceSample first, ResourceSample last) {
+        List<ResourceSample> between = new ArrayList<>();
+        between.add(first);
+        synchronized (samples) {
+            boolean afterFirst = !samples.contains(first);
+            Iterator<ResourceSample> iterator = samples.iterator();
+            while (iterator.hasNext()) {
+                ResourceSample sample = iterator.next();
+                if (sample == last) {
+                    break;
+                }
+                if (afterFirst) {
+                    between.add(sample);
+                }
+                afterFirst |= sample == first;
+            }
+        }
+        between.add(last);
+        return between;
+    }
+
+    void log(ResourceSummary summary) {
+        logger.info(summary.toString());
+    }
+
+    static ResourceSample parse(byte[] nodeStats, long timestampMillis, long processTreeCpuMillis) {
+        JsonNode node;
+        try {
+            Iterator<JsonNode> nodes = OBJECT_MAPPER.readTree(nodeStats).path("nodes").elements();
+            if (!nodes.hasNext()) {
+                throw new IllegalStateException("Node stats do not contain local node: " + new String(nodeStats, UTF_8));
+            }
+            node = nodes.next();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        long gcCount = 0;
+        long gcTimeMillis = 0;
+        for (JsonNode collector : node.path("jvm").path("gc").path("collectors")) {
+            gcCount += collector.path("collection_count").asLong();
+            gcTimeMillis += collector.path("collection_time_in_millis").asLong();
+        }
+        long threadPoolQueue = 0;
+        long threadPoolRejected = 0;
+        for (JsonNode threadPool : node.path("thread_pool")) {
+            threadPoolQueue += threadPool.path("queue").asLong();
+            threadPoolRejected += threadPool.path("rejected").asLong();
+        }
+        JsonNode indices = node.path("indices");
+        return new ResourceSample(
+                timestampMillis,
+                node.path("jvm").path("mem").path("heap_used_in_bytes").asLong(),
+                node.path("jvm").path("mem").path("heap_max_in_bytes").asLong(),
+                gcCount,
+                gcTimeMillis,
+                threadPoolQueue,
+                threadPoolRejected,
+                indices.path("indexing").path("index_total").asLong(),
+                indices.path("indexing").path("index_time_in_millis").asLong(),
+                indices.path("search").path("query_total").asLong(),
+                indices.path("search").path("query_time_in_millis").asLong(),
+                indices.path("segments").path("count").asLong(),
+                node.path("process").path("cpu").path("total_in_millis").asLong(),
+                processTreeCpuMillis);
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Resource usage of Elasticsearch node during a period, e.g. a single test: peaks and averages of gauges
+ * and growth of counters between first and last sample.
+ */
+public final class ResourceSummary {
+
+    private static final double BYTES_IN_MEGABYTE = 1024 * 1024;
+
+    private final String name;
+    private final int samples;
+    private final long durationMillis;
+    private final long maxHeapUsedBytes;
+    private final long averageHeapUsedBytes;
+    private final long heapMaxBytes;
+    private final long gcCount;
+    private final long gcTimeMillis;
+    private final long maxThreadPoolQueue;
+    private final long threadPoolRejections;
+    private final long indexingOperations;
+    private final long indexingTimeMillis;
+    private final long searchQueries;
+    private final long searchQueryTimeMillis;
+    private final long maxSegments;
+    private final long cpuMillis;
+
+    private ResourceSummary(String name, List<ResourceSample> samples) {
+        ResourceSample first = samples.get(0);
+        ResourceSample last = samples.get(samples.size() - 1);
+        this.name = name;
+        this.samples = samples.size();
+        this.durationMillis = last.getTimestampMillis() - first.getTimestampMillis();
+        this.maxHeapUsedBytes = max(samples, ResourceSample::getHeapUsedBytes);
+        this.averageHeapUsedBytes = (long) samples.stream().mapToLong(ResourceSample::getHeapUsedBytes).average().orElse(0);
+        this.heapMaxBytes = last.getHeapMaxBytes();
+        this.gcCount = last.getGcCount() - first.getGcCount();
+        this.gcTimeMillis = last.getGcTimeMillis() - first.getGcTimeMillis();
+        this.maxThreadPoolQueue = max(samples, ResourceSample::getThreadPoolQueue);
+        this.threadPoolRejections = last.getThreadPoolRejected() - first.getThreadPoolRejected();
+        this.indexingOperations = last.getIndexingOperations() - first.getIndexingOperations();
+        this.indexingTimeMillis = last.getIndexingTimeMillis() - first.getIndexingTimeMillis();
+        this.searchQueries = last.getSearchQueries() - first.getSearchQueries();
+        this.searchQueryTimeMillis = last.getSearchQueryTimeMillis() - first.getSearchQueryTimeMillis();
+        this.maxSegments = max(samples, ResourceSample::getSegments);
+        this.cpuMillis = first.getProcessTreeCpuMillis() != ResourceSample.UNKNOWN && last.getProcessTreeCpuMillis() != ResourceSample.UNKNOWN
+                ? last.getProcessTreeCpuMillis() - first.getProcessTreeCpuMillis()
+                : last.getNodeCpuMillis() - first.getNodeCpuMillis();
+    }
+
+    /**
+     * @param samples samples ordered by time, counters of the first one are the baseline
+     */
+    static ResourceSummary of(String name, List<ResourceSample> samples) {
+        require(!samples.isEmpty(), "At least one resource sample is required to summarize " + name);
+        return new ResourceSummary(name, samples);
+    }
+
+    private static long max(List<ResourceSample> samples, ToLongFunction<ResourceSample> gauge) {
+        return samples.stream().mapToLong(gauge).max().orElse(0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public long getMaxHeapUsedBytes() {
+        return maxHeapUsedBytes;
+    }
+
+    public long getAverageHeapUsedBytes() {
+        return averageHeapUsedBytes;
+    }
+
+    public long getHeapMaxBytes() {
+        return heapMaxBytes;
+    }
+
+    public long getGcCount() {
+        return gcCount;
+    }
+
+    public long getGcTimeMillis() {
+        return gcTimeMillis;
+    }
+
+    public long getMaxThreadPoolQueue() {
+        return maxThreadPoolQueue;
+    }
+
+    public long getThreadPoolRejections() {
+        return threadPoolRejections;
+    }
+
+    public long getIndexingOperations() {
+        return indexingOperations;
+    }
+
+    /**
+     * Average time Elasticsearch spent indexing a document, 0 if nothing was indexed
+     */
+    public double getAverageIndexingLatencyMillis() {
+        return indexingOperations == 0 ? 0 : (double) indexingTimeMillis / indexingOperations;
+    }
+
+    public long getSearchQueries() {
+        return searchQueries;
+    }
+
+    /**
+     * Average time of query phase of a search, 0 if nothing was searched
+     */
+    public double getAverageSearchLatencyMillis() {
+        return searchQueries == 0 ? 0 : (double) searchQueryTimeMillis / searchQueries;
+    }
+
+    public long getMaxSegments() {
+        return maxSegments;
+    }
+
+    /**
+     * CPU time used by Elasticsearch, measured by operating system when possible
+     */
+    public long getCpuMillis() {
+        return cpuMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Resources used by %s in %d ms: heap peak %.1f MB (avg %.1f MB of %.1f MB), %d GCs taking %d ms, "
+                        + "CPU %d ms, thread pool queue max %d, %d rejections, %d indexing ops (avg %.2f ms), "
+                        + "%d queries (avg %.2f ms), segments max %d",
+                name, durationMillis, maxHeapUsedBytes / BYTES_IN_MEGABYTE, averageHeapUsedBytes / BYTES_IN_MEGABYTE,
+                heapMaxBytes / BYTES_IN_MEGABYTE, gcCount, gcTimeMillis, cpuMillis, maxThreadPoolQueue, threadPoolRejections,
+                indexingOperations, getAverageIndexingLatencyMillis(), searchQueries, getAverageSearchLatencyMillis(), maxSegments);
+    }
+}
@@ -0,0 +1,74 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completed REST call to Elasticsearch: what was called, how long it took and how much data was transferred.
+ */
+public final class RestCall {
+
+    private final RestOperation operation;
+    private final String method;
+    private final String requestUri;
+    private final int statusCode;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final long durationNanos;
+
+    RestCall(RestOperation operation, String method, String requestUri, int statusCode, long requestBytes, long responseBytes, long durationNanos) {
+        this.operation = operation;
+        this.method = method;
+        this.requestUri = requestUri;
+        this.statusCode = statusCode;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.durationNanos = durationNanos;
+    }
+
+    public RestOperation getOperation() {
+        return operation;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Path with query string
+     */
+    public String getRequestUri() {
+        return requestUri;
+    }
+
+    /**
+     * HTTP status code, -1 if no response was received
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Size of request body, 0 if unknown (e.g. streamed body)
+     */
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getDurationMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%s) -> %d in %d ms, %d bytes sent, %d bytes received",
+                method, requestUri, operation, statusCode, getDurationMillis(), requestBytes, responseBytes);
+    }
+}
@@ -0,0 +1,11 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Notified about every REST call EmbeddedElastic makes to Elasticsearch, once it completes. Called on the thread
+ * which made the call; exception thrown by listener fails the operation which made the call.
+ */
+@FunctionalInterface
+public interface RestCallListener {
+
+    void onCall(RestCall call);
+}
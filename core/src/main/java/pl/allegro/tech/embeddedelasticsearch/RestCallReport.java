@@ -0,0 +1,119 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Latency percentiles and transferred bytes of REST calls made by EmbeddedElastic, per operation type.
+ * Logged when EmbeddedElastic is stopped.
+ */
+public final class RestCallReport {
+
+    private final List<OperationSummary> operations;
+
+    private RestCallReport(List<OperationSummary> operations) {
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Summaries of operation types which were called at least once
+     */
+    public List<OperationSummary> getOperations() {
+        return operations;
+    }
+
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder("REST calls to Elasticsearch (latency in ms):");
+        report.append(String.format("%n%-14s %8s %6s %9s %9s %9s %9s %12s %12s",
+                "operation", "calls", "slow", "p50", "p90", "p99", "max", "sent B", "received B"));
+        for (OperationSummary operation : operations) {
+            report.append(String.format("%n%-14s %8d %6d %9.2f %9.2f %9.2f %9.2f %12d %12d",
+                    operation.operation, operation.calls, operation.slowCalls, operation.getP50Millis(), operation.getP90Millis(),
+                    operation.getP99Millis(), operation.getMaxMillis(), operation.requestBytes, operation.responseBytes));
+        }
+        return report.toString();
+    }
+
+    static final class Builder {
+        private final List<OperationSummary> operations = new ArrayList<>();
+
+        Builder add(OperationSummary operation) {
+            operations.add(operation);
+            return this;
+        }
+
+        RestCallReport build() {
+            return new RestCallReport(operations);
+        }
+    }
+
+    public static final class OperationSummary {
+
+        private static final double MICROS_IN_MILLI = 1000;
+
+        private final RestOperation operation;
+        private final long calls;
+        private final long slowCalls;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final long requestBytes;
+        private final long responseBytes;
+
+        OperationSummary(RestOperation operation, long calls, long slowCalls, long p50Micros, long p90Micros, long p99Micros,
+                         long maxMicros, long requestBytes, long responseBytes) {
+            this.operation = operation;
+            this.calls = calls;
+            this.slowCalls = slowCalls;
+            this.p50Micros = p50Micros;
+            this.p90Micros = p90Micros;
+            this.p99Micros = p99Micros;
+            this.maxMicros = maxMicros;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+        }
+
+        public RestOperation getOperation() {
+            return operation;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getSlowCalls() {
+            return slowCalls;
+        }
+
+        public double getP50Millis() {
+            return p50Micros / MICROS_IN_MILLI;
+        }
+
+        public double getP90Millis() {
+            return p90Micros / MICROS_IN_MILLI;
+        }
+
+        public double getP99Millis() {
+            return p99Micros / MICROS_IN_MILLI;
+        }
+
+        public double getMaxMillis() {
+            return maxMicros / MICROS_IN_MILLI;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+    }
+}
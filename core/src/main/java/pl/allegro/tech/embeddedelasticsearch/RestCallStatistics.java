@@ -0,0 +1,69 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks latency histogram and transferred bytes of REST calls per operation type and reports calls slower
+ * than threshold, either by logging them or by failing the operation which made them.
+ */
+class RestCallStatistics implements RestCallListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RestCallStatistics.class);
+
+    private final long slowCallThresholdNanos;
+    private final boolean failOnSlowCall;
+    private final Map<RestOperation, OperationStatistics> operations = new EnumMap<>(RestOperation.class);
+
+    /**
+     * @param slowCallThresholdNanos calls taking longer are slow, 0 disables detection of slow calls
+     */
+    RestCallStatistics(long slowCallThresholdNanos, boolean failOnSlowCall) {
+        this.slowCallThresholdNanos = slowCallThresholdNanos;
+        this.failOnSlowCall = failOnSlowCall;
+        for (RestOperation operation : RestOperation.values()) {
+            operations.put(operation, new OperationStatistics());
+        }
+    }
+
+    @Override
+    public void onCall(RestCall call) {
+        OperationStatistics statistics = operations.get(call.getOperation());
+        statistics.latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(call.getDurationNanos()));
+        statistics.requestBytes.addAndGet(call.getRequestBytes());
+        statistics.responseBytes.addAndGet(call.getResponseBytes());
+        if (slowCallThresholdNanos > 0 && call.getDurationNanos() > slowCallThresholdNanos) {
+            statistics.slowCalls.incrementAndGet();
+            String message = "Slow call to Elasticsearch, over " + TimeUnit.NANOSECONDS.toMillis(slowCallThresholdNanos) + " ms: " + call;
+            if (failOnSlowCall) {
+                throw new IllegalStateException(message);
+            }
+            logger.warn(message);
+        }
+    }
+
+    RestCallReport report() {
+        RestCallReport.Builder report = new RestCallReport.Builder();
+        operations.forEach((operation, statistics) -> {
+            LatencyHistogram latency = statistics.latencyMicros;
+            if (latency.getTotalCount() > 0) {
+                report.add(new RestCallReport.OperationSummary(operation, latency.getTotalCount(), statistics.slowCalls.get(),
+                        latency.getValueAtPercentile(50), latency.getValueAtPercentile(90), latency.getValueAtPercentile(99),
+                        latency.getMaxValue(), statistics.requestBytes.get(), statistics.responseBytes.get()));
+            }
+        });
+        return report.build();
+    }
+
+    private static final class OperationStatistics {
+        private final LatencyHistogram latencyMicros = new LatencyHistogram();
+        private final AtomicLong slowCalls = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+    }
+}
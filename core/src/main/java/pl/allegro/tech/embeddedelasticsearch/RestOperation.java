@@ -0,0 +1,70 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Type of REST call made by EmbeddedElastic, derived from its method and path. Latency is tracked separately for each type.
+ */
+public enum RestOperation {
+    BULK,
+    REFRESH,
+    CREATE_INDEX,
+    DELETE_INDEX,
+    HEALTH_WAIT,
+    SEARCH,
+    POINT_IN_TIME,
+    COUNT,
+    GET,
+    DOCUMENT_WRITE,
+    TEMPLATE,
+    SNAPSHOT,
+    OTHER;
+
+    static RestOperation of(String method, String requestUri) {
+        int queryStart = requestUri.indexOf('?');
+        String path = queryStart < 0 ? requestUri : requestUri.substring(0, queryStart);
+        if (path.endsWith("/_bulk")) {
+            return BULK;
+        }
+        if (path.endsWith("/_refresh")) {
+            return REFRESH;
+        }
+        if (path.startsWith("/_cluster/health")) {
+            return HEALTH_WAIT;
+        }
+        if (path.endsWith("/_search")) {
+            return SEARCH;
+        }
+        if (path.endsWith("/_pit")) {
+            return POINT_IN_TIME;
+        }
+        if (path.endsWith("/_count")) {
+            return COUNT;
+        }
+        if (path.endsWith("/_mget")) {
+            return GET;
+        }
+        if (isDocumentPath(path)) {
+            return "GET".equals(method) || "HEAD".equals(method) ? GET : DOCUMENT_WRITE;
+        }
+        if (path.startsWith("/_template") || path.startsWith("/_component_template") || path.startsWith("/_index_template")) {
+            return TEMPLATE;
+        }
+        if (path.startsWith("/_snapshot")) {
+            return SNAPSHOT;
+        }
+        if (isIndexPath(path) && "PUT".equals(method)) {
+            return CREATE_INDEX;
+        }
+        if (isIndexPath(path) && "DELETE".equals(method)) {
+            return DELETE_INDEX;
+        }
+        return OTHER;
+    }
+
+    private static boolean isDocumentPath(String path) {
+        return path.contains("/_doc/") || path.endsWith("/_doc") || path.contains("/_create/") || path.contains("/_update/");
+    }
+
+    private static boolean isIndexPath(String path) {
+        return path.length() > 1 && path.indexOf('/', 1) < 0 && path.charAt(1) != '_';
+    }
+}
@@ -0,0 +1,202 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes search, get and count responses with Jackson streaming parser. No JSON trees are built,
+ * documents only point to their _source within the response bytes. Sources of binary (SMILE) responses
+ * cannot be sliced, they are transcoded to JSON one by one.
+ */
+final class SearchResponseParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final ObjectMapper objectMapper;
+    private final ContentFormat format;
+
+    SearchResponseParser(ObjectMapper objectMapper) {
+        this(objectMapper, ContentFormat.JSON);
+    }
+
+    /**
+     * @param objectMapper JSON mapper decoding sources of documents
+     * @param format format of parsed responses
+     */
+    SearchResponseParser(ObjectMapper objectMapper, ContentFormat format) {
+        this.objectMapper = objectMapper;
+        this.format = format;
+    }
+
+    SearchResult parseSearch(byte[] response) throws IOException {
+        long totalHits = 0;
+        List<Document> documents = Collections.emptyList();
+        String pointInTimeId = null;
+        try (JsonParser parser = format.factory().createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken fieldValue = parser.nextToken();
+                if (field.equals("pit_id") && fieldValue == JsonToken.VALUE_STRING) {
+                    pointInTimeId = parser.getText();
+                    continue;
+                }
+                if (!field.equals("hits")) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String hitsField = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if (hitsField.equals("total")) {
+                        totalHits = parseTotal(parser, value);
+                    } else if (hitsField.equals("hits")) {
+                        documents = parseDocuments(parser, response);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        return new SearchResult(totalHits, documents, pointInTimeId);
+    }
+
+    /**
+     * @return found documents of multi get response, in order of requested ids
+     */
+    List<Document> parseMultiGet(byte[] response) throws IOException {
+        List<Document> documents = Collections.emptyList();
+        try (JsonParser parser = format.factory().createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("docs")) {
+                    documents = parseDocuments(parser, response);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return documents;
+    }
+
+    long parseCount(byte[] response) throws IOException {
+        try (JsonParser parser = format.factory().createParser(response)) {
+            expect(parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("count")) {
+                    return parser.getLongValue();
+                }
+                parser.skipChildren();
+            }
+        }
+        throw new IOException("Count response does not contain count field");
+    }
+
+    private static long parseTotal(JsonParser parser, JsonToken value) throws IOException {
+        if (value.isNumeric()) {
+            return parser.getLongValue();
+        }
+        long total = 0;
+        if (value == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if (field.equals("value")) {
+                    total = parser.getLongValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return total;
+    }
+
+    private List<Document> parseDocuments(JsonParser parser, byte[] response) throws IOException {
+        expect(parser.currentToken(), JsonToken.START_ARRAY);
+        List<Document> documents = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            Document document = parseDocument(parser, response);
+            if (document != null) {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * @return parsed document or null if document was not found
+     */
+    private Document parseDocument(JsonParser parser, byte[] response) throws IOException {
+        String indexName = null;
+        String id = null;
+        boolean found = true;
+        int sourceOffset = 0;
+        int sourceLength = 0;
+        int sortOffset = 0;
+        int sortLength = 0;
+        ByteArrayOutputStream transcoded = format.isBinary() ? new ByteArrayOutputStream() : null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "_index":
+                    indexName = parser.getText();
+                    break;
+                case "_id":
+                    id = parser.getText();
+                    break;
+                case "found":
+                    found = value == JsonToken.VALUE_TRUE;
+                    break;
+                case "_source":
+                    sourceOffset = transcoded == null ? (int) parser.getTokenLocation().getByteOffset() : transcoded.size();
+                    sourceLength = skipOrTranscode(parser, transcoded, sourceOffset);
+                    break;
+                case "sort":
+                    sortOffset = transcoded == null ? (int) parser.getTokenLocation().getByteOffset() : transcoded.size();
+                    sortLength = skipOrTranscode(parser, transcoded, sortOffset);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        if (!found) {
+            return null;
+        }
+        byte[] buffer = transcoded == null ? response : transcoded.toByteArray();
+        return new Document(indexName, id, buffer, sourceOffset, sourceLength, sortOffset, sortLength, objectMapper);
+    }
+
+    /**
+     * Moves past current value and returns its length; in binary response the value is copied as JSON to given buffer
+     */
+    private static int skipOrTranscode(JsonParser parser, ByteArrayOutputStream transcoded, int offset) throws IOException {
+        if (transcoded == null) {
+            parser.skipChildren();
+            return (int) parser.getCurrentLocation().getByteOffset() - offset;
+        }
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(transcoded)) {
+            generator.copyCurrentStructure(parser);
+        }
+        return transcoded.size() - offset;
+    }
+
+    private static void expect(JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new IOException("Unexpected response structure, expected " + expected + " but got " + actual);
+        }
+    }
+}
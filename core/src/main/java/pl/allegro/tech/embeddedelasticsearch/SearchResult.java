@@ -0,0 +1,61 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Hits of a search request, sources of documents are decoded lazily
+ */
+public final class SearchResult {
+
+    private final long totalHits;
+    private final List<Document> documents;
+    private final String pointInTimeId;
+
+    SearchResult(long totalHits, List<Document> documents) {
+        this(totalHits, documents, null);
+    }
+
+    SearchResult(long totalHits, List<Document> documents, String pointInTimeId) {
+        this.totalHits = totalHits;
+        this.documents = documents;
+        this.pointInTimeId = pointInTimeId;
+    }
+
+    /**
+     * @return number of matching documents, may be lower bound if Elasticsearch did not track total hits accurately
+     */
+    public long getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * @return returned page of matching documents
+     */
+    public List<Document> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return id of point in time returned by search within point in time, which may differ from the requested one;
+     * null for other searches
+     */
+    String getPointInTimeId() {
+        return pointInTimeId;
+    }
+
+    /**
+     * @return sources of returned documents decoded into given type
+     */
+    public <T> List<T> getSourcesAs(Class<T> type) {
+        return documents.stream()
+                .map(document -> document.getSourceAs(type))
+                .collect(toList());
+    }
+
+    @Override
+    public String toString() {
+        return "SearchResult{totalHits=" + totalHits + ", documents=" + documents + "}";
+    }
+}
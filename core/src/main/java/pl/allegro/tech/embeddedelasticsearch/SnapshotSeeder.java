@@ -0,0 +1,12 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.IOException;
+
+/**
+ * Seeds indices with documents before snapshot of them is taken, see {@link EmbeddedElastic#restoreOrCreateSnapshot}
+ */
+@FunctionalInterface
+public interface SnapshotSeeder {
+
+    void seed(EmbeddedElastic embeddedElastic) throws IOException, InterruptedException;
+}
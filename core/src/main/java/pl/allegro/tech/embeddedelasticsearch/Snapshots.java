@@ -0,0 +1,67 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.regex.Pattern;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Keeps seeded state of indices in file system snapshot repository, which outlives Elasticsearch installation,
+ * so seeding happens once per content of seed data instead of once per test run.
+ */
+class Snapshots {
+
+    private static final Logger logger = LoggerFactory.getLogger(Snapshots.class);
+
+    static final String REPOSITORY_NAME = "embedded_elasticsearch";
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("[a-z0-9][a-z0-9_.-]*");
+
+    private final ElasticRestClient elasticRestClient;
+    private final File location;
+    private boolean repositoryRegistered = false;
+
+    Snapshots(ElasticRestClient elasticRestClient, File location) {
+        this.elasticRestClient = elasticRestClient;
+        this.location = location;
+    }
+
+    /**
+     * @return true if indices were restored from existing snapshot, false if they were seeded and snapshot was taken
+     */
+    synchronized boolean restoreOrCreate(String snapshotName, Collection<String> indicesNames, Runnable recreateIndices, SnapshotSeeder seeder,
+                                         EmbeddedElastic embeddedElastic) throws IOException, InterruptedException {
+        require(SNAPSHOT_NAME.matcher(snapshotName).matches(), "Snapshot name must consist of lowercase letters, digits, '_', '-' and '.': " + snapshotName);
+        require(!indicesNames.isEmpty(), "Snapshot must contain at least one index");
+        registerRepository();
+        if (elasticRestClient.snapshotExists(REPOSITORY_NAME, snapshotName)) {
+            long start = System.nanoTime();
+            elasticRestClient.restoreSnapshot(REPOSITORY_NAME, snapshotName, indicesNames);
+            logger.info("Restored indices " + indicesNames + " from snapshot " + snapshotName + " in " + millisSince(start) + " ms");
+            return true;
+        }
+        long start = System.nanoTime();
+        recreateIndices.run();
+        seeder.seed(embeddedElastic);
+        elasticRestClient.refresh();
+        elasticRestClient.createSnapshot(REPOSITORY_NAME, snapshotName, indicesNames);
+        logger.info("Seeded indices " + indicesNames + " and created snapshot " + snapshotName + " in " + millisSince(start) + " ms");
+        return false;
+    }
+
+    private void registerRepository() {
+        if (!repositoryRegistered) {
+            require(location.isDirectory() || location.mkdirs(), "Cannot create snapshot repository directory " + location);
+            elasticRestClient.registerSnapshotRepository(REPOSITORY_NAME, location.getAbsolutePath());
+            repositoryRegistered = true;
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,52 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Summary of Elasticsearch startup: how long every phase took and which chain of phases determined total startup time.
+ */
+public final class StartupReport {
+
+    private final Map<String, Long> phaseNanos;
+    private final List<String> criticalPath;
+    private final long elapsedNanos;
+
+    StartupReport(Map<String, Long> phaseNanos, List<String> criticalPath, long elapsedNanos) {
+        this.phaseNanos = Collections.unmodifiableMap(new LinkedHashMap<>(phaseNanos));
+        this.criticalPath = Collections.unmodifiableList(criticalPath);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Duration of every startup phase in milliseconds, phases which run concurrently overlap
+     */
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> phaseMillis = new LinkedHashMap<>();
+        phaseNanos.forEach((phase, nanos) -> phaseMillis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return phaseMillis;
+    }
+
+    /**
+     * Phases which had to run one after another and took the whole startup time; shortening other phases does not help
+     */
+    public List<String> getCriticalPath() {
+        return criticalPath;
+    }
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    @Override
+    public String toString() {
+        Map<String, Long> phaseMillis = getPhaseMillis();
+        return String.format("Started Elasticsearch in %d ms, critical path: %s", getElapsedMillis(), criticalPath.stream()
+                .map(phase -> phase + " (" + phaseMillis.get(phase) + " ms)")
+                .collect(Collectors.joining(" -> ")));
+    }
+}
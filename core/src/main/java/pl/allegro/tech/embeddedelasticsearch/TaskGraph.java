@@ -0,0 +1,174 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Runs tasks with dependencies between them: every task starts as soon as all tasks it depends on completed,
+ * so independent tasks run concurrently. Dependencies on keys which are not part of the graph are treated as satisfied.
+ */
+final class TaskGraph<K> {
+
+    private final Map<K, Node<K>> nodes = new LinkedHashMap<>();
+    private final Map<K, Long> startNanos = new ConcurrentHashMap<>();
+    private final Map<K, Long> finishNanos = new ConcurrentHashMap<>();
+
+    TaskGraph<K> add(K key, Collection<K> dependencies, Runnable task) {
+        require(!nodes.containsKey(key), "Task " + key + " is already defined");
+        nodes.put(key, new Node<>(dependencies, task));
+        return this;
+    }
+
+    boolean isEmpty() {
+        return nodes.isEmpty();
+    }
+
+    Set<K> keys() {
+        return Collections.unmodifiableSet(nodes.keySet());
+    }
+
+    /**
+     * Runs all tasks and waits until they complete. If any task fails, tasks depending on it are not started
+     * and the first failure is rethrown once all started tasks completed.
+     */
+    void run(Executor executor) throws InterruptedException {
+        Map<K, CompletableFuture<Void>> futures = new HashMap<>();
+        for (K key : topologicalOrder()) {
+            Node<K> node = nodes.get(key);
+            CompletableFuture<?>[] dependencies = node.dependencies.stream()
+                    .filter(nodes::containsKey)
+                    .map(futures::get)
+                    .toArray(CompletableFuture[]::new);
+            futures.put(key, CompletableFuture.allOf(dependencies).thenRunAsync(() -> runTimed(key, node.task), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private void runTimed(K key, Runnable task) {
+        startNanos.put(key, System.nanoTime());
+        try {
+            task.run();
+        } finally {
+            finishNanos.put(key, System.nanoTime());
+        }
+    }
+
+    /**
+     * Durations of tasks completed by {@link #run(Executor)}, in topological order
+     */
+    Map<K, Long> durationsInNanos() {
+        Map<K, Long> durations = new LinkedHashMap<>();
+        for (K key : topologicalOrder()) {
+            if (finishNanos.containsKey(key)) {
+                durations.put(key, finishNanos.get(key) - startNanos.get(key));
+            }
+        }
+        return durations;
+    }
+
+    /**
+     * Chain of completed tasks which determined how long {@link #run(Executor)} took: starts with the task that
+     * finished last and goes back through the dependency that finished last, as it is the one the task waited for
+     */
+    List<K> criticalPath() {
+        LinkedList<K> path = new LinkedList<>();
+        K current = lastFinished(nodes.keySet());
+        while (current != null) {
+            path.addFirst(current);
+            current = lastFinished(nodes.get(current).dependencies);
+        }
+        return path;
+    }
+
+    private K lastFinished(Collection<K> keys) {
+        return keys.stream()
+                .filter(finishNanos::containsKey)
+                .max(Comparator.comparing(finishNanos::get))
+                .orElse(null);
+    }
+
+    /**
+     * Keys ordered so that every task comes after tasks it depends on. Cycles are detected before anything is started.
+     */
+    List<K> topologicalOrder() {
+        List<K> order = new ArrayList<>();
+        Set<K> visited = new HashSet<>();
+        for (K key : nodes.keySet()) {
+            visit(key, visited, new LinkedHashSet<>(), order);
+        }
+        return order;
+    }
+
+    private void visit(K key, Set<K> visited, Set<K> path, List<K> order) {
+        if (visited.contains(key)) {
+            return;
+        }
+        require(path.add(key), "Dependency cycle detected: " + path + " -> " + key);
+        for (K dependency : nodes.get(key).dependencies) {
+            if (nodes.containsKey(dependency)) {
+                visit(dependency, visited, path, order);
+            }
+        }
+        path.remove(key);
+        visited.add(key);
+        order.add(key);
+    }
+
+    /**
+     * Adapts task throwing checked exceptions: I/O failures are rethrown as {@link UncheckedIOException},
+     * interruption as {@link EmbeddedElasticsearchStartupException} with interrupt flag restored
+     */
+    static Runnable unchecked(CheckedTask task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmbeddedElasticsearchStartupException(e);
+            }
+        };
+    }
+
+    interface CheckedTask {
+        void run() throws IOException, InterruptedException;
+    }
+
+    private static final class Node<K> {
+        private final Collection<K> dependencies;
+        private final Runnable task;
+
+        private Node(Collection<K> dependencies, Runnable task) {
+            this.dependencies = dependencies;
+            this.task = task;
+        }
+    }
+}
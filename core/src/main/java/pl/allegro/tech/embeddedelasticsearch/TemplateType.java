@@ -0,0 +1,34 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Kinds of templates supported by Elasticsearch. Component and composable templates are available since Elasticsearch 7.8.
+ */
+enum TemplateType {
+    LEGACY("_template", null),
+    COMPONENT("_component_template", "component_templates"),
+    COMPOSABLE("_index_template", "index_templates");
+
+    private final String endpoint;
+    private final String listField;
+
+    TemplateType(String endpoint, String listField) {
+        this.endpoint = endpoint;
+        this.listField = listField;
+    }
+
+    String path(String templateName) {
+        return "/" + endpoint + "/" + templateName;
+    }
+
+    String endpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Name of the array holding templates in response of get templates request, null for legacy templates
+     * which are returned as object keyed by template name.
+     */
+    String listField() {
+        return listField;
+    }
+}
@@ -1,13 +1,44 @@
 package pl.allegro.tech.embeddedelasticsearch;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
 
 public class TemplatesDescription {
-    private final Map<String, String> templates;
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final Map<String, String> templates = new LinkedHashMap<>();
+    private final Map<String, Template> resolvedTemplates = new LinkedHashMap<>();
 
     TemplatesDescription(Map<String, String> templates) {
-        this.templates = templates;
+        this(templates, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    TemplatesDescription(Map<String, String> templates, Map<String, String> componentTemplates, Map<String, String> composableTemplates) {
+        add(componentTemplates, TemplateType.COMPONENT);
+        add(composableTemplates, TemplateType.COMPOSABLE);
+        add(templates, TemplateType.LEGACY);
+    }
+
+    private void add(Map<String, String> templatesOfType, TemplateType type) {
+        templatesOfType.forEach((name, body) -> {
+            require(!templates.containsKey(name), "Template names must be unique, " + name + " is used more than once");
+            templates.put(name, body);
+            resolvedTemplates.put(name, Template.resolve(body, type));
+        });
     }
 
     Collection<String> getTemplatesNames() {
@@ -17,4 +48,79 @@ public class TemplatesDescription {
     String getTemplateSettings(String templateName) {
         return templates.get(templateName);
     }
+
+    TemplateType getTemplateType(String templateName) {
+        return resolvedTemplates.get(templateName).type;
+    }
+
+    /**
+     * Names of templates which must exist before the template is put, i.e. component templates a composable template
+     * is composed of. Empty for other kinds of templates.
+     */
+    List<String> getTemplateDependencies(String templateName) {
+        return resolvedTemplates.get(templateName).dependencies;
+    }
+
+    /**
+     * Body of put template request, serialized once. The array is shared and must not be modified.
+     */
+    byte[] getTemplateBody(String templateName) {
+        return resolvedTemplates.get(templateName).body;
+    }
+
+    /**
+     * Content hash of the template used to detect changes of its definition, stored in _meta of template body.
+     * Empty for legacy templates, which have no _meta, and if template body is not a JSON object.
+     */
+    Optional<String> getTemplateContentHash(String templateName) {
+        return Optional.ofNullable(resolvedTemplates.get(templateName).contentHash);
+    }
+
+    private static final class Template {
+        private final TemplateType type;
+        private final byte[] body;
+        private final String contentHash;
+        private final List<String> dependencies;
+
+        private Template(TemplateType type, byte[] body, String contentHash, List<String> dependencies) {
+            this.type = type;
+            this.body = body;
+            this.contentHash = contentHash;
+            this.dependencies = dependencies;
+        }
+
+        private static Template resolve(String body, TemplateType type) {
+            byte[] rawBody = body.getBytes(UTF_8);
+            JsonNode json;
+            try {
+                json = OBJECT_MAPPER.readTree(rawBody);
+            } catch (IOException e) {
+                return new Template(type, rawBody, null, Collections.emptyList());
+            }
+            if (json == null || !json.isObject()) {
+                return new Template(type, rawBody, null, Collections.emptyList());
+            }
+            List<String> dependencies = dependenciesOf(json, type);
+            JsonNode meta = json.path("_meta");
+            if (type == TemplateType.LEGACY || !meta.isMissingNode() && !meta.isObject()) {
+                return new Template(type, rawBody, null, dependencies);
+            }
+            try {
+                String contentHash = ContentHash.of(OBJECT_MAPPER.writeValueAsBytes(json));
+                ((ObjectNode) json).withObject("/_meta").put(IndexSettings.CONTENT_HASH_META_FIELD, contentHash);
+                return new Template(type, OBJECT_MAPPER.writeValueAsBytes(json), contentHash, dependencies);
+            } catch (IOException e) {
+                return new Template(type, rawBody, null, dependencies);
+            }
+        }
+
+        private static List<String> dependenciesOf(JsonNode json, TemplateType type) {
+            if (type != TemplateType.COMPOSABLE) {
+                return Collections.emptyList();
+            }
+            List<String> dependencies = new ArrayList<>();
+            json.path("composed_of").forEach(component -> dependencies.add(component.asText()));
+            return Collections.unmodifiableList(dependencies);
+        }
+    }
 }
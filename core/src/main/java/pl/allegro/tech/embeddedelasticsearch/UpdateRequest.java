@@ -0,0 +1,144 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static pl.allegro.tech.embeddedelasticsearch.Require.require;
+
+/**
+ * Partial update of a document with doc merged into it or with script, optionally creating it from upsert
+ * when it does not exist. Doc and upsert are JSON strings, UTF-8 encoded JSON bytes or objects serialized
+ * when bulk request is written.
+ */
+public class UpdateRequest extends BulkOperation {
+
+    private final Object doc;
+    private final boolean docAsUpsert;
+    private final Object upsert;
+    private final String script;
+    private final Map<String, Object> scriptParams;
+    private final Integer retryOnConflict;
+
+    private UpdateRequest(UpdateRequestBuilder builder) {
+        super(builder.indexName, builder.id, builder.routing, null, null, builder.ifSeqNo, builder.ifPrimaryTerm);
+        this.doc = builder.doc;
+        this.docAsUpsert = builder.docAsUpsert;
+        this.upsert = builder.upsert;
+        this.script = builder.script;
+        this.scriptParams = builder.scriptParams;
+        this.retryOnConflict = builder.retryOnConflict;
+    }
+
+    @Override
+    public String getAction() {
+        return "update";
+    }
+
+    Object getDoc() {
+        return doc;
+    }
+
+    boolean isDocAsUpsert() {
+        return docAsUpsert;
+    }
+
+    Object getUpsert() {
+        return upsert;
+    }
+
+    String getScript() {
+        return script;
+    }
+
+    Map<String, Object> getScriptParams() {
+        return scriptParams;
+    }
+
+    Integer getRetryOnConflict() {
+        return retryOnConflict;
+    }
+
+    public static class UpdateRequestBuilder {
+
+        private final String indexName;
+        private final String id;
+        private String routing;
+        private Object doc;
+        private boolean docAsUpsert;
+        private Object upsert;
+        private String script;
+        private Map<String, Object> scriptParams = Collections.emptyMap();
+        private Integer retryOnConflict;
+        private Long ifSeqNo;
+        private Long ifPrimaryTerm;
+
+        public UpdateRequestBuilder(final String indexName, final String id) {
+            this.indexName = indexName;
+            this.id = id;
+        }
+
+        public UpdateRequestBuilder withRouting(String routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * Partial document merged into existing one
+         */
+        public UpdateRequestBuilder withDoc(Object doc) {
+            this.doc = doc;
+            return this;
+        }
+
+        /**
+         * Partial document is indexed as it is when document does not exist
+         */
+        public UpdateRequestBuilder withDocAsUpsert() {
+            this.docAsUpsert = true;
+            return this;
+        }
+
+        /**
+         * Document indexed when document does not exist
+         */
+        public UpdateRequestBuilder withUpsert(Object upsert) {
+            this.upsert = upsert;
+            return this;
+        }
+
+        /**
+         * Painless script modifying the document, e.g. {@code ctx._source.counter += params.count}
+         */
+        public UpdateRequestBuilder withScript(String script) {
+            return withScript(script, Collections.emptyMap());
+        }
+
+        public UpdateRequestBuilder withScript(String script, Map<String, Object> params) {
+            this.script = script;
+            this.scriptParams = params;
+            return this;
+        }
+
+        public UpdateRequestBuilder withRetryOnConflict(int retries) {
+            this.retryOnConflict = retries;
+            return this;
+        }
+
+        /**
+         * Document is updated only if it was last modified by operation of given sequence number and primary term
+         */
+        public UpdateRequestBuilder withIfSeqNo(long seqNo, long primaryTerm) {
+            this.ifSeqNo = seqNo;
+            this.ifPrimaryTerm = primaryTerm;
+            return this;
+        }
+
+        public UpdateRequest build() {
+            require(id != null, "Update request needs id of the document");
+            require(doc != null || script != null, "Update request of document " + id + " needs doc or script");
+            require(doc == null || script == null, "Update request of document " + id + " cannot have both doc and script");
+            require(!docAsUpsert || upsert == null, "Update request of document " + id + " cannot have both upsert and doc as upsert");
+            return new UpdateRequest(this);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+/**
+ * Versioning of documents indexed or deleted with version maintained outside Elasticsearch. Internal versioning
+ * uses sequence numbers instead, see {@code withIfSeqNo} of bulk operation builders.
+ */
+public enum VersionType {
+    /**
+     * Operation succeeds only if given version is greater than stored one
+     */
+    EXTERNAL("external"),
+    /**
+     * Operation succeeds only if given version is greater than or equal to stored one
+     */
+    EXTERNAL_GTE("external_gte");
+
+    private final String parameter;
+
+    VersionType(String parameter) {
+        this.parameter = parameter;
+    }
+
+    String parameter() {
+        return parameter;
+    }
+}
@@ -0,0 +1,76 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of thread pools used by EmbeddedElastic for client side concurrency. Tasks blocked on I/O run on bounded
+ * pools of platform threads here; on Java 21+ the variant from META-INF/versions/21 of the multi-release jar
+ * runs them on virtual threads instead.
+ */
+final class WorkerPools {
+
+    private WorkerPools() {
+    }
+
+    static int defaultParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Pool for CPU bound tasks, always backed by platform threads
+     */
+    static ExecutorService newFixedPool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(name));
+    }
+
+    /**
+     * Pool for tasks spending most of their time waiting for Elasticsearch or disk
+     *
+     * @param maxThreads number of threads of the pool, not needed with virtual threads
+     */
+    static ExecutorService newIoPool(String name, int maxThreads) {
+        return newFixedPool(name, maxThreads);
+    }
+
+    static ScheduledExecutorService newScheduledPool(String name) {
+        return Executors.newSingleThreadScheduledExecutor(daemonThreadFactory(name));
+    }
+
+    /**
+     * Executor running every task in a new daemon thread, for one-off blocking background work
+     */
+    static Executor newThreadPerTask(String name) {
+        ThreadFactory threadFactory = daemonThreadFactory(name);
+        return runnable -> threadFactory.newThread(runnable).start();
+    }
+
+    /**
+     * Not started thread for long running blocking task, e.g. pumping output of Elasticsearch process
+     */
+    static Thread newDaemonThread(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Not started thread for background work which has to complete even when JVM is exiting, e.g. removing directories
+     */
+    static Thread newNonDaemonThread(String name, Runnable task) {
+        return new Thread(task, name);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,141 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import org.apache.hc.client5.http.classic.methods.HttpUriRequestBase;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends recorded requests on schedule given by {@link ReplayOptions}. Workers take requests in order and wait until
+ * it is time to send them, so when all workers are busy the following requests are sent late, and their latency
+ * counts from the scheduled moment instead of the actual one.
+ */
+final class WorkloadReplay {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkloadReplay.class);
+
+    private final List<RecordedRequest> requests;
+    private final ReplayOptions options;
+    private final Target target;
+    private final AtomicInteger nextRequest = new AtomicInteger();
+    private final AtomicLong errorResponses = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final LatencyHistogram latencyMicros = new LatencyHistogram();
+    private final LatencyHistogram serviceTimeMicros = new LatencyHistogram();
+
+    WorkloadReplay(List<RecordedRequest> requests, ReplayOptions options, Target target) {
+        this.requests = requests;
+        this.options = options;
+        this.target = target;
+    }
+
+    ReplayReport run() throws InterruptedException {
+        long[] scheduledNanos = options.schedule(requests);
+        ExecutorService workers = WorkerPools.newIoPool("EmbeddedElsReplay", options.getWorkers());
+        long startNanos = System.nanoTime();
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < options.getWorkers(); i++) {
+                running.add(workers.submit(() -> replay(startNanos, scheduledNanos)));
+            }
+            for (Future<?> worker : running) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replay of workload failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+            target.close();
+        }
+        ReplayReport report = new ReplayReport(latencyMicros.getTotalCount(), errorResponses.get(), failedRequests.get(),
+                System.nanoTime() - startNanos, latencyMicros, serviceTimeMicros);
+        logger.info(report.toString());
+        return report;
+    }
+
+    private void replay(long startNanos, long[] scheduledNanos) {
+        for (int index = nextRequest.getAndIncrement(); index < scheduledNanos.length; index = nextRequest.getAndIncrement()) {
+            long scheduledStart = startNanos + scheduledNanos[index];
+            if (!waitUntil(scheduledStart)) {
+                return;
+            }
+            long sendStart = System.nanoTime();
+            try {
+                if (target.send(requests.get(index)) >= 400) {
+                    errorResponses.incrementAndGet();
+                }
+            } catch (RuntimeException e) {
+                if (failedRequests.getAndIncrement() == 0) {
+                    logger.warn("Replayed request " + requests.get(index) + " failed", e);
+                }
+            }
+            long end = System.nanoTime();
+            latencyMicros.record(TimeUnit.NANOSECONDS.toMicros(end - scheduledStart));
+            serviceTimeMicros.record(TimeUnit.NANOSECONDS.toMicros(end - sendStart));
+        }
+    }
+
+    /**
+     * @return false if interrupted while waiting
+     */
+    private static boolean waitUntil(long deadlineNanos) {
+        long remaining;
+        while ((remaining = deadlineNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    interface Target {
+
+        /**
+         * @return status code of response
+         */
+        int send(RecordedRequest request);
+
+        void close();
+
+        /**
+         * @param httpClient client keeping a connection open for every worker
+         * @param baseUrl    URL of Elasticsearch which request paths are appended to
+         */
+        static Target of(HttpClient httpClient, String baseUrl) {
+            return new Target() {
+                @Override
+                public int send(RecordedRequest request) {
+                    HttpUriRequestBase httpRequest = new HttpUriRequestBase(request.getMethod(), URI.create(baseUrl + request.getPath()));
+                    if (request.getBody().length > 0) {
+                        ContentType contentType = request.getContentType() != null ? ContentType.parse(request.getContentType()) : null;
+                        httpRequest.setEntity(new ByteArrayEntity(request.getBody(), contentType, request.getContentEncoding()));
+                    }
+                    return httpClient.execute(httpRequest, (ClassicHttpResponse response) -> {
+                        EntityUtils.consume(response.getEntity());
+                        return response.getCode();
+                    });
+                }
+
+                @Override
+                public void close() {
+                    httpClient.close();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package pl.allegro.tech.embeddedelasticsearch;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Process together with processes it spawned, e.g. server JVM started by launcher script of Elasticsearch 8.
+ */
+final class ProcessTree {
+
+    private final List<ProcessHandle> processes;
+
+    private ProcessTree(List<ProcessHandle> processes) {
+        this.processes = processes;
+    }
+
+    /**
+     * Captures descendants of the process, must be called before the process is terminated as its descendants
+     * are reparented afterwards
+     */
+    static ProcessTree of(Process process) {
+        ProcessHandle handle = process.toHandle();
+        return new ProcessTree(Stream.concat(Stream.of(handle), handle.descendants()).collect(Collectors.toList()));
+    }
+
+    /**
+     * Asks processes to terminate (SIGTERM on Unix)
+     */
+    void destroy() {
+        processes.forEach(ProcessHandle::destroy);
+    }
+
+    void destroyForcibly() {
+        processes.forEach(ProcessHandle::destroyForcibly);
+    }
+
+    /**
+     * @return true if all processes exited within timeout
+     */
+    boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ProcessHandle process : processes) {
+            while (process.isAlive()) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(50);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * CPU time consumed by processes of the tree as reported by operating system, not available on Java 8
+     */
+    Optional<Duration> totalCpuDuration() {
+        List<Duration> cpuDurations = processes.stream()
+                .map(process -> process.info().totalCpuDuration())
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList());
+        return cpuDurations.isEmpty() ? Optional.empty() : Optional.of(cpuDurations.stream().reduce(Duration.ZERO, Duration::plus));
+    }
+}
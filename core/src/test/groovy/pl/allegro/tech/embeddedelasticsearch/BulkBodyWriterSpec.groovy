@@ -0,0 +1,144 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import spock.lang.Specification
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class BulkBodyWriterSpec extends Specification {
+
+    final objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT)
+
+    def "should write action and JSON source in single lines"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.JSON, objectMapper, true)
+        when:
+            final body = new String(writer.write(request), UTF_8)
+        then:
+            body == expected
+        where:
+            request                                                                                                 || expected
+            new IndexRequest.IndexRequestBuilder("cars", '{"model":\n"126p"}').withId("1").withRouting("r").build() || '{"index":{"_index":"cars","_id":"1","routing":"r"}}\n{"model": "126p"}\n'
+            new IndexRequest.IndexRequestBuilder("cars", '{"model":"126p"}'.getBytes(UTF_8)).build()                 || '{"index":{"_index":"cars"}}\n{"model":"126p"}\n'
+            new IndexRequest.IndexRequestBuilder("cars", "").withSource([model: "126p"]).build()                     || '{"index":{"_index":"cars"}}\n{"model":"126p"}\n'
+    }
+
+    def "should use underscored routing before Elasticsearch 7"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.JSON, objectMapper, false)
+        expect:
+            new String(writer.write(new IndexRequest.IndexRequestBuilder("cars", "{}").withRouting("r").build()), UTF_8) ==
+                    '{"index":{"_index":"cars","_routing":"r"}}\n{}\n'
+    }
+
+    def "should write action and source as separate SMILE documents"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.SMILE, objectMapper, true)
+        when:
+            final body = writer.write(request)
+        then:
+            final items = smileDocuments(body)
+            items == [[index: [_index: "cars", _id: "1"]], [model: "126p"]]
+        where:
+            request << [
+                    new IndexRequest.IndexRequestBuilder("cars", '{"model":"126p"}').withId("1").build(),
+                    new IndexRequest.IndexRequestBuilder("cars", '{"model":"126p"}'.getBytes(UTF_8)).withId("1").build(),
+                    new IndexRequest.IndexRequestBuilder("cars", "").withId("1").withSource([model: "126p"]).build()
+            ]
+    }
+
+    def "should write create, update and delete actions with their parameters"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.JSON, objectMapper, true)
+        when:
+            final body = new String(writer.write(operation), UTF_8)
+        then:
+            body == expected
+        where:
+            operation                                                                                                                || expected
+            new IndexRequest.IndexRequestBuilder("cars", '{"model":"126p"}').withId("1").withOpTypeCreate().withPipeline("p").build() || '{"create":{"_index":"cars","_id":"1","pipeline":"p"}}\n{"model":"126p"}\n'
+            new IndexRequest.IndexRequestBuilder("cars", "{}").withId("1").withVersion(7, VersionType.EXTERNAL).build()              || '{"index":{"_index":"cars","_id":"1","version":7,"version_type":"external"}}\n{}\n'
+            new UpdateRequest.UpdateRequestBuilder("cars", "1").withDoc('{"year":\n1973}').withDocAsUpsert().withRetryOnConflict(3).build() || '{"update":{"_index":"cars","_id":"1","retry_on_conflict":3}}\n{"doc":{"year":1973},"doc_as_upsert":true}\n'
+            new UpdateRequest.UpdateRequestBuilder("cars", "1").withScript("ctx._source.count += params.n", [n: 2]).withUpsert([count: 0]).build() || '{"update":{"_index":"cars","_id":"1"}}\n{"script":{"source":"ctx._source.count += params.n","params":{"n":2}},"upsert":{"count":0}}\n'
+            new DeleteRequest.DeleteRequestBuilder("cars", "1").withIfSeqNo(5, 1).withRouting("r").build()                           || '{"delete":{"_index":"cars","_id":"1","routing":"r","if_seq_no":5,"if_primary_term":1}}\n'
+    }
+
+    def "should write update and delete actions as separate SMILE documents"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.SMILE, objectMapper, true)
+            final out = new ByteArrayOutputStream()
+        when:
+            writer.write(new UpdateRequest.UpdateRequestBuilder("cars", "1").withDoc('{"year":1973}').build(), out)
+            writer.write(new DeleteRequest.DeleteRequestBuilder("cars", "2").build(), out)
+        then:
+            smileDocuments(out.toByteArray()) == [
+                    [update: [_index: "cars", _id: "1"]], [doc: [year: 1973]],
+                    [delete: [_index: "cars", _id: "2"]]
+            ]
+    }
+
+    def "should reject update without doc or script"() {
+        when:
+            new UpdateRequest.UpdateRequestBuilder("cars", "1").build()
+        then:
+            final ex = thrown(InvalidSetupException)
+            ex.message == "Update request of document 1 needs doc or script"
+    }
+
+    def "should reject index version without version type"() {
+        when:
+            new IndexRequest.IndexRequestBuilder("cars", '{"model":"126p"}').withVersion(3, null)
+        then:
+            final ex = thrown(InvalidSetupException)
+            ex.message == "Version type must be given with version 3"
+    }
+
+    def "should reject delete version without version type"() {
+        when:
+            new DeleteRequest.DeleteRequestBuilder("cars", "1").withVersion(3, null)
+        then:
+            final ex = thrown(InvalidSetupException)
+            ex.message == "Version type must be given with version 3"
+    }
+
+    def "should serialize objects with ids and routing extracted from them"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.JSON, objectMapper, true)
+            final out = new ByteArrayOutputStream()
+        when:
+            writer.writeAll("cars", [[model: "126p", year: 1973], [model: "Panda", year: 1980]],
+                    { it.model }, { it.year < 1980 ? "classic" : null }, out)
+        then:
+            out.toString("UTF-8") == '{"index":{"_index":"cars","_id":"126p","routing":"classic"}}\n{"model":"126p","year":1973}\n' +
+                    '{"index":{"_index":"cars","_id":"Panda"}}\n{"model":"Panda","year":1980}\n'
+    }
+
+    def "should serialize objects as separate SMILE documents"() {
+        given:
+            final writer = new BulkBodyWriter(ContentFormat.SMILE, objectMapper, true)
+            final out = new ByteArrayOutputStream()
+        when:
+            writer.writeAll("cars", [[model: "126p"], [model: "Panda"]], { it.model }, { null }, out)
+        then:
+            smileDocuments(out.toByteArray()) == [
+                    [index: [_index: "cars", _id: "126p"]], [model: "126p"],
+                    [index: [_index: "cars", _id: "Panda"]], [model: "Panda"]
+            ]
+    }
+
+    private static List<Map> smileDocuments(byte[] body) {
+        final smileMapper = new ObjectMapper(new SmileFactory())
+        final documents = []
+        int start = 0
+        for (int i = 0; i < body.length; i++) {
+            if ((body[i] & 0xFF) == ContentFormat.SMILE_STREAM_SEPARATOR) {
+                documents << smileMapper.readValue(body, start, i - start, Map)
+                start = i + 1
+            }
+        }
+        assert start == body.length
+        documents
+    }
+}
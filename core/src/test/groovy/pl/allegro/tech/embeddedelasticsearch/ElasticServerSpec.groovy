@@ -0,0 +1,95 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Requires
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+@Requires({ !os.windows })
+class ElasticServerSpec extends Specification {
+
+    static final STOP_TIMEOUT_MS = 500
+
+    final installationDirectory = Files.createTempDirectory("installation").toFile()
+    final distribution = new File(installationDirectory, "elasticsearch-7.7.0")
+    final nodePidFile = new File(installationDirectory, "node.pid")
+    final childPidFile = new File(installationDirectory, "child.pid")
+
+    def cleanup() {
+        installationDirectory.deleteDir()
+    }
+
+    // Java 8 cannot see descendants of the process
+    @Requires({ jvm.java9Compatible })
+    def "should kill node and processes it spawned when they ignore SIGTERM until stop timeout"() {
+        given:
+            final server = server(ignoringSigtermExecutable())
+            server.start()
+            final nodePid = nodePidFile.text.trim()
+            final childPid = childPidFile.text.trim()
+        when:
+            final stopStart = System.currentTimeMillis()
+            server.stop()
+            final stopDuration = System.currentTimeMillis() - stopStart
+        then:
+            stopDuration >= STOP_TIMEOUT_MS
+            !isRunning(nodePid)
+            !isRunning(childPid)
+    }
+
+    def "should remove directories moved aside by previous instances on start"() {
+        given:
+            final leftover = new File(installationDirectory, ".elasticsearch-7.7.0.deleting-1a2b")
+            new File(leftover, "data").mkdirs()
+            final unrelated = new File(installationDirectory, ".deleting-not-an-instance")
+            unrelated.mkdirs()
+            final server = server(ignoringSigtermExecutable())
+        when:
+            server.start()
+        then:
+            waitUntil { !leftover.exists() }
+            unrelated.exists()
+        cleanup:
+            server.stop()
+    }
+
+    private ElasticServer server(File executable) {
+        new ElasticServer("", distribution, null, null, new File(distribution, "data"), executable,
+                new File(distribution, "bin/elasticsearch-setup-passwords"), 10_000, STOP_TIMEOUT_MS, false, JavaHomeOption.useSystem())
+    }
+
+    /**
+     * Mimics Elasticsearch 8 launcher: spawns server process, and both of them ignore SIGTERM
+     */
+    private File ignoringSigtermExecutable() {
+        final executable = new File(distribution, "bin/elasticsearch")
+        executable.parentFile.mkdirs()
+        executable.text = """#!/bin/sh
+trap '' TERM
+sh -c 'while true; do sleep 1; done' &
+echo \$! > ${childPidFile.absolutePath}
+echo \$\$ > ${nodePidFile.absolutePath}
+echo "[node] version[7.7.0], pid[\$\$], build[default/tar]"
+echo "[node] started"
+while true; do sleep 1; done
+"""
+        executable.setExecutable(true)
+        executable
+    }
+
+    /**
+     * @return false also for zombie process, which is killed but not yet reaped by its new parent
+     */
+    private static boolean isRunning(String pid) {
+        final state = ["ps", "-o", "stat=", "-p", pid].execute().text.trim()
+        !state.isEmpty() && !state.startsWith("Z")
+    }
+
+    private static boolean waitUntil(Closure<Boolean> condition) {
+        final deadline = System.currentTimeMillis() + 5000
+        while (!condition() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50)
+        }
+        condition()
+    }
+}
@@ -0,0 +1,64 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class FileLocksSpec extends Specification {
+
+    final directory = Files.createTempDirectory("locks").toFile()
+    final executor = Executors.newFixedThreadPool(4)
+
+    def cleanup() {
+        executor.shutdownNow()
+        directory.deleteDir()
+    }
+
+    def "should let only one thread at a time into section guarded by the same lock file"() {
+        given:
+            final lockFile = new File(directory, "distribution.lock")
+            final inside = new AtomicInteger()
+            final maxInside = new AtomicInteger()
+        when:
+            final results = (1..4).collect { thread ->
+                executor.submit({
+                    FileLocks.withLock(lockFile) {
+                        maxInside.accumulateAndGet(inside.incrementAndGet(), Math.&max)
+                        Thread.sleep(50)
+                        inside.decrementAndGet()
+                        thread
+                    }
+                } as Callable)
+            }*.get(10, TimeUnit.SECONDS)
+        then:
+            results == [1, 2, 3, 4]
+            maxInside.get() == 1
+    }
+
+    def "should not block sections guarded by different lock files"() {
+        given:
+            final insideFirst = new CountDownLatch(1)
+            final insideSecond = new CountDownLatch(1)
+        when:
+            final first = executor.submit({
+                FileLocks.withLock(new File(directory, "first.lock")) {
+                    insideFirst.countDown()
+                    insideSecond.await(10, TimeUnit.SECONDS)
+                }
+            } as Callable)
+            final second = executor.submit({
+                FileLocks.withLock(new File(directory, "second.lock")) {
+                    insideSecond.countDown()
+                    insideFirst.await(10, TimeUnit.SECONDS)
+                }
+            } as Callable)
+        then:
+            first.get(10, TimeUnit.SECONDS)
+            second.get(10, TimeUnit.SECONDS)
+    }
+}
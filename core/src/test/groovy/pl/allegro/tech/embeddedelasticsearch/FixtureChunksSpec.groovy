@@ -0,0 +1,57 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.zip.GZIPOutputStream
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class FixtureChunksSpec extends Specification {
+
+    def "should split NDJSON fixture on line boundaries"() {
+        given:
+            final fixture = Fixture.fromFile(write("fixture.ndjson", '{"a": 1}\n{"a": 2}\n{"a": 3}'))
+        when:
+            final chunks = readChunks(fixture, 12)
+        then:
+            chunks == ['{"a": 1}\n', '{"a": 2}\n', '{"a": 3}']
+    }
+
+    def "should not separate bulk action from its source"() {
+        given:
+            final fixture = Fixture.fromFile(write("fixture.bulk", '{"index": {}}\n{"a": 1}\n{"delete": {"_id": "1"}}\n{"index": {}}\n{"a": 2}\n'))
+                    .withFormat(FixtureFormat.BULK)
+        when:
+            final chunks = readChunks(fixture, 16)
+        then:
+            chunks == ['{"index": {}}\n{"a": 1}\n', '{"delete": {"_id": "1"}}\n', '{"index": {}}\n{"a": 2}\n']
+    }
+
+    def "should read gzipped fixture"() {
+        given:
+            final file = Files.createTempFile("fixture", ".ndjson.gz")
+            new GZIPOutputStream(Files.newOutputStream(file)).withCloseable { it.write('{"a": 1}\n{"a": 2}\n'.getBytes(UTF_8)) }
+        when:
+            final chunks = readChunks(Fixture.fromFile(file), 1024)
+        then:
+            chunks == ['{"a": 1}\n{"a": 2}\n']
+    }
+
+    private static List<String> readChunks(Fixture fixture, int chunkSize) {
+        final result = []
+        FixtureChunks.open(fixture, chunkSize).withCloseable { chunks ->
+            def chunk
+            while ((chunk = chunks.next()) != null) {
+                result << new String(chunk.data, 0, chunk.length, UTF_8)
+            }
+        }
+        return result
+    }
+
+    private static write(String name, String content) {
+        final file = Files.createTempDirectory("fixtures").resolve(name)
+        Files.write(file, content.getBytes(UTF_8))
+        return file
+    }
+}
@@ -0,0 +1,95 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class InMemoryDataDirectorySpec extends Specification {
+
+    final tmpfsDirectory = Files.createTempDirectory("tmpfs").toFile()
+    final installationDirectory = Files.createTempDirectory("installation").toFile()
+
+    def cleanup() {
+        tmpfsDirectory.deleteDir()
+        installationDirectory.deleteDir()
+    }
+
+    def "should refuse in memory directory with less free space than required"() {
+        given:
+            final installer = installer(new InstanceSettings(), Long.MAX_VALUE)
+        when:
+            installer.prepareInMemoryDataDirectory()
+        then:
+            final e = thrown(EmbeddedElasticsearchStartupException)
+            e.message.startsWith("Not enough free space in in memory data directory $tmpfsDirectory")
+            tmpfsDirectory.list().length == 0
+    }
+
+    def "should create directory of the instance in in memory directory"() {
+        given:
+            final installer = installer(new InstanceSettings(), 0)
+        when:
+            installer.prepareInMemoryDataDirectory()
+        then:
+            installer.inMemoryDataDirectory.get().isDirectory()
+            installer.inMemoryDataDirectory.get().parentFile == tmpfsDirectory
+    }
+
+    def "should redirect data and logs into in memory directory"() {
+        given:
+            final installer = installer(new InstanceSettings(), 0)
+            final instanceDirectory = installer.inMemoryDataDirectory.get()
+        when:
+            final settings = installer.effectiveInstanceSettings()
+        then:
+            installer.dataDirectory == new File(instanceDirectory, "data").absoluteFile
+            settings.get("path.logs").get() == new File(instanceDirectory, "logs").absolutePath
+            settings.get("cluster.routing.allocation.disk.threshold_enabled").get() == false
+    }
+
+    def "should keep data and logs paths set explicitly"() {
+        given:
+            final installer = installer(new InstanceSettings(["path.data": "/var/els/data", "path.logs": "/var/els/logs"]), 0)
+        when:
+            final settings = installer.effectiveInstanceSettings()
+        then:
+            installer.dataDirectory == new File("/var/els/data")
+            settings.get("path.logs").get() == "/var/els/logs"
+    }
+
+    def "should remove in memory directory on stop even when installation directory is kept"() {
+        given:
+            final inMemoryDataDirectory = new File(tmpfsDirectory, "elasticsearch-7.7.0-instance")
+            new File(inMemoryDataDirectory, "data").mkdirs()
+            final server = new ElasticServer("", installationDirectory, inMemoryDataDirectory, null, new File(inMemoryDataDirectory, "data"),
+                    new File(installationDirectory, "bin/elasticsearch"), new File(installationDirectory, "bin/elasticsearch-setup-passwords"),
+                    1000, 1000, false, JavaHomeOption.useSystem())
+        when:
+            server.stop()
+        then:
+            installationDirectory.exists()
+            tmpfsDirectory.list().every { !it.startsWith("elasticsearch-7.7.0-instance") }
+    }
+
+    def "should remove in memory directory when startup fails"() {
+        given:
+            final embeddedElastic = EmbeddedElastic.builder()
+                    .withDownloadUrl(new URL("file:${installationDirectory}/missing/elasticsearch-7.7.0.zip"))
+                    .withInstallationDirectory(installationDirectory)
+                    .withDownloadDirectory(installationDirectory)
+                    .withInMemoryDataDirectory(tmpfsDirectory)
+                    .withInMemoryDataDirectoryMinimumFreeSpace(0)
+                    .build()
+        when:
+            embeddedElastic.start()
+        then:
+            thrown(IOException)
+            tmpfsDirectory.list().length == 0
+    }
+
+    private ElasticSearchInstaller installer(InstanceSettings settings, long minimumFreeSpace) {
+        final installationDescription = new InstallationDescription(new InstallFromVersion("7.7.0"), installationDirectory, installationDirectory,
+                false, [], 0, 0, null, tmpfsDirectory, minimumFreeSpace, false)
+        new ElasticSearchInstaller(settings, installationDescription)
+    }
+}
@@ -0,0 +1,56 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class IndexSettingsSpec extends Specification {
+
+    static final MAPPING = '{ "properties": { "model": { "type": "keyword" } } }'
+    static final SETTINGS = '{ "number_of_shards": 1 }'
+
+    def "should compute the same content hash for the same definition"() {
+        expect:
+            indexSettings(MAPPING, SETTINGS).contentHash == indexSettings(MAPPING, SETTINGS).contentHash
+    }
+
+    def "should compute different content hash for changed definition"() {
+        expect:
+            indexSettings(MAPPING, SETTINGS).contentHash != indexSettings(MAPPING, '{ "number_of_shards": 2 }').contentHash
+    }
+
+    def "should store content hash in mappings meta"() {
+        given:
+            final hashedSettings = indexSettings(MAPPING, SETTINGS).withContentHashInMappings()
+        when:
+            final requestBody = new ObjectMapper().readTree(hashedSettings.toRequestBody())
+        then:
+            requestBody.get("mappings").get("_meta").get(IndexSettings.CONTENT_HASH_META_FIELD).asText() == hashedSettings.contentHash
+            requestBody.get("mappings").get("properties").get("model").get("type").asText() == "keyword"
+        and:
+            hashedSettings.contentHash == indexSettings(MAPPING, SETTINGS).contentHash
+    }
+
+    def "should return declared definition without content hash"() {
+        given:
+            final hashedSettings = indexSettings(MAPPING, SETTINGS).withContentHashInMappings()
+        when:
+            final json = hashedSettings.toJson()
+        then:
+            json.get("mappings") == new ObjectMapper().readTree(MAPPING)
+            json.get("settings") == new ObjectMapper().readTree(SETTINGS)
+    }
+
+    def "should serialize request body once"() {
+        given:
+            final indexSettings = indexSettings(MAPPING, SETTINGS)
+        expect:
+            indexSettings.toRequestBody().is(indexSettings.toRequestBody())
+    }
+
+    private static IndexSettings indexSettings(String mapping, String settings) {
+        IndexSettings.builder()
+                .withMapping(mapping)
+                .withSettings(settings)
+                .build()
+    }
+}
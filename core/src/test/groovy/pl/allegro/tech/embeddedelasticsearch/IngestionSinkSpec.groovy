@@ -0,0 +1,138 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+import spock.util.concurrent.PollingConditions
+
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class IngestionSinkSpec extends Specification {
+
+    def "should send batches of given number of documents and the rest on close"() {
+        given:
+            final target = new RecordingTarget()
+            final sink = new IngestionSink(IngestionOptions.defaults().withBatchDocuments(2), target)
+        when:
+            (1..5).each { sink.accept(document(it)) }
+            sink.close()
+        then:
+            target.bulks.collect { it.size() }.sort() == [1, 2, 2]
+            target.bulks.flatten().sort() == ['{"doc":1}', '{"doc":2}', '{"doc":3}', '{"doc":4}', '{"doc":5}']
+            sink.indexedDocuments == 5
+            target.refreshes == 1
+            target.closed
+    }
+
+    def "should send not full batch when flush interval elapses"() {
+        given:
+            final target = new RecordingTarget()
+            final sink = new IngestionSink(IngestionOptions.defaults().withFlushInterval(50, TimeUnit.MILLISECONDS), target)
+        when:
+            sink.accept(document(1))
+        then:
+            new PollingConditions(timeout: 5).eventually {
+                assert target.bulks == [['{"doc":1}']]
+            }
+        cleanup:
+            sink.close()
+    }
+
+    def "should retry only rejected documents"() {
+        given:
+            final target = new RecordingTarget(rejections: [[1] as Set])
+            final sink = new IngestionSink(IngestionOptions.defaults().withBatchDocuments(3), target)
+        when:
+            (0..2).each { sink.accept(document(it)) }
+            sink.close()
+        then:
+            target.bulks == [['{"doc":0}', '{"doc":1}', '{"doc":2}'], ['{"doc":1}']]
+            sink.rejectedDocuments == 1
+            sink.bulkRequests == 2
+            sink.backoffMillis > 0
+            sink.indexedDocuments == 3
+    }
+
+    def "should fail when documents are still rejected after all retries"() {
+        given:
+            final target = new RecordingTarget(rejections: [[0] as Set, [0] as Set])
+            final sink = new IngestionSink(IngestionOptions.defaults().withBatchDocuments(1).withMaxRetries(1), target)
+        when:
+            sink.accept(document(0))
+            sink.close()
+        then:
+            final ex = thrown(IllegalStateException)
+            ex.message == "1 documents still rejected by Elasticsearch after 1 retries"
+            target.closed
+    }
+
+    def "should block producer while all bulk requests are in flight"() {
+        given:
+            final target = new RecordingTarget(sendAllowed: new CountDownLatch(1))
+            final sink = new IngestionSink(IngestionOptions.defaults().withBatchDocuments(1).withMaxInFlightBulks(1), target)
+            final producer = new Thread({ (1..2).each { sink.accept(document(it)) } })
+        when:
+            producer.start()
+            producer.join(200)
+        then:
+            producer.alive
+        when:
+            target.sendAllowed.countDown()
+            producer.join(5_000)
+            sink.close()
+        then:
+            !producer.alive
+            target.bulks.size() == 2
+    }
+
+    def "should not accept documents after close"() {
+        given:
+            final sink = new IngestionSink(IngestionOptions.defaults(), new RecordingTarget())
+            sink.close()
+        when:
+            sink.accept(document(1))
+        then:
+            final ex = thrown(IllegalStateException)
+            ex.message == "Ingestion sink is closed"
+    }
+
+    private static IndexRequest document(int number) {
+        new IndexRequest.IndexRequestBuilder("cars", "{\"doc\":$number}").build()
+    }
+
+    private static class RecordingTarget implements IngestionSink.BulkTarget {
+        final List<List<String>> bulks = new CopyOnWriteArrayList<>()
+        List<Set<Integer>> rejections = []
+        CountDownLatch sendAllowed = new CountDownLatch(0)
+        volatile int refreshes
+        volatile boolean closed
+
+        @Override
+        byte[] render(BulkOperation operation) {
+            (((IndexRequest) operation).json + "\n").getBytes(UTF_8)
+        }
+
+        @Override
+        synchronized BitSet send(byte[] body, int length, int items) {
+            sendAllowed.await()
+            bulks.add(new String(body, 0, length, UTF_8).readLines())
+            final rejected = new BitSet(items)
+            if (!rejections.isEmpty()) {
+                rejections.remove(0).each { rejected.set(it) }
+            }
+            rejected
+        }
+
+        @Override
+        void refresh() {
+            refreshes++
+        }
+
+        @Override
+        void close() {
+            closed = true
+        }
+    }
+}
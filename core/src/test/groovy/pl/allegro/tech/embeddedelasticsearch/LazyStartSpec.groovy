@@ -0,0 +1,55 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class LazyStartSpec extends Specification {
+
+    final installationDirectory = Files.createTempDirectory("installation").toFile()
+    final embeddedElastic = EmbeddedElastic.builder()
+            .withDownloadUrl(new URL("file:${installationDirectory}/missing/elasticsearch-7.7.0.zip"))
+            .withInstallationDirectory(installationDirectory)
+            .withDownloadDirectory(installationDirectory)
+            .withLazyStart()
+            .build()
+
+    def cleanup() {
+        installationDirectory.deleteDir()
+    }
+
+    def "should return from start without failing when background startup fails"() {
+        when:
+            embeddedElastic.start()
+        then:
+            noExceptionThrown()
+    }
+
+    def "should rethrow failure of background startup from the first operation"() {
+        given:
+            embeddedElastic.start()
+        when:
+            embeddedElastic.getHttpPort()
+        then:
+            final e = thrown(EmbeddedElasticsearchStartupException)
+            e.cause instanceof FileNotFoundException
+    }
+
+    def "should rethrow failure of background startup from every operation"() {
+        given:
+            embeddedElastic.start()
+        when:
+            embeddedElastic.index("cars", '{"model": "126p"}')
+        then:
+            thrown(EmbeddedElasticsearchStartupException)
+    }
+
+    def "should stop without failing when background startup failed"() {
+        given:
+            embeddedElastic.start()
+        when:
+            embeddedElastic.stop()
+        then:
+            noExceptionThrown()
+    }
+}
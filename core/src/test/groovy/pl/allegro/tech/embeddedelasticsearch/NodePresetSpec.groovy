@@ -0,0 +1,91 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class NodePresetSpec extends Specification {
+
+    @Unroll
+    def "should use bulk thread pool setting valid for Elasticsearch #majorVersion"() {
+        given:
+            final preset = NodePreset.builder().withBulkThreadPoolSize(2).build()
+        when:
+            final settings = preset.nodeSettings(majorVersion, 0)
+        then:
+            settings == [(key): 2]
+        where:
+            majorVersion | key
+            2            | "threadpool.bulk.size"
+            6            | "thread_pool.bulk.size"
+            7            | "thread_pool.write.size"
+            8            | "thread_pool.write.size"
+    }
+
+    def "should put index level tweaks into default index settings"() {
+        when:
+            final preset = NodePreset.testThroughput()
+        then:
+            preset.indexSettings(7) == [
+                    "index.number_of_replicas" : 0,
+                    "index.refresh_interval"   : "30s",
+                    "index.translog.durability": "async"
+            ]
+        and:
+            !preset.nodeSettings(7, 0).keySet().any { it.startsWith("index.") }
+    }
+
+    def "should apply xpack tweaks for Elasticsearch bundling xpack since 6.3"() {
+        given:
+            final preset = NodePreset.builder().withoutXPackFeatures().build()
+        expect:
+            preset.nodeSettings(6, 3)["xpack.security.enabled"] == false
+            preset.nodeSettings(6, 8)["xpack.ml.enabled"] == false
+    }
+
+    def "should reject xpack tweaks for Elasticsearch without bundled xpack"() {
+        given:
+            final preset = NodePreset.builder().withoutMachineLearning().build()
+        when:
+            preset.nodeSettings(6, 2)
+        then:
+            thrown(InvalidSetupException)
+    }
+
+    def "should skip xpack tweaks of throughput preset for Elasticsearch without bundled xpack"() {
+        when:
+            final settings = NodePreset.testThroughput().nodeSettings(6, 2)
+        then:
+            !settings.keySet().any { it.startsWith("xpack.") }
+            settings["thread_pool.bulk.size"] == 1
+    }
+
+    def "should validate preset against version of installed Elasticsearch"() {
+        when:
+            EmbeddedElastic.builder()
+                    .withElasticVersion("6.8.0")
+                    .withNodePreset(NodePreset.testThroughput())
+                    .build()
+        then:
+            noExceptionThrown()
+
+        when:
+            EmbeddedElastic.builder()
+                    .withElasticVersion("6.2.4")
+                    .withNodePreset(NodePreset.builder().withoutXPackFeatures().build())
+                    .build()
+        then:
+            thrown(InvalidSetupException)
+    }
+
+    def "should not override index settings specified explicitly"() {
+        given:
+            final indexSettings = IndexSettings.builder()
+                    .withSettings('{ "index": { "number_of_replicas": 2 } }')
+                    .build()
+        when:
+            final merged = indexSettings.withDefaultSettings(["index.number_of_replicas": 0, "index.refresh_interval": "30s"])
+        then:
+            merged.toJson().get("settings").get("index").get("number_of_replicas").asInt() == 2
+            merged.toJson().get("settings").get("index.refresh_interval").asText() == "30s"
+    }
+}
@@ -0,0 +1,60 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+
+class PortRegistrySpec extends Specification {
+
+    final registryDirectory = Files.createTempDirectory("port-registry").toFile()
+
+    def "should not reserve the same port twice"() {
+        given:
+            final registry = new PortRegistry(registryDirectory, 31000, 31003)
+        when:
+            final first = registry.reserve(2)
+            final second = new PortRegistry(registryDirectory, 31000, 31003).reserve(2)
+        then:
+            (first.ports() + second.ports()).toSet() == [31000, 31001, 31002, 31003].toSet()
+        cleanup:
+            first?.close()
+            second?.close()
+    }
+
+    def "should reserve released ports again"() {
+        given:
+            final registry = new PortRegistry(registryDirectory, 31010, 31011)
+            registry.reserve(2).close()
+        when:
+            final reservation = registry.reserve(2)
+        then:
+            reservation.ports().toSet() == [31010, 31011].toSet()
+        cleanup:
+            reservation?.close()
+    }
+
+    def "should skip ports used by other processes"() {
+        given:
+            final socket = new ServerSocket(31020)
+            final registry = new PortRegistry(registryDirectory, 31020, 31021)
+        when:
+            final reservation = registry.reserve(1)
+        then:
+            reservation.ports() == [31021]
+        cleanup:
+            reservation?.close()
+            socket.close()
+    }
+
+    def "should fail when range is exhausted"() {
+        given:
+            final registry = new PortRegistry(registryDirectory, 31030, 31031)
+            final reservation = registry.reserve(2)
+        when:
+            registry.reserve(1)
+        then:
+            thrown(EmbeddedElasticsearchStartupException)
+        cleanup:
+            reservation.close()
+    }
+}
@@ -0,0 +1,113 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import com.sun.net.httpserver.HttpServer
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.function.IntSupplier
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class RecordingProxySpec extends Specification {
+
+    volatile HttpServer upstream = echoServer()
+    final requestLog = Files.createTempFile("requests", ".log")
+    final proxy = new RecordingProxy({ upstream.address.port } as IntSupplier, requestLog)
+
+    def cleanup() {
+        proxy.close()
+        upstream.stop(0)
+    }
+
+    def "should forward requests over kept alive connection and record them"() {
+        when:
+            final search = send("GET", "/cars/_search?q=126p", null, false)
+            final index = send("PUT", "/cars/_doc/1", '{"model":"126p"}', false)
+            final bulk = send("POST", "/_bulk", '{"index":{}}\n{"model":"126p"}\n', true)
+            proxy.close()
+            final recorded = RequestLog.read(requestLog)
+        then:
+            search == "GET /cars/_search?q=126p "
+            index == 'PUT /cars/_doc/1 {"model":"126p"}'
+            bulk == 'POST /_bulk {"index":{}}\n{"model":"126p"}\n'
+            recorded*.toString() == ["GET /cars/_search?q=126p", "PUT /cars/_doc/1", "POST /_bulk"]
+            recorded*.contentType == [null, "application/json", "application/json"]
+            new String(recorded[2].body, UTF_8) == '{"index":{}}\n{"model":"126p"}\n'
+            recorded*.statusCode == [200, 200, 200]
+            recorded.every { it.latencyMicros >= 0 }
+            proxy.recordedRequests == 3
+    }
+
+    def "should relay chunked and empty responses"() {
+        when:
+            final large = send("GET", "/large", null, false)
+            final missing = connection("GET", "/missing").responseCode
+            proxy.close()
+        then:
+            large.length() == 100_000
+            missing == 404
+            RequestLog.read(requestLog)*.statusCode == [200, 404]
+    }
+
+    def "should forward new connections to current port of restarted node"() {
+        given:
+            final beforeRestart = connection("GET", "/before")
+            beforeRestart.inputStream.bytes
+            beforeRestart.disconnect()
+        when:
+            upstream.stop(0)
+            upstream = echoServer()
+            final afterRestart = send("GET", "/after", null, false)
+        then:
+            afterRestart == "GET /after "
+    }
+
+    def "should forward chunked request with content length and without expectation already answered"() {
+        given:
+            final head = RecordingProxy.Head.parse(("POST /_bulk HTTP/1.1\r\nHost: localhost\r\nExpect: 100-continue\r\n" +
+                    "Transfer-Encoding: chunked\r\n\r\n").getBytes(ISO_8859_1))
+        expect:
+            new String(head.forwarded(12), ISO_8859_1) == "POST /_bulk HTTP/1.1\r\nHost: localhost\r\nContent-Length: 12\r\n\r\n"
+    }
+
+    private String send(String method, String path, String body, boolean chunked) {
+        final connection = connection(method, path)
+        if (body != null) {
+            connection.doOutput = true
+            connection.setRequestProperty("Content-Type", "application/json")
+            if (chunked) {
+                connection.setChunkedStreamingMode(8)
+            }
+            connection.outputStream.write(body.getBytes(UTF_8))
+        }
+        new String(connection.inputStream.bytes, UTF_8)
+    }
+
+    private HttpURLConnection connection(String method, String path) {
+        final connection = (HttpURLConnection) new URL("http://127.0.0.1:${proxy.port}$path").openConnection()
+        connection.requestMethod = method
+        connection
+    }
+
+    private static HttpServer echoServer() {
+        final server = HttpServer.create(new InetSocketAddress(InetAddress.loopbackAddress, 0), 0)
+        server.createContext("/") { exchange ->
+            final body = exchange.requestBody.bytes
+            if (exchange.requestURI.path == "/missing") {
+                exchange.sendResponseHeaders(404, -1)
+            } else if (exchange.requestURI.path == "/large") {
+                // length 0 makes the response chunked
+                exchange.sendResponseHeaders(200, 0)
+                exchange.responseBody.write(("x" * 100_000).getBytes(UTF_8))
+            } else {
+                final response = "$exchange.requestMethod $exchange.requestURI ${new String(body, UTF_8)}".getBytes(UTF_8)
+                exchange.sendResponseHeaders(200, response.length)
+                exchange.responseBody.write(response)
+            }
+            exchange.close()
+        }
+        server.start()
+        server
+    }
+}
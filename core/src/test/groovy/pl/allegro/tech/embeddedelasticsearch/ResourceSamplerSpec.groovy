@@ -0,0 +1,78 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class ResourceSamplerSpec extends Specification {
+
+    def "should sum collectors and thread pools of local node"() {
+        when:
+            final sample = ResourceSampler.parse(nodeStats(100, 3, 7), 1_000, 250)
+        then:
+            sample.heapUsedBytes == 100
+            sample.heapMaxBytes == 1000
+            sample.gcCount == 5
+            sample.gcTimeMillis == 30
+            sample.threadPoolQueue == 3
+            sample.threadPoolRejected == 7
+            sample.indexingOperations == 10
+            sample.segments == 4
+            sample.processTreeCpuMillis == 250
+    }
+
+    def "should summarize gauges by peak and counters by growth"() {
+        given:
+            final samples = [
+                    ResourceSampler.parse(nodeStats(100, 0, 1), 1_000, 200),
+                    ResourceSampler.parse(nodeStats(300, 5, 1), 1_500, 300),
+                    ResourceSampler.parse(nodeStats(200, 1, 4), 2_000, 500)
+            ]
+        when:
+            final summary = ResourceSummary.of("test", samples)
+        then:
+            summary.durationMillis == 1_000
+            summary.samples == 3
+            summary.maxHeapUsedBytes == 300
+            summary.averageHeapUsedBytes == 200
+            summary.maxThreadPoolQueue == 5
+            summary.threadPoolRejections == 3
+            summary.cpuMillis == 300
+    }
+
+    def "should fall back to CPU time reported by node when operating system does not report it"() {
+        given:
+            final samples = [
+                    ResourceSampler.parse(nodeStats(100, 0, 0), 1_000, ResourceSample.UNKNOWN),
+                    ResourceSampler.parse(nodeStats(100, 0, 0), 2_000, ResourceSample.UNKNOWN)
+            ]
+        expect:
+            ResourceSummary.of("test", samples).cpuMillis == 0
+    }
+
+    private static byte[] nodeStats(long heapUsed, long writeQueue, long searchRejected) {
+        """{
+            "nodes": {
+                "node-id": {
+                    "jvm": {
+                        "mem": { "heap_used_in_bytes": $heapUsed, "heap_max_in_bytes": 1000 },
+                        "gc": { "collectors": {
+                            "young": { "collection_count": 4, "collection_time_in_millis": 10 },
+                            "old": { "collection_count": 1, "collection_time_in_millis": 20 }
+                        } }
+                    },
+                    "thread_pool": {
+                        "write": { "queue": $writeQueue, "rejected": 0 },
+                        "search": { "queue": 0, "rejected": $searchRejected }
+                    },
+                    "indices": {
+                        "indexing": { "index_total": 10, "index_time_in_millis": 5 },
+                        "search": { "query_total": 2, "query_time_in_millis": 8 },
+                        "segments": { "count": 4 }
+                    },
+                    "process": { "cpu": { "total_in_millis": 1200 } }
+                }
+            }
+        }""".getBytes(UTF_8)
+    }
+}
@@ -0,0 +1,78 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import java.util.concurrent.TimeUnit
+
+class RestCallStatisticsSpec extends Specification {
+
+    @Unroll
+    def "should classify #method #uri as #operation"() {
+        expect:
+            RestOperation.of(method, uri) == operation
+        where:
+            method   | uri                                                 | operation
+            "POST"   | "/_bulk"                                            | RestOperation.BULK
+            "POST"   | "/cars/_bulk?refresh=true"                          | RestOperation.BULK
+            "POST"   | "/_refresh"                                         | RestOperation.REFRESH
+            "PUT"    | "/cars"                                             | RestOperation.CREATE_INDEX
+            "DELETE" | "/cars"                                             | RestOperation.DELETE_INDEX
+            "HEAD"   | "/cars"                                             | RestOperation.OTHER
+            "GET"    | "/_cluster/health?wait_for_status=yellow&timeout=60s" | RestOperation.HEALTH_WAIT
+            "POST"   | "/cars/_search"                                     | RestOperation.SEARCH
+            "POST"   | "/_search"                                          | RestOperation.SEARCH
+            "POST"   | "/cars/_count"                                      | RestOperation.COUNT
+            "POST"   | "/cars/_mget"                                       | RestOperation.GET
+            "GET"    | "/cars/_doc/1"                                      | RestOperation.GET
+            "PUT"    | "/cars/_doc/1?refresh=true"                         | RestOperation.DOCUMENT_WRITE
+            "POST"   | "/cars/_doc"                                        | RestOperation.DOCUMENT_WRITE
+            "DELETE" | "/cars/_doc/1"                                      | RestOperation.DOCUMENT_WRITE
+            "POST"   | "/cars/_pit?keep_alive=1m"                          | RestOperation.POINT_IN_TIME
+            "DELETE" | "/_pit"                                             | RestOperation.POINT_IN_TIME
+            "PUT"    | "/_component_template/base"                         | RestOperation.TEMPLATE
+            "PUT"    | "/_snapshot/embedded_elasticsearch/fixtures"        | RestOperation.SNAPSHOT
+    }
+
+    def "should keep latency percentiles within histogram precision"() {
+        given:
+            final histogram = new LatencyHistogram()
+        when:
+            (1..1000).each { histogram.record(it * 1000) }
+        then:
+            Math.abs(histogram.getValueAtPercentile(50) - 500_000) <= 500_000 / 64
+            Math.abs(histogram.getValueAtPercentile(99) - 990_000) <= 990_000 / 64
+            histogram.getValueAtPercentile(100) == 1_000_000
+            histogram.maxValue == 1_000_000
+    }
+
+    def "should report calls per operation"() {
+        given:
+            final statistics = new RestCallStatistics(0, false)
+        when:
+            statistics.onCall(call(RestOperation.BULK, 20))
+            statistics.onCall(call(RestOperation.BULK, 40))
+            statistics.onCall(call(RestOperation.REFRESH, 5))
+        then:
+            final report = statistics.report()
+            report.operations*.operation == [RestOperation.BULK, RestOperation.REFRESH]
+            report.operations[0].calls == 2
+            report.operations[0].requestBytes == 200
+            report.operations[0].maxMillis == 40
+            report.operations[0].slowCalls == 0
+    }
+
+    def "should fail slow call when configured"() {
+        given:
+            final statistics = new RestCallStatistics(TimeUnit.MILLISECONDS.toNanos(10), true)
+        when:
+            statistics.onCall(call(RestOperation.SEARCH, 50))
+        then:
+            thrown(IllegalStateException)
+            statistics.report().operations[0].slowCalls == 1
+    }
+
+    private static RestCall call(RestOperation operation, long millis) {
+        new RestCall(operation, "POST", "/cars", 200, 100, 10, TimeUnit.MILLISECONDS.toNanos(millis))
+    }
+}
@@ -0,0 +1,92 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class SearchResponseParserSpec extends Specification {
+
+    final parser = new SearchResponseParser(new ObjectMapper())
+
+    @Unroll
+    def "should read total hits in #format format"() {
+        when:
+            final result = parser.parseSearch("""{ "took": 1, "hits": { "total": $total, "max_score": null, "hits": [] } }""".getBytes(UTF_8))
+        then:
+            result.totalHits == 3
+            result.documents.isEmpty()
+        where:
+            format        | total
+            "pre 7"       | '3'
+            "7 and newer" | '{ "value": 3, "relation": "eq" }'
+    }
+
+    def "should expose sources of hits without decoding them"() {
+        given:
+            final response = '''{
+                "_shards": { "total": 1 },
+                "hits": {
+                    "total": { "value": 2 },
+                    "hits": [
+                        { "_index": "cars", "_id": "1", "_score": 1.0, "_source": { "model": "126p", "tags": [ { "name": "żółw" } ] } },
+                        { "_index": "cars", "_id": "2", "_source": { "model": "Panda" } }
+                    ]
+                }
+            }'''
+        when:
+            final result = parser.parseSearch(response.getBytes(UTF_8))
+        then:
+            result.documents*.id == ["1", "2"]
+            result.documents*.indexName == ["cars", "cars"]
+            result.documents[0].sourceAsString == '{ "model": "126p", "tags": [ { "name": "żółw" } ] }'
+            result.getSourcesAs(Map)*.model == ["126p", "Panda"]
+    }
+
+    def "should read point in time id returned with search within point in time"() {
+        when:
+            final result = parser.parseSearch('{ "pit_id": "46ToAwMDaWR5", "hits": { "total": { "value": 0 }, "hits": [] } }'.getBytes(UTF_8))
+        then:
+            result.pointInTimeId == "46ToAwMDaWR5"
+            parser.parseSearch('{ "hits": { "hits": [] } }'.getBytes(UTF_8)).pointInTimeId == null
+    }
+
+    def "should skip documents not found by multi get"() {
+        given:
+            final response = '''{ "docs": [
+                { "_index": "cars", "_id": "1", "found": false },
+                { "_index": "cars", "_id": "2", "_version": 1, "found": true, "_source": { "model": "Panda" } }
+            ] }'''
+        when:
+            final documents = parser.parseMultiGet(response.getBytes(UTF_8))
+        then:
+            documents*.id == ["2"]
+            documents[0].sourceAsString == '{ "model": "Panda" }'
+    }
+
+    def "should expose sources of SMILE response as JSON"() {
+        given:
+            final smileParser = new SearchResponseParser(new ObjectMapper(), ContentFormat.SMILE)
+            final response = new ObjectMapper(new SmileFactory()).writeValueAsBytes([
+                    hits: [
+                            total: [value: 1],
+                            hits : [[_index: "cars", _id: "1", _source: [model: "126p", tags: ["żółw"]], sort: [5, "a"]]]
+                    ]
+            ])
+        when:
+            final result = smileParser.parseSearch(response)
+        then:
+            result.totalHits == 1
+            result.documents*.id == ["1"]
+            result.documents[0].sourceAsString == '{"model":"126p","tags":["żółw"]}'
+            result.documents[0].sortValues == '[5,"a"]'
+            result.getSourcesAs(Map)*.model == ["126p"]
+    }
+
+    def "should read count"() {
+        expect:
+            parser.parseCount('{ "count": 42, "_shards": { "total": 1 } }'.getBytes(UTF_8)) == 42
+    }
+}
@@ -0,0 +1,84 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class SharedDistributionSpec extends Specification {
+
+    final installationDirectory = Files.createTempDirectory("installation").toFile()
+    final distributions = new File(installationDirectory, "distributions")
+    final distribution = new File(distributions, "elasticsearch-7.7.0")
+
+    def cleanup() {
+        installationDirectory.deleteDir()
+    }
+
+    def "should install distribution from package and mark it complete"() {
+        given:
+            final elasticPackage = elasticPackage(["elasticsearch-7.7.0/config/elasticsearch.yml": "cluster.name: test"])
+        when:
+            installer().installSharedDistribution(elasticPackage)
+        then:
+            new File(distribution, "config/elasticsearch.yml").text == "cluster.name: test"
+            new File(distribution, ".complete").exists()
+            distributions.list().findAll { it.startsWith(".staging-") }.isEmpty()
+    }
+
+    def "should reuse complete distribution without extracting package again"() {
+        given:
+            installer().installSharedDistribution(elasticPackage(["elasticsearch-7.7.0/config/elasticsearch.yml": "cluster.name: test"]))
+            new File(distribution, "installed-by-first-instance").createNewFile()
+        when:
+            installer().installSharedDistribution(elasticPackage(["elasticsearch-7.7.0/config/elasticsearch.yml": "cluster.name: changed"]))
+        then:
+            new File(distribution, "installed-by-first-instance").exists()
+            new File(distribution, "config/elasticsearch.yml").text == "cluster.name: test"
+    }
+
+    def "should replace distribution left incomplete by interrupted installation"() {
+        given:
+            new File(distribution, "config").mkdirs()
+            new File(distribution, "partially-extracted").createNewFile()
+        when:
+            installer().installSharedDistribution(elasticPackage(["elasticsearch-7.7.0/config/elasticsearch.yml": "cluster.name: test"]))
+        then:
+            !new File(distribution, "partially-extracted").exists()
+            new File(distribution, "config/elasticsearch.yml").text == "cluster.name: test"
+            new File(distribution, ".complete").exists()
+    }
+
+    def "should not leave staging directory nor distribution when package is invalid"() {
+        given:
+            final elasticPackage = elasticPackage(["elasticsearch-7.7.0/bin/elasticsearch": "", "other/README": ""])
+        when:
+            installer().installSharedDistribution(elasticPackage)
+        then:
+            thrown(EmbeddedElasticsearchStartupException)
+            !distribution.exists()
+            distributions.list().findAll { it.startsWith(".staging-") }.isEmpty()
+    }
+
+    private ElasticSearchInstaller installer() {
+        final installationDescription = new InstallationDescription(new InstallFromVersion("7.7.0"), installationDirectory, installationDirectory,
+                false, [], 0, 0, null, null, 0, true)
+        new ElasticSearchInstaller(new InstanceSettings(), installationDescription)
+    }
+
+    private Path elasticPackage(Map<String, String> files) {
+        final elasticPackage = Files.createTempFile(installationDirectory.toPath(), "elasticsearch", ".zip")
+        new ZipOutputStream(Files.newOutputStream(elasticPackage)).withCloseable { zip ->
+            files.each { name, content ->
+                zip.putNextEntry(new ZipEntry(name))
+                zip.write(content.getBytes(UTF_8))
+                zip.closeEntry()
+            }
+        }
+        elasticPackage
+    }
+}
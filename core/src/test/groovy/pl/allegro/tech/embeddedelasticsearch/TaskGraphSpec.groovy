@@ -0,0 +1,90 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class TaskGraphSpec extends Specification {
+
+    final executor = Executors.newFixedThreadPool(4)
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "should run task only after its dependencies"() {
+        given:
+            final completed = new ConcurrentLinkedQueue<String>()
+            final graph = new TaskGraph<String>()
+                    .add("composable", ["component-a", "component-b", "external"], { completed.add("composable") })
+                    .add("component-a", [], { completed.add("component-a") })
+                    .add("component-b", [], { completed.add("component-b") })
+        when:
+            graph.run(executor)
+        then:
+            completed.toList().last() == "composable"
+            completed.size() == 3
+    }
+
+    def "should run independent tasks concurrently"() {
+        given:
+            final bothStarted = new CountDownLatch(2)
+            final task = {
+                bothStarted.countDown()
+                assert bothStarted.await(10, TimeUnit.SECONDS)
+            }
+            final graph = new TaskGraph<String>()
+                    .add("a", [], task)
+                    .add("b", [], task)
+        when:
+            graph.run(executor)
+        then:
+            bothStarted.count == 0
+    }
+
+    def "should not run dependents of failed task"() {
+        given:
+            final completed = new ConcurrentLinkedQueue<String>()
+            final graph = new TaskGraph<String>()
+                    .add("failing", [], { throw new IllegalStateException("boom") })
+                    .add("dependent", ["failing"], { completed.add("dependent") })
+        when:
+            graph.run(executor)
+        then:
+            final e = thrown(IllegalStateException)
+            e.message == "boom"
+            completed.isEmpty()
+    }
+
+    def "should detect dependency cycle before running anything"() {
+        given:
+            final completed = new ConcurrentLinkedQueue<String>()
+            final graph = new TaskGraph<String>()
+                    .add("independent", [], { completed.add("independent") })
+                    .add("a", ["b"], { completed.add("a") })
+                    .add("b", ["a"], { completed.add("b") })
+        when:
+            graph.run(executor)
+        then:
+            thrown(InvalidSetupException)
+            completed.isEmpty()
+    }
+
+    def "should report chain of tasks which determined run time as critical path"() {
+        given:
+            final graph = new TaskGraph<String>()
+                    .add("download", [], { Thread.sleep(200) })
+                    .add("render-config", [], {})
+                    .add("extract", ["download"], { Thread.sleep(50) })
+                    .add("write-config", ["extract", "render-config"], {})
+        when:
+            graph.run(executor)
+        then:
+            graph.criticalPath() == ["download", "extract", "write-config"]
+            graph.durationsInNanos().keySet() == ["download", "render-config", "extract", "write-config"] as Set
+            graph.durationsInNanos()["download"] >= TimeUnit.MILLISECONDS.toNanos(200)
+    }
+}
@@ -0,0 +1,76 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+class TemplatesDescriptionSpec extends Specification {
+
+    static final COMPONENT = '{ "template": { "mappings": { "properties": { "model": { "type": "keyword" } } } } }'
+    static final INDEX_TEMPLATE = '{ "index_patterns": ["cars*"], "composed_of": ["cars_mappings", "cars_settings"] }'
+
+    def "should make composable template depend on component templates it is composed of"() {
+        given:
+            final templates = new TemplatesDescription(["legacy": '{ "index_patterns": ["books*"] }'],
+                    ["cars_mappings": COMPONENT, "cars_settings": '{ "template": { "settings": {} } }'], ["cars": INDEX_TEMPLATE])
+        expect:
+            templates.getTemplateDependencies("cars") == ["cars_mappings", "cars_settings"]
+            templates.getTemplateDependencies("cars_mappings") == []
+            templates.getTemplateDependencies("legacy") == []
+        and:
+            templates.getTemplateType("cars") == TemplateType.COMPOSABLE
+            templates.getTemplateType("cars_mappings") == TemplateType.COMPONENT
+            templates.getTemplateType("legacy") == TemplateType.LEGACY
+    }
+
+    def "should store content hash in _meta of template body"() {
+        given:
+            final templates = new TemplatesDescription([:], ["cars_mappings": COMPONENT], [:])
+        when:
+            final body = new ObjectMapper().readTree(templates.getTemplateBody("cars_mappings"))
+        then:
+            body.get("_meta").get(IndexSettings.CONTENT_HASH_META_FIELD).asText() == templates.getTemplateContentHash("cars_mappings").get()
+            body.get("template") == new ObjectMapper().readTree(COMPONENT).get("template")
+    }
+
+    def "should change content hash only when template definition changes"() {
+        given:
+            final changed = COMPONENT.replace("keyword", "text")
+        expect:
+            contentHash(COMPONENT) == contentHash(COMPONENT)
+            contentHash(COMPONENT) != contentHash(changed)
+    }
+
+    def "should keep version and _meta specified explicitly and change content hash with them"() {
+        given:
+            final body = '{ "version": 3, "_meta": { "owner": "cars" }, "template": {} }'
+            final templates = new TemplatesDescription([:], ["cars_mappings": body], [:])
+        when:
+            final storedBody = new ObjectMapper().readTree(templates.getTemplateBody("cars_mappings"))
+        then:
+            storedBody.get("version").asInt() == 3
+            storedBody.get("_meta").get("owner").asText() == "cars"
+            contentHash(body) != contentHash(body.replace('"template": {}', '"template": { "settings": {} }'))
+    }
+
+    def "should not store content hash in legacy template nor in template which is not JSON object"() {
+        given:
+            final legacy = '{ "version": 3, "index_patterns": ["books*"] }'
+            final templates = new TemplatesDescription(["legacy": legacy, "invalid": "not json"])
+        expect:
+            !templates.getTemplateContentHash("legacy").isPresent()
+            new String(templates.getTemplateBody("legacy"), "UTF-8") == legacy
+            !templates.getTemplateContentHash("invalid").isPresent()
+            new String(templates.getTemplateBody("invalid"), "UTF-8") == "not json"
+    }
+
+    def "should reject templates of different kinds with the same name"() {
+        when:
+            new TemplatesDescription([:], ["cars": COMPONENT], ["cars": INDEX_TEMPLATE])
+        then:
+            thrown(InvalidSetupException)
+    }
+
+    private static String contentHash(String componentTemplate) {
+        new TemplatesDescription([:], ["cars_mappings": componentTemplate], [:]).getTemplateContentHash("cars_mappings").get()
+    }
+}
@@ -0,0 +1,106 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static java.nio.charset.StandardCharsets.UTF_8
+
+class WorkloadReplaySpec extends Specification {
+
+    def "should read requests written to log"() {
+        given:
+            final file = Files.createTempFile("requests", ".log")
+            final requests = [
+                    new RecordedRequest(0, "PUT", "/cars/_doc/1", "application/json", '{"model":"126p"}'.getBytes(UTF_8)),
+                    new RecordedRequest(1500, "GET", "/cars/_search?q=126p", null, null)
+            ]
+        when:
+            RequestLog.write(file, requests)
+            final read = RequestLog.read(file)
+        then:
+            read*.toString() == ["PUT /cars/_doc/1", "GET /cars/_search?q=126p"]
+            read*.offsetMicros == [0, 1500]
+            read*.contentType == ["application/json", null]
+            new String(read[0].body, UTF_8) == '{"model":"126p"}'
+            read[1].body.length == 0
+            read*.statusCode == [-1, -1]
+    }
+
+    def "should read request with path longer than 64 KB"() {
+        given:
+            final file = Files.createTempFile("requests", ".log")
+            final path = "/cars/_search?q=" + "model:126p%20OR%20" * 5000
+        when:
+            RequestLog.write(file, [new RecordedRequest(0, "GET", path, null, null)])
+        then:
+            RequestLog.read(file)*.path == [path]
+    }
+
+    def "should skip request cut off at the end of log"() {
+        given:
+            final file = Files.createTempFile("requests", ".log")
+            RequestLog.write(file, (1..3).collect { new RecordedRequest(it, "GET", "/cars/_count", null, null) })
+            final bytes = Files.readAllBytes(file)
+            Files.write(file, Arrays.copyOf(bytes, bytes.length - 2))
+        expect:
+            RequestLog.read(file).size() == 2
+    }
+
+    def "should schedule requests with recorded gaps divided by speed multiple or at fixed rate"() {
+        given:
+            final requests = [100, 300, 1100].collect { new RecordedRequest(it, "GET", "/", null, null) }
+        expect:
+            ReplayOptions.originalSpeed().schedule(requests) as List == [0, 200_000, 1_000_000]
+            ReplayOptions.speedMultiple(2).schedule(requests) as List == [0, 100_000, 500_000]
+            ReplayOptions.fixedRate(1000).schedule(requests) as List == [0, 1_000_000, 2_000_000]
+    }
+
+    def "should send all requests and count error responses and failures"() {
+        given:
+            final target = new RecordingTarget(statuses: ["/ok": 200, "/missing": 404])
+            final requests = ["/ok", "/missing", "/broken", "/ok"].collect { new RecordedRequest(0, "GET", it, null, null) }
+        when:
+            final report = new WorkloadReplay(requests, ReplayOptions.fixedRate(10_000).withWorkers(2), target).run()
+        then:
+            target.sent.sort() == ["/broken", "/missing", "/ok", "/ok"]
+            report.requests == 4
+            report.errorResponses == 1
+            report.failedRequests == 1
+            target.closed
+    }
+
+    def "should measure latency from scheduled moment when workers do not keep up"() {
+        given:
+            final target = new RecordingTarget(statuses: ["/slow": 200], sendMillis: 50)
+            final requests = (1..5).collect { new RecordedRequest(0, "GET", "/slow", null, null) }
+        when:
+            final report = new WorkloadReplay(requests, ReplayOptions.fixedRate(1000).withWorkers(1), target).run()
+        then:
+            report.serviceTimeMaxMillis < 150
+            report.latencyMaxMillis >= 200
+    }
+
+    private static class RecordingTarget implements WorkloadReplay.Target {
+        final List<String> sent = new CopyOnWriteArrayList<>()
+        Map<String, Integer> statuses = [:]
+        long sendMillis
+        volatile boolean closed
+
+        @Override
+        int send(RecordedRequest request) {
+            Thread.sleep(sendMillis)
+            sent.add(request.path)
+            if (!statuses.containsKey(request.path)) {
+                throw new HttpClient.HttpRequestException(new IOException("Connection refused"))
+            }
+            statuses[request.path]
+        }
+
+        @Override
+        void close() {
+            closed = true
+        }
+    }
+}
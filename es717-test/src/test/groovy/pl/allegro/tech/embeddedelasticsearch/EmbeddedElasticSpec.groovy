@@ -4,13 +4,17 @@ import co.elastic.clients.elasticsearch.ElasticsearchClient
 import co.elastic.clients.json.jackson.JacksonJsonpMapper
 import co.elastic.clients.transport.ElasticsearchTransport
 import co.elastic.clients.transport.rest_client.RestClientTransport
+import groovy.json.JsonSlurper
+import org.apache.http.Header
 import org.apache.http.HttpHost
 import org.apache.http.auth.AuthScope
 import org.apache.http.auth.UsernamePasswordCredentials
 import org.apache.http.client.CredentialsProvider
 import org.apache.http.impl.client.BasicCredentialsProvider
+import org.apache.http.message.BasicHeader
 import org.elasticsearch.action.get.GetRequest
 import org.elasticsearch.action.search.SearchRequest
+import org.elasticsearch.client.Request
 import org.elasticsearch.client.RequestOptions
 import org.elasticsearch.client.RestClient
 import org.elasticsearch.client.RestHighLevelClient
@@ -18,6 +22,8 @@ import org.elasticsearch.client.RestHighLevelClientBuilder
 import org.elasticsearch.index.query.QueryBuilders
 import org.elasticsearch.search.builder.SearchSourceBuilder
 
+import java.nio.file.Files
+
 import static java.util.concurrent.TimeUnit.MINUTES
 import static pl.allegro.tech.embeddedelasticsearch.PopularProperties.HTTP_PORT
 import static pl.allegro.tech.embeddedelasticsearch.SampleIndices.*
@@ -26,6 +32,8 @@ class EmbeddedElasticSpec extends EmbeddedElasticCoreApiBaseSpec {
 
     static final ELASTIC_VERSION = "7.17.0"
     static final HTTP_PORT_VALUE = 9999
+    static final TRUCKS_COMPONENT_TEMPLATE = '{ "template": { "mappings": { "properties": { "model": { "type": "keyword" } } } } }'
+    static final TRUCKS_INDEX_TEMPLATE = '{ "index_patterns": ["trucks*"], "composed_of": ["trucks_mappings"], "priority": 1 }'
 
     static EmbeddedElastic embeddedElasticServer = EmbeddedElastic.builder()
             .withElasticVersion(ELASTIC_VERSION)
@@ -34,8 +42,12 @@ class EmbeddedElasticSpec extends EmbeddedElasticCoreApiBaseSpec {
             .withSetting("xpack.security.enabled", "true")
             .withEsJavaOpts("-Xms128m -Xmx512m")
             .withTemplate(CARS_TEMPLATE_NAME, CARS_TEMPLATE_7x)
+            .withComponentTemplate("trucks_mappings", TRUCKS_COMPONENT_TEMPLATE)
+            .withIndexTemplate("trucks", TRUCKS_INDEX_TEMPLATE)
             .withIndex(CARS_INDEX_NAME, CARS_INDEX_7x)
             .withIndex(BOOKS_INDEX_NAME, BOOKS_INDEX)
+            .withSnapshotRepository(Files.createTempDirectory("es-snapshots").toFile())
+            .withHttpCompression(HttpCompression.GZIP, 0)
             .withStartTimeout(2, MINUTES)
             .build()
             .start()
@@ -79,6 +91,73 @@ class EmbeddedElasticSpec extends EmbeddedElasticCoreApiBaseSpec {
         embeddedElastic.recreateIndices()
     }
 
+    def "should export documents from point in time in parallel slices"() {
+        given:
+        embeddedElastic.loadFixture(Fixture.fromClasspath("cars-fixture.ndjson").withIndexName(CARS_INDEX_NAME))
+        final directory = Files.createTempDirectory("export")
+
+        when:
+        final report = embeddedElastic.exportDocuments(DocumentExport.of(CARS_INDEX_NAME, directory).withSlices(2).withPageSize(1))
+
+        then:
+        report.documents == 3
+        report.files*.fileName*.toString().sort() == ["${CARS_INDEX_NAME}-0.bulk", "${CARS_INDEX_NAME}-1.bulk"]
+
+        when:
+        embeddedElastic.recreateIndex(CARS_INDEX_NAME)
+        report.files.each { embeddedElastic.loadFixture(Fixture.fromFile(it).withFormat(FixtureFormat.BULK)) }
+
+        then:
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 3
+    }
+
+    def "should create index template composed of component template"() {
+        when:
+        embeddedElastic.recreateTemplates()
+        final indexRequest = new Request("PUT", "/trucks-1/_doc/1?refresh=true")
+        indexRequest.setJsonEntity('{ "model": "Star 266" }')
+        restClient.performRequest(indexRequest)
+        final mapping = new JsonSlurper().parse(restClient.performRequest(new Request("GET", "/trucks-1/_mapping")).entity.content)
+
+        then:
+        mapping["trucks-1"].mappings.properties.model.type == "keyword"
+
+        cleanup:
+        restClient.performRequest(new Request("DELETE", "/trucks-1"))
+    }
+
+    def "should record requests sent through proxy and replay them"() {
+        given:
+        final requestLog = Files.createTempFile("requests", ".log")
+        final proxy = embeddedElastic.startRecordingProxy(requestLog)
+        final credentials = Base64.encoder.encodeToString("elastic:${embeddedElastic.getPassword("elastic")}".getBytes("UTF-8"))
+        final proxiedClient = RestClient.builder(new HttpHost("127.0.0.1", proxy.port))
+                .setDefaultHeaders([new BasicHeader("Authorization", "Basic $credentials")] as Header[])
+                .build()
+
+        when:
+        final indexRequest = new Request("PUT", "/$CARS_INDEX_NAME/_doc/126p?refresh=true")
+        indexRequest.setJsonEntity(toJson(FIAT_126p))
+        proxiedClient.performRequest(indexRequest)
+        proxiedClient.performRequest(new Request("GET", "/$CARS_INDEX_NAME/_search"))
+        proxiedClient.close()
+        proxy.close()
+        final recorded = RequestLog.read(requestLog)
+
+        then:
+        recorded*.toString() == ["PUT /$CARS_INDEX_NAME/_doc/126p?refresh=true", "GET /$CARS_INDEX_NAME/_search"]
+        recorded*.statusCode == [201, 200]
+
+        when:
+        embeddedElastic.recreateIndex(CARS_INDEX_NAME)
+        final report = embeddedElastic.replay(requestLog, ReplayOptions.originalSpeed())
+
+        then:
+        report.requests == 2
+        report.errorResponses == 0
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+
     def cleanupSpec() {
         restClient.close()
         embeddedElastic.stop()
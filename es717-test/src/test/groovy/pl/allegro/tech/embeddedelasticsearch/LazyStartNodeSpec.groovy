@@ -0,0 +1,40 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MINUTES
+import static java.util.concurrent.TimeUnit.NANOSECONDS
+import static pl.allegro.tech.embeddedelasticsearch.SampleIndices.*
+
+class LazyStartNodeSpec extends Specification {
+
+    final embeddedElastic = EmbeddedElastic.builder()
+            .withElasticVersion("7.17.0")
+            .withPortAllocation()
+            .withSetting("xpack.ml.enabled", "false") // This cause issues on mac os so disable in tests
+            .withEsJavaOpts("-Xms128m -Xmx512m")
+            .withIndex(CARS_INDEX_NAME, CARS_INDEX_7x)
+            .withLazyStart()
+            .withStartTimeout(2, MINUTES)
+            .build()
+
+    def cleanup() {
+        embeddedElastic.stop()
+    }
+
+    def "should start node in background and block operations until it is ready"() {
+        when:
+        final startCalled = System.nanoTime()
+        embeddedElastic.start()
+        final startReturned = System.nanoTime()
+        final httpPort = embeddedElastic.getHttpPort()
+        final nodeReady = System.nanoTime()
+        embeddedElastic.index(CARS_INDEX_NAME, toJson(FIAT_126p))
+
+        then:
+        NANOSECONDS.toMillis(startReturned - startCalled) < 1000
+        NANOSECONDS.toMillis(nodeReady - startReturned) > NANOSECONDS.toMillis(startReturned - startCalled)
+        httpPort > 0
+        embeddedElastic.fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+}
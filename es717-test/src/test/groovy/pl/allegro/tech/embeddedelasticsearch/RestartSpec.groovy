@@ -0,0 +1,44 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import static java.util.concurrent.TimeUnit.MINUTES
+import static pl.allegro.tech.embeddedelasticsearch.SampleIndices.*
+
+/**
+ * Restart without data regenerates passwords of built-in users, so it runs on its own node without security
+ */
+class RestartSpec extends Specification {
+
+    static EmbeddedElastic embeddedElastic = EmbeddedElastic.builder()
+            .withElasticVersion("7.17.0")
+            .withPortAllocation()
+            .withSetting("xpack.ml.enabled", "false") // This cause issues on mac os so disable in tests
+            .withEsJavaOpts("-Xms128m -Xmx512m")
+            .withTemplate(CARS_TEMPLATE_NAME, CARS_TEMPLATE_7x)
+            .withIndex(CARS_INDEX_NAME, CARS_INDEX_7x)
+            .withStartTimeout(2, MINUTES)
+            .build()
+            .start()
+
+    def cleanupSpec() {
+        embeddedElastic.stop()
+    }
+
+    def "should start empty node with indices created again when restarting without data"() {
+        given:
+        embeddedElastic.index(CARS_INDEX_NAME, toJson(FIAT_126p))
+
+        when:
+        embeddedElastic.restart(false)
+
+        then:
+        embeddedElastic.fetchAllDocuments(CARS_INDEX_NAME).isEmpty()
+
+        when:
+        embeddedElastic.index(CARS_INDEX_NAME, toJson(FIAT_126p))
+
+        then:
+        embeddedElastic.fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+}
@@ -0,0 +1,51 @@
+package pl.allegro.tech.embeddedelasticsearch
+
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+import static java.util.concurrent.TimeUnit.MINUTES
+import static pl.allegro.tech.embeddedelasticsearch.SampleIndices.*
+
+class SharedDistributionSpec extends Specification {
+
+    static final ELASTIC_VERSION = "7.17.0"
+
+    final installationDirectory = Files.createTempDirectory("shared-distribution").toFile()
+    final instances = (1..2).collect { instance() }
+
+    def cleanup() {
+        instances*.stop()
+        installationDirectory.deleteDir()
+    }
+
+    def "should start instances concurrently from one shared distribution"() {
+        given:
+        final executor = Executors.newFixedThreadPool(instances.size())
+
+        when:
+        executor.invokeAll(instances.collect { instance -> { -> instance.start() } as Callable })*.get()
+        executor.shutdown()
+        instances.each { it.index(CARS_INDEX_NAME, toJson(FIAT_126p)) }
+
+        then:
+        instances*.count(CARS_INDEX_NAME) == [1, 1]
+        instances*.httpPort.unique().size() == 2
+        new File(installationDirectory, "distributions").listFiles().findAll { it.isDirectory() }*.name == ["elasticsearch-$ELASTIC_VERSION"]
+    }
+
+    private EmbeddedElastic instance() {
+        EmbeddedElastic.builder()
+                .withElasticVersion(ELASTIC_VERSION)
+                .withInstallationDirectory(installationDirectory)
+                .withSharedDistribution()
+                .withPortAllocation()
+                .withSetting("xpack.ml.enabled", "false") // This cause issues on mac os so disable in tests
+                .withEsJavaOpts("-Xms128m -Xmx512m")
+                .withIndex(CARS_INDEX_NAME, CARS_INDEX_7x)
+                .withStartTimeout(2, MINUTES)
+                .build()
+    }
+}
@@ -14,6 +14,8 @@ import org.elasticsearch.client.RestHighLevelClient
 import org.elasticsearch.index.query.QueryBuilders
 import org.elasticsearch.search.builder.SearchSourceBuilder
 
+import java.nio.file.Files
+
 import static java.util.concurrent.TimeUnit.MINUTES
 import static pl.allegro.tech.embeddedelasticsearch.PopularProperties.HTTP_PORT
 import static pl.allegro.tech.embeddedelasticsearch.SampleIndices.*
@@ -32,6 +34,8 @@ class EmbeddedElasticSpec extends EmbeddedElasticCoreApiBaseSpec {
             .withTemplate(CARS_TEMPLATE_NAME, CARS_TEMPLATE_7x)
             .withIndex(CARS_INDEX_NAME, CARS_INDEX_7x)
             .withIndex(BOOKS_INDEX_NAME, BOOKS_INDEX)
+            .withSnapshotRepository(Files.createTempDirectory("es-snapshots").toFile())
+            .withContentFormat(ContentFormat.SMILE)
             .withStartTimeout(2, MINUTES)
             .build()
             .start()
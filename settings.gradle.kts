@@ -1,3 +1,8 @@
+plugins {
+    // downloads JDK 21 for compiling src/main/java21 of core when it is not installed locally
+    id("org.gradle.toolchains.foojay-resolver-convention") version "0.8.0"
+}
+
 rootProject.name = "embedded-elasticsearch"
 rootProject.buildFileName = "build.gradle.kts"
 
@@ -5,3 +10,4 @@ include("core")
 include("test-base")
 include("es77-test")
 include("es717-test")
+include("benchmarks")
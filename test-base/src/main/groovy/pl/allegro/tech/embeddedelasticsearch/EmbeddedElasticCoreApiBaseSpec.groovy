@@ -80,6 +80,28 @@ abstract class EmbeddedElasticCoreApiBaseSpec extends Specification {
         fetchAllDocuments().size() == 0
     }
 
+    def "should not recreate index which definition did not change"() {
+        given:
+        index(FIAT_126p)
+
+        when:
+        embeddedElastic.recreateIndexIfChanged(CARS_INDEX_NAME)
+
+        then:
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+
+    def "should keep documents of unchanged indices when syncing schema"() {
+        given:
+        index(FIAT_126p)
+
+        when:
+        embeddedElastic.syncSchema()
+
+        then:
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+
     def "should fetch books from aliases"() {
         given:
         index(SHINING)
@@ -153,6 +175,149 @@ abstract class EmbeddedElasticCoreApiBaseSpec extends Specification {
         resultAll.size() == 2
     }
 
+    def "should load documents from NDJSON fixture"() {
+        when:
+        final report = embeddedElastic.loadFixture(Fixture.fromClasspath("cars-fixture.ndjson").withIndexName(CARS_INDEX_NAME))
+
+        then:
+        report.documents == 3
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 3
+    }
+
+    def "should index objects with ids extracted from them"() {
+        given:
+        final cars = [FIAT_126p, new SampleIndices.Car(manufacturer: "Fiat", model: "Panda", description: "city car")]
+
+        when:
+        embeddedElastic.index(CARS_INDEX_NAME, cars, { it.model })
+
+        then:
+        embeddedElastic.getDocuments(CARS_INDEX_NAME, ["126p", "Panda"])*.getSourceAs(Map)*.model == ["126p", "Panda"]
+    }
+
+    def "should apply mixed operations in one bulk request"() {
+        given:
+        embeddedElastic.index(CARS_INDEX_NAME, ["126p": toJson(FIAT_126p), "Panda": toJson(FIAT_126p)])
+
+        when:
+        embeddedElastic.bulk([
+                new UpdateRequest.UpdateRequestBuilder(CARS_INDEX_NAME, "126p").withDoc([description: "classic"]).build(),
+                new UpdateRequest.UpdateRequestBuilder(CARS_INDEX_NAME, "Punto").withDoc([model: "Punto"]).withDocAsUpsert().build(),
+                new DeleteRequest.DeleteRequestBuilder(CARS_INDEX_NAME, "Panda").build(),
+                new DeleteRequest.DeleteRequestBuilder(CARS_INDEX_NAME, "missing").build()
+        ])
+
+        then:
+        embeddedElastic.getDocuments(CARS_INDEX_NAME, ["126p", "Punto"])*.getSourceAs(Map)*.model == ["126p", "Punto"]
+        embeddedElastic.getDocuments(CARS_INDEX_NAME, ["126p"])*.getSourceAs(Map)*.description == ["classic"]
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 2
+    }
+
+    def "should fail bulk request with conflicting create"() {
+        given:
+        embeddedElastic.index(CARS_INDEX_NAME, ["126p": toJson(FIAT_126p)])
+
+        when:
+        embeddedElastic.bulk([new IndexRequest.IndexRequestBuilder(CARS_INDEX_NAME, toJson(FIAT_126p)).withId("126p").withOpTypeCreate().build()])
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "should index documents from many producers through ingestion sink"() {
+        given:
+        final sink = embeddedElastic.ingestionSink(IngestionOptions.defaults().withBatchDocuments(10).withMaxInFlightBulks(2))
+
+        when:
+        final producers = (1..4).collect { producer ->
+            Thread.start {
+                (1..25).each { sink.accept(new IndexRequest.IndexRequestBuilder(CARS_INDEX_NAME, toJson(FIAT_126p)).build()) }
+            }
+        }
+        producers*.join()
+        sink.close()
+
+        then:
+        sink.indexedDocuments == 100
+        embeddedElastic.count(CARS_INDEX_NAME) == 100
+    }
+
+    def "should replay recorded requests"() {
+        given:
+        final requests = [
+                new RecordedRequest(0, "PUT", "/$CARS_INDEX_NAME/_doc/126p?refresh=true", "application/json", toJson(FIAT_126p).getBytes("UTF-8")),
+                new RecordedRequest(1_000, "GET", "/$CARS_INDEX_NAME/_search?q=model:126p", null, null),
+                new RecordedRequest(2_000, "GET", "/$CARS_INDEX_NAME/_doc/missing", null, null)
+        ]
+
+        when:
+        final report = embeddedElastic.replay(requests, ReplayOptions.fixedRate(100).withWorkers(1))
+
+        then:
+        report.requests == 3
+        report.errorResponses == 1
+        report.failedRequests == 0
+        embeddedElastic.getDocument(CARS_INDEX_NAME, "126p").isPresent()
+    }
+
+    def "should search, count and get documents"() {
+        given:
+        index(CARS_INDEX_NAME, ["fiat": toJson(FIAT_126p)])
+
+        when:
+        final result = embeddedElastic.search(CARS_INDEX_NAME, """{ "query": { "match": { "model": "${FIAT_126p.model}" } } }""")
+
+        then:
+        result.totalHits == 1
+        result.documents[0].id == "fiat"
+        assertJsonsEquals(toJson(FIAT_126p), result.documents[0].sourceAsString)
+        result.getSourcesAs(Map)[0].model == FIAT_126p.model
+
+        and:
+        embeddedElastic.count(CARS_INDEX_NAME) == 1
+        embeddedElastic.getDocument(CARS_INDEX_NAME, "fiat").isPresent()
+        !embeddedElastic.getDocument(CARS_INDEX_NAME, "missing").isPresent()
+        embeddedElastic.getDocuments(CARS_INDEX_NAME, ["missing", "fiat"])*.id == ["fiat"]
+    }
+
+    def "should restore fixtures from snapshot"() {
+        given:
+        final fixture = Fixture.fromClasspath("cars-fixture.ndjson").withIndexName(CARS_INDEX_NAME)
+        embeddedElastic.restoreOrLoadFixtures("cars-fixture", fixture)
+        embeddedElastic.recreateIndex(CARS_INDEX_NAME)
+
+        when:
+        final restored = embeddedElastic.restoreOrLoadFixtures("cars-fixture", fixture)
+
+        then:
+        restored
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 3
+    }
+
+    def "should keep documents when restarting node"() {
+        given:
+        index(FIAT_126p)
+
+        when:
+        embeddedElastic.restart()
+
+        then:
+        fetchAllDocuments(CARS_INDEX_NAME).size() == 1
+    }
+
+    def "should summarize resource usage of recorded period"() {
+        given:
+        final recording = embeddedElastic.startResourceRecording("indexing")
+
+        when:
+        index(FIAT_126p)
+        final summary = recording.stop()
+
+        then:
+        summary.indexingOperations >= 1
+        summary.maxHeapUsedBytes > 0
+    }
+
     void assertJsonsEquals(String expectedJson, String actualJson) {
         JSONAssert.assertEquals(expectedJson, actualJson, false)
     }